@@ -0,0 +1,99 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.maerlyn.inventorymanager.data.InventoryContract.BookEntry;
+import io.maerlyn.inventorymanager.data.InventoryContract.SupplierEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks that a write only drops the cached results of the table it wrote to,
+ * going through the provider the same way the app does.
+ *
+ * @author Maerlyn Broadbent
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryResultCacheTest {
+
+    private Context context;
+    private ContentResolver resolver;
+    private Uri supplierUri;
+    private Uri bookUri;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        resolver = context.getContentResolver();
+
+        ContentValues supplier = new ContentValues();
+        supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Query cache test");
+        supplier.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, "query.cache.test@example.com");
+        supplierUri = resolver.insert(SupplierEntry.CONTENT_URI, supplier);
+        assertNotNull(supplierUri);
+
+        ContentValues book = new ContentValues();
+        book.put(BookEntry.COLUMN_BOOK_TITLE, "Query cache test");
+        book.put(BookEntry.COLUMN_BOOK_PRICE, 100);
+        book.put(BookEntry.COLUMN_BOOK_QUANTITY, 1);
+        bookUri = resolver.insert(BookEntry.CONTENT_URI, book);
+        assertNotNull(bookUri);
+    }
+
+    @After
+    public void tearDown() {
+        resolver.delete(bookUri, null, null);
+        resolver.delete(supplierUri, null, null);
+    }
+
+    @Test
+    public void bookWriteKeepsCachedSuppliers() {
+        readSuppliers();
+        long hits = getHitCount();
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_PRICE, 200);
+        assertEquals(1, resolver.update(bookUri, values, null, null));
+
+        // still cached, so this read is a hit
+        readSuppliers();
+        assertEquals(hits + 1, getHitCount());
+    }
+
+    @Test
+    public void supplierWriteDropsCachedSuppliers() {
+        readSuppliers();
+        long hits = getHitCount();
+
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUM, "555 0100");
+        assertEquals(1, resolver.update(supplierUri, values, null, null));
+
+        // read again from the database, so this read is a miss
+        readSuppliers();
+        assertEquals(hits, getHitCount());
+    }
+
+    // read every supplier through the provider, caching the result
+    private void readSuppliers() {
+        Cursor cursor = resolver.query(SupplierEntry.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        cursor.close();
+    }
+
+    private long getHitCount() {
+        return Inventory.getQueryCacheStats(context).getLong(InventoryContract.EXTRA_CACHE_HITS);
+    }
+}
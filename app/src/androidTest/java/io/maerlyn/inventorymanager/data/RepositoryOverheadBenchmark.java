@@ -0,0 +1,74 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.maerlyn.inventorymanager.data.InventoryContract.BookEntry;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times reading a book through the ContentResolver and through the repository
+ * {@link Inventory} uses, to see how much each call costs on top of the query itself.
+ * <p>
+ * Both are timed against a warm query cache, so only the per-call overhead is
+ * measured. Results are written to logcat under the RepositoryOverheadBenchmark tag.
+ *
+ * @author Maerlyn Broadbent
+ */
+@RunWith(AndroidJUnit4.class)
+public class RepositoryOverheadBenchmark {
+
+    private static final String LOG_TAG = RepositoryOverheadBenchmark.class.getSimpleName();
+
+    private static final int READS = 2000;
+
+    @Test
+    public void compareRepositories() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_TITLE, "Repository overhead benchmark");
+        values.put(BookEntry.COLUMN_BOOK_PRICE, 100);
+        values.put(BookEntry.COLUMN_BOOK_QUANTITY, 1);
+        Uri bookUri = context.getContentResolver().insert(BookEntry.CONTENT_URI, values);
+        assertNotNull(bookUri);
+
+        try {
+            Uri uri = BookEntry.getBookDetailUri(ContentUris.parseId(bookUri));
+            InventoryRepository[] repositories = {
+                    new ResolverRepository(context.getContentResolver()),
+                    Inventory.getRepository(context)
+            };
+
+            long[] nanosPerRead = new long[repositories.length];
+            for (int i = 0; i < repositories.length; i++) {
+                // read once first, so both are timed against a warm query cache
+                repositories[i].query(uri, null, null, null, null).close();
+
+                long start = System.nanoTime();
+                for (int j = 0; j < READS; j++) {
+                    Cursor cursor = repositories[i].query(uri, null, null, null, null);
+                    assertTrue(cursor.moveToFirst());
+                    cursor.close();
+                }
+                nanosPerRead[i] = (System.nanoTime() - start) / READS;
+            }
+
+            Log.i(LOG_TAG, "Book read through resolver " + nanosPerRead[0] +
+                    "ns, through repository " + nanosPerRead[1] + "ns");
+        } finally {
+            context.getContentResolver().delete(bookUri, null, null);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times the inventory's main queries under each candidate {@link StorageProfile}.
+ * <p>
+ * Every profile gets a fresh database filled with the same seeded books, a
+ * quarter of them with a cover. Results are written to logcat under the
+ * StorageProfileBenchmark tag, one line per profile, followed by the fastest
+ * profile for each query. The defaults in integers.xml come from this run.
+ * <p>
+ * As in the app, the summary and detail reads run on reader connections, so only
+ * the page size affects them. The cache size only affects the sell and bulk insert.
+ *
+ * @author Maerlyn Broadbent
+ */
+@RunWith(AndroidJUnit4.class)
+public class StorageProfileBenchmark {
+
+    private static final String LOG_TAG = StorageProfileBenchmark.class.getSimpleName();
+
+    private static final int BOOKS = 10000;
+    private static final int SUPPLIERS = 50;
+    private static final int COVER_BYTES = 32 * 1024;
+    private static final int PAGE_SIZE = 50;
+    private static final int READS = 500;
+    private static final int SELLS = 200;
+
+    private static final StorageProfile[] CANDIDATES = {
+            new StorageProfile("sqlite defaults", 4096, 2000),
+            new StorageProfile("8MB cache", 4096, 8000),
+            new StorageProfile("8KB pages", 8192, 2000),
+            new StorageProfile("16KB pages", 16384, 2000),
+            new StorageProfile("8KB pages, 8MB cache", 8192, 8000)
+    };
+
+    private static final String[] QUERIES = {"summary", "detail", "sell", "bulk insert"};
+
+    private static final String SQL_SUMMARY =
+            "SELECT _id, title, price, quantity FROM book" +
+                    " WHERE title COLLATE LOCALIZED > ?" +
+                    " ORDER BY title COLLATE LOCALIZED, _id LIMIT " + PAGE_SIZE;
+
+    private static final String SQL_DETAIL =
+            "SELECT book.*, supplier.name FROM book" +
+                    " LEFT JOIN supplier ON supplier._id = book.supplier_id" +
+                    " WHERE book._id = ?";
+
+    private static final String SQL_SELL =
+            "UPDATE book SET quantity = quantity - 1, version = version + 1" +
+                    " WHERE _id = ? AND quantity > 0";
+
+    private static final String SQL_INSERT =
+            "INSERT INTO book (supplier_id, title, price, quantity, image, isbn)" +
+                    " VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String[] WORDS = {
+            "the", "river", "garden", "winter", "atlas", "silent", "iron", "glass", "house", "code"
+    };
+
+    @Test
+    public void compareProfiles() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+
+        // milliseconds per query, by profile
+        double[][] results = new double[CANDIDATES.length][];
+        for (int i = 0; i < CANDIDATES.length; i++) {
+            File file = context.getDatabasePath("storage_benchmark.db");
+            SQLiteDatabase.deleteDatabase(file);
+            file.getParentFile().mkdirs();
+
+            SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+            try {
+                // the same order as InventoryDbHelper.onConfigure
+                CANDIDATES[i].apply(db);
+                db.enableWriteAheadLogging();
+
+                results[i] = run(db);
+                Log.i(LOG_TAG, String.format("%-40s summary %.3fms  detail %.3fms  sell %.3fms" +
+                                "  bulk insert %.0fms  file %dKB",
+                        CANDIDATES[i], results[i][0], results[i][1], results[i][2], results[i][3],
+                        file.length() / 1024));
+            } finally {
+                db.close();
+                SQLiteDatabase.deleteDatabase(file);
+            }
+        }
+
+        for (int query = 0; query < QUERIES.length; query++) {
+            int fastest = 0;
+            for (int i = 1; i < CANDIDATES.length; i++) {
+                if (results[i][query] < results[fastest][query]) {
+                    fastest = i;
+                }
+            }
+            Log.i(LOG_TAG, "fastest " + QUERIES[query] + ": " + CANDIDATES[fastest].name);
+        }
+    }
+
+    // fill the database, then time each query. returns milliseconds per query
+    private double[] run(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE supplier (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL)");
+        db.execSQL("CREATE TABLE book (_id INTEGER PRIMARY KEY AUTOINCREMENT, supplier_id INTEGER," +
+                " title TEXT NOT NULL, price INTEGER NOT NULL, quantity INTEGER NOT NULL DEFAULT 0," +
+                " image BLOB, isbn TEXT, version INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX book_title_idx ON book (title COLLATE LOCALIZED)");
+        for (int i = 0; i < SUPPLIERS; i++) {
+            db.execSQL("INSERT INTO supplier (name) VALUES (?)", new Object[]{"Supplier " + i});
+        }
+
+        Random random = new Random(1);
+        double[] millis = new double[QUERIES.length];
+
+        // bulk insert, in one transaction like InventoryProvider.bulkInsert
+        long start = System.nanoTime();
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < BOOKS; i++) {
+                insert.bindLong(1, 1 + random.nextInt(SUPPLIERS));
+                insert.bindString(2, title(random) + " " + i);
+                insert.bindLong(3, 100 + random.nextInt(5000));
+                insert.bindLong(4, random.nextInt(40));
+                if (random.nextInt(4) == 0) {
+                    byte[] cover = new byte[COVER_BYTES];
+                    random.nextBytes(cover);
+                    insert.bindBlob(5, cover);
+                } else {
+                    insert.bindNull(5);
+                }
+                insert.bindString(6, "isbn" + i);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+        millis[3] = (System.nanoTime() - start) / 1e6;
+
+        // list pages, starting from the top and from the middle of the list
+        start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            assertEquals(PAGE_SIZE, count(db, SQL_SUMMARY, i % 10 == 0 ? "" : WORDS[i % WORDS.length]));
+        }
+        millis[0] = (System.nanoTime() - start) / 1e6 / READS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            assertEquals(1, count(db, SQL_DETAIL, String.valueOf(1 + random.nextInt(BOOKS))));
+        }
+        millis[1] = (System.nanoTime() - start) / 1e6 / READS;
+
+        // each sale is its own transaction, like a tap on the sell button
+        SQLiteStatement sell = db.compileStatement(SQL_SELL);
+        start = System.nanoTime();
+        for (int i = 0; i < SELLS; i++) {
+            sell.bindLong(1, 1 + random.nextInt(BOOKS));
+            sell.executeUpdateDelete();
+        }
+        millis[2] = (System.nanoTime() - start) / 1e6 / SELLS;
+        sell.close();
+
+        return millis;
+    }
+
+    // read every row of a query and return how many there were
+    private static int count(SQLiteDatabase db, String sql, String arg) {
+        Cursor cursor = db.rawQuery(sql, new String[]{arg});
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                cursor.getString(1);
+                rows++;
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String title(Random random) {
+        StringBuilder title = new StringBuilder();
+        int words = 2 + random.nextInt(4);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                title.append(' ');
+            }
+            title.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return title.toString();
+    }
+}
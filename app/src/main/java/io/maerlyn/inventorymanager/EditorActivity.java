@@ -38,6 +38,7 @@ import butterknife.BindView;
 import butterknife.ButterKnife;
 import butterknife.OnClick;
 import io.maerlyn.inventorymanager.data.Inventory;
+import io.maerlyn.inventorymanager.data.InventoryContract;
 import io.maerlyn.inventorymanager.model.Book;
 import io.maerlyn.inventorymanager.model.Supplier;
 
@@ -71,6 +72,9 @@ public class EditorActivity extends AppCompatActivity implements
     private boolean isNewBook = false;
     private Book book;
 
+    // the book as it was loaded, used to tell whether a conflicting save can be merged
+    private Book originalBook;
+
     // keeps track of whether there have been any data modifications
     private boolean hasBookChanged = false;
 
@@ -208,9 +212,7 @@ public class EditorActivity extends AppCompatActivity implements
         // User clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
             case R.id.action_save:
-                if (saveBook()) {
-                    finish();
-                }
+                saveBook();
                 return true;
             case R.id.action_delete:
                 confirmAndDeleteBook();
@@ -259,23 +261,30 @@ public class EditorActivity extends AppCompatActivity implements
      */
     private void deleteBook() {
         // can't delete a book if we don't have the uri
-        if (bookUri != null) {
-            int rowsDeleted = getContentResolver().delete(bookUri, null, null);
+        if (bookUri == null) {
+            finish();
+            return;
+        }
 
-            if (rowsDeleted == 0) {
-                // we have an immortal book that can not be deleted
-                Toast.makeText(this, R.string.book_not_deleted, Toast.LENGTH_SHORT).show();
-            } else {
+        Inventory.deleteBookAsync(ContentUris.parseId(bookUri), this, deleted -> {
+            if (deleted) {
                 // confirm delete success
                 Toast.makeText(this, R.string.book_deleted, Toast.LENGTH_SHORT).show();
+            } else {
+                // we have an immortal book that can not be deleted
+                Toast.makeText(this, R.string.book_not_deleted, Toast.LENGTH_SHORT).show();
             }
-        }
 
-        // close activity
-        finish();
+            // close activity
+            finish();
+        });
     }
 
-    private boolean saveBook() {
+    /**
+     * Validate user input and save the book.
+     * The activity is closed once the book has been saved.
+     */
+    private void saveBook() {
         String title = bookTitle.getText().toString().trim();
         String priceStr = bookPrice.getText().toString().trim();
         String quantityStr = bookQuantity.getText().toString().trim();
@@ -284,7 +293,8 @@ public class EditorActivity extends AppCompatActivity implements
                 TextUtils.isEmpty(quantityStr)) {
 
             // if this is a new book and all of the fields are empty, no need to create anything
-            return true;
+            finish();
+            return;
         }
 
         if (isNewBook) {
@@ -295,25 +305,26 @@ public class EditorActivity extends AppCompatActivity implements
 
         if (TextUtils.isEmpty(priceStr)) {
             Toast.makeText(this, R.string.please_enter_price, Toast.LENGTH_SHORT).show();
-            return false;
+            return;
         }
 
         try {
             // parse string dollar value to double
             double price = Double.parseDouble(priceStr);
 
-            // convert dollars to cents so we don't have bad values
-            this.book.setPrice((int) Math.floor(price * 100));
+            // convert dollars to cents so we don't have bad values.
+            // rounded so an unchanged price like 0.29 doesn't become 28 cents
+            this.book.setPrice((int) Math.round(price * 100));
 
         } catch (NumberFormatException e) {
             Toast.makeText(this, R.string.please_enter_valid_price, Toast.LENGTH_SHORT).show();
-            return false;
+            return;
         }
 
 
         if (TextUtils.isEmpty(quantityStr)) {
             Toast.makeText(this, R.string.please_enter_quantity, Toast.LENGTH_SHORT).show();
-            return false;
+            return;
         }
 
         try {
@@ -321,7 +332,7 @@ public class EditorActivity extends AppCompatActivity implements
 
         } catch (NumberFormatException e) {
             Toast.makeText(this, R.string.please_enter_valid_qty, Toast.LENGTH_SHORT).show();
-            return false;
+            return;
         }
 
         if (newImageUri != null){
@@ -340,23 +351,71 @@ public class EditorActivity extends AppCompatActivity implements
 
         if (isNewBook) {
             this.book.setSupplier(suppliers.get(newSupplierId));
-            long newBookId = Inventory.insert(this.book, this);
-            if (newBookId > 0) {
-                Toast.makeText(this, R.string.book_inserted, Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, R.string.could_not_insert_book, Toast.LENGTH_SHORT).show();
-                return false;
-            }
+            Inventory.insertAsync(this.book, this, newBookId -> {
+                if (newBookId > 0) {
+                    Toast.makeText(this, R.string.book_inserted, Toast.LENGTH_SHORT).show();
+                    finish();
+                } else {
+                    Toast.makeText(this, R.string.could_not_insert_book, Toast.LENGTH_SHORT).show();
+                }
+            });
         } else {
-            if (Inventory.update(this.book, this)) {
-                Toast.makeText(this, R.string.book_updated, Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, R.string.could_not_update_book, Toast.LENGTH_SHORT).show();
-                return false;
+            updateBook();
+        }
+    }
+
+    /**
+     * Save changes to an existing book.
+     * The activity is closed once the book has been saved.
+     */
+    private void updateBook() {
+        Inventory.updateAsync(this.book, this, result -> {
+            switch (result.getStatus()) {
+                case SAVED:
+                    Toast.makeText(this, R.string.book_updated, Toast.LENGTH_SHORT).show();
+                    finish();
+                    break;
+                case CONFLICT:
+                    resolveConflict(result.getCurrent());
+                    break;
+                default:
+                    Toast.makeText(this, R.string.could_not_update_book, Toast.LENGTH_SHORT).show();
+                    break;
             }
+        });
+    }
+
+    /**
+     * The book was changed by someone else while it was being edited.
+     * <p>
+     * If different fields were changed, the changes are merged and saved again.
+     * Otherwise the user chooses whether to overwrite the other changes or discard theirs.
+     *
+     * @param current book as it is now stored
+     */
+    private void resolveConflict(Book current) {
+        if (this.book.rebase(this.originalBook, current)) {
+            this.originalBook = new Book(current);
+            updateBook();
+            return;
         }
 
-        return true;
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setMessage(R.string.book_changed_conflict_msg);
+
+        // save this version of the changed fields over the stored ones
+        builder.setPositiveButton(R.string.overwrite, (dialog, id) -> {
+            this.book.setVersion(current.getVersion());
+            this.originalBook = new Book(current);
+            updateBook();
+        });
+
+        // keep the stored book
+        builder.setNegativeButton(R.string.discard, (dialog, id) -> finish());
+
+        // Create and show the AlertDialog
+        AlertDialog alertDialog = builder.create();
+        alertDialog.show();
     }
 
     /**
@@ -425,9 +484,18 @@ public class EditorActivity extends AppCompatActivity implements
         }
 
         if (cursor.moveToFirst()) {
+            Book loaded = Inventory.bookDetailCursorToBook(cursor);
+            loaded.setId(ContentUris.parseId(bookUri));
+
+            if (this.book != null && hasBookChanged) {
+                // reloaded after a change, such as a sale from this screen. keep the
+                // unsaved edits, and move them on to the stored book if they don't clash
+                showReloadedBook(loaded);
+                return;
+            }
 
-            this.book = Inventory.bookDetailCursorToBook(cursor);
-            this.book.setId(ContentUris.parseId(bookUri));
+            this.book = loaded;
+            this.originalBook = new Book(this.book);
 
             // Update the views on the screen with the values from the database
             this.bookTitle.setText(this.book.getName());
@@ -441,6 +509,27 @@ public class EditorActivity extends AppCompatActivity implements
         }
     }
 
+    /**
+     * Show a book that was stored while it was being edited, without losing the
+     * user's unsaved edits. If they clash, nothing changes here and saving shows
+     * the conflict.
+     *
+     * @param loaded book as it is now stored
+     */
+    private void showReloadedBook(Book loaded) {
+        int previousQuantity = this.originalBook.getQuantity();
+        if (!this.book.rebase(this.originalBook, loaded)) {
+            return;
+        }
+        this.originalBook = new Book(loaded);
+
+        // sales and orders are saved straight away, so the stored quantity is shown
+        if (loaded.getQuantity() != previousQuantity) {
+            this.bookQuantity.setText(String.valueOf(this.book.getQuantity()));
+        }
+        setupSupplierSection(this.book.getSupplier());
+    }
+
     /**
      * Allow the user to switch to a new supplier
      */
@@ -547,6 +636,9 @@ public class EditorActivity extends AppCompatActivity implements
         TextView supplierName = findViewById(R.id.supplier_name);
         supplierName.setText(supplier.getName());
 
+        // show the supplier's stock and the rest of its books
+        supplierName.setOnClickListener((view) -> openSupplier(supplier.getId()));
+
         // enable the user to email the supplier
         TextView supplierEmail = findViewById(R.id.supplier_email_action);
         supplierEmail.setOnClickListener((view) -> email(supplier.getEmail()));
@@ -561,27 +653,66 @@ public class EditorActivity extends AppCompatActivity implements
                 switchSupplier());
     }
 
+    /**
+     * Open a supplier with the totals of its stock and a list of its books
+     *
+     * @param supplierId of the supplier to open
+     */
+    private void openSupplier(long supplierId) {
+        Intent intent = new Intent(EditorActivity.this, SupplierActivity.class);
+        intent.setData(InventoryContract.SupplierEntry.getSupplierUri(supplierId));
+        startActivity(intent);
+    }
+
     /**
      * Sell a single book and save updated quantity to db
      *
      * @param context app context
      */
     private void sellBook(Context context) {
-        if (!this.book.sellBook()) {
-            Toast.makeText(context, R.string.no_books_to_sell, Toast.LENGTH_SHORT).show();
-            // don't persis data until the user clicks on save
-        } else {
-            this.bookQuantity.setText(String.valueOf(this.book.getQuantity()));
+        if (this.book == null) {
+            // the book hasn't loaded yet
+            return;
         }
+
+        Inventory.adjustQuantityAsync(this.book.getId(), -1, context, quantity -> {
+            if (quantity == InventoryContract.QUANTITY_UNAVAILABLE) {
+                Toast.makeText(context, R.string.no_books_to_sell, Toast.LENGTH_SHORT).show();
+            } else {
+                showQuantity(quantity);
+            }
+        });
     }
 
     /**
-     * Sell a single book and save updated quantity to db
+     * Order a single book and save updated quantity to db
      */
     private void orderBook() {
-        this.book.orderBook();
-        this.bookQuantity.setText(String.valueOf(this.book.getQuantity()));
-        // don't persis data until the user clicks on save
+        if (this.book == null) {
+            return;
+        }
+
+        Inventory.adjustQuantityAsync(this.book.getId(), 1, this, quantity -> {
+            if (quantity == InventoryContract.QUANTITY_UNAVAILABLE) {
+                Toast.makeText(this, R.string.unable_to_update_book, Toast.LENGTH_SHORT).show();
+            } else {
+                showQuantity(quantity);
+            }
+        });
+    }
+
+    /**
+     * Show a quantity that has already been saved to the db
+     *
+     * @param quantity now in stock
+     */
+    private void showQuantity(int quantity) {
+        this.book.setQuantity(quantity);
+
+        // the new quantity is already in the db, so saving shouldn't write it again
+        this.book.clearChanges(Book.FIELD_QUANTITY);
+
+        this.bookQuantity.setText(String.valueOf(quantity));
     }
 
     /**
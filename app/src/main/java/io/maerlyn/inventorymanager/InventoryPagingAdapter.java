@@ -0,0 +1,795 @@
+package io.maerlyn.inventorymanager;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.AppCompatImageButton;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.LongSparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+import io.maerlyn.inventorymanager.data.BookPage;
+import io.maerlyn.inventorymanager.data.BookQuery;
+import io.maerlyn.inventorymanager.data.Inventory;
+import io.maerlyn.inventorymanager.data.InventoryContract;
+import io.maerlyn.inventorymanager.data.InventoryContract.BookEntry;
+import io.maerlyn.inventorymanager.data.QuantityWriteBehind;
+
+
+/**
+ * Adapter that pages inventory data into a RecyclerView as the user scrolls
+ * <p>
+ * The first page is shown as soon as it is read, and the next page is read in the
+ * background once the list gets close to the end of what has been loaded. Only the
+ * columns the list shows are kept, in flat arrays, so memory grows with how far the
+ * user has scrolled rather than with the size of the catalogue.
+ * <p>
+ * When books change, only the rows on screen and a page or so around them are read
+ * again, starting from the page they are in, and compared with the rows shown on the
+ * loader thread. Only rows that actually changed are rebound. Rows after them are
+ * dropped and paged in again as the list scrolls, and rows before them are read again
+ * once they are shown.
+ * <p>
+ * Rows are bound from those arrays into reused buffers in each {@link ViewHolder},
+ * so scrolling does no database work and allocates next to nothing.
+ *
+ * @author Maerlyn Broadbent
+ */
+public class InventoryPagingAdapter extends RecyclerView.Adapter<InventoryPagingAdapter.ViewHolder> {
+
+    // rows read by each query
+    private static final int PAGE_SIZE = 50;
+
+    // start reading the next page once the list is this close to the last loaded row
+    private static final int PREFETCH_DISTANCE = 20;
+
+    // partial rebinds, used when only part of a row has changed
+    private static final Object PAYLOAD_QUANTITY = new Object();
+    private static final Object PAYLOAD_SELECTION = new Object();
+
+    private final Context context;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // pages are read and compared one at a time, off the main thread
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+
+    // quantity changes that have not been saved yet
+    private final QuantityWriteBehind writeBehind;
+
+    // shown in front of every price
+    private final char[] currencyPrefix;
+
+    // shared by every row. the row is found through the holder tagged on the view
+    private final View.OnClickListener itemClickListener = this::onItemClicked;
+    private final View.OnLongClickListener itemLongClickListener = this::onItemLongClicked;
+    private final View.OnClickListener sellClickListener = this::onSellClicked;
+
+    // reloads the rows on screen whenever books change
+    private final ContentObserver observer;
+
+    // list showing the rows, used to find the ones on screen. null while detached
+    private RecyclerView recyclerView;
+
+    // tells the user about sales that were shown but couldn't be saved
+    private final QuantityWriteBehind.Listener writeBehindListener = new QuantityWriteBehind.Listener() {
+        @Override
+        public void onPendingChanged() {
+            // rows are updated as they are sold, and reloaded once the sales are saved
+        }
+
+        @Override
+        public void onChangesRejected(long[] bookIds, int[] deltas) {
+            Toast.makeText(context, context.getResources().getQuantityString(
+                    R.plurals.sales_not_saved, bookIds.length, bookIds.length),
+                    Toast.LENGTH_LONG).show();
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_QUANTITY);
+        }
+    };
+
+    // sort order and filters. replaced, never changed, so it can be read off the main thread
+    private BookQuery query;
+
+    // rows currently shown. replaced, never changed, so it can be compared off the main thread
+    private Snapshot snapshot = Snapshot.EMPTY;
+
+    // ids of the selected books. a sparse array so checking a row doesn't box its id
+    private final LongSparseArray<Boolean> selectedIds = new LongSparseArray<>();
+
+    private boolean hasMore = true;
+    private boolean loading = false;
+
+    // rows before this one were not read again by the last reload, so may be out of date
+    private int staleBefore = 0;
+
+    // moves forward on every reload, so pages read before it are dropped
+    private int generation = 0;
+
+    /**
+     * Receives clicks and selection changes on the main thread
+     */
+    interface Listener {
+        void onBookClicked(long bookId);
+
+        void onSelectionChanged(int selectedCount);
+    }
+
+    /**
+     * Constructs a new {@link InventoryPagingAdapter} and starts reading the first page.
+     * {@link #close()} must be called once the adapter is no longer needed.
+     *
+     * @param context  The context
+     * @param query    sort order and filters of the list
+     * @param listener notified of clicks and selection changes
+     */
+    InventoryPagingAdapter(Context context, BookQuery query, Listener listener) {
+        this.context = context;
+        this.query = new BookQuery(query);
+        this.listener = listener;
+        this.writeBehind = QuantityWriteBehind.getInstance(context);
+        this.currencyPrefix = context.getString(R.string.currency_symbol, "").toCharArray();
+        setHasStableIds(true);
+
+        this.observer = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                reload(RecyclerView.NO_POSITION);
+            }
+        };
+        context.getContentResolver().registerContentObserver(
+                BookEntry.CONTENT_URI, true, observer);
+        writeBehind.addListener(writeBehindListener);
+
+        reload(0, PAGE_SIZE);
+    }
+
+    /**
+     * Stop watching for changes and stop reading pages
+     */
+    void close() {
+        context.getContentResolver().unregisterContentObserver(observer);
+        writeBehind.removeListener(writeBehindListener);
+        loader.shutdownNow();
+    }
+
+    /**
+     * Show the list with a different sort order or filters. The rows are read again
+     * from the start, and the selection is kept for books that are still shown.
+     *
+     * @param query sort order and filters of the list
+     */
+    void setQuery(BookQuery query) {
+        this.query = new BookQuery(query);
+
+        // rows read for the old query say nothing about how far to read the new one
+        reload(0, PAGE_SIZE);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        this.recyclerView = null;
+    }
+
+    @Override
+    public int getItemCount() {
+        return snapshot.count;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return snapshot.ids[position];
+    }
+
+    /**
+     * Makes a new blank list item view. No data is set (or bound) to the views yet.
+     *
+     * @param parent   The parent to which the new view is attached to
+     * @param viewType unused, all rows look the same
+     * @return holder for the newly created list item view.
+     */
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        // Inflate a list item view using the layout specified in list_item.xml
+        LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        View view = inflater.inflate(R.layout.inventory_item, parent, false);
+
+        ViewHolder holder = new ViewHolder(view);
+        view.setTag(holder);
+        view.setOnClickListener(itemClickListener);
+        view.setOnLongClickListener(itemLongClickListener);
+
+        holder.sellBook.setTag(holder);
+        holder.sellBook.setOnClickListener(sellClickListener);
+
+        return holder;
+    }
+
+    /**
+     * Populate a row, reading ahead if the row is near the end of the loaded data
+     *
+     * @param holder   of the row's views
+     * @param position of the row to show
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        Snapshot rows = snapshot;
+        holder.bookId = rows.ids[position];
+        holder.storedQuantity = rows.quantities[position];
+
+        holder.nameView.setText(rows.titles[position]);
+
+        int length = formatPrice(rows.prices[position], holder.price);
+        holder.priceView.setText(holder.price, 0, length);
+
+        bindQuantity(holder);
+        holder.itemView.setActivated(isSelected(holder.bookId));
+
+        if (position >= rows.count - PREFETCH_DISTANCE) {
+            loadNextPage();
+        } else if (position < staleBefore && !loading) {
+            reload(position);
+        }
+    }
+
+    /**
+     * Update only the parts of a row that have changed
+     *
+     * @param holder   of the row's views
+     * @param position of the row to show
+     * @param payloads parts of the row that changed, or empty to bind the whole row
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position, List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+
+        for (Object payload : payloads) {
+            if (payload == PAYLOAD_QUANTITY) {
+                holder.storedQuantity = snapshot.quantities[position];
+                bindQuantity(holder);
+            } else if (payload == PAYLOAD_SELECTION) {
+                holder.itemView.setActivated(isSelected(holder.bookId));
+            }
+        }
+    }
+
+    private void bindQuantity(ViewHolder holder) {
+        // include sales that haven't been saved yet
+        int quantity = holder.storedQuantity + writeBehind.getPendingDelta(holder.bookId);
+        int length = formatNumber(quantity, holder.quantity, 0);
+        holder.quantityView.setText(holder.quantity, 0, length);
+    }
+
+    /**
+     * Return the ids of the selected books
+     *
+     * @return selected book ids
+     */
+    long[] getSelectedIds() {
+        long[] ids = new long[selectedIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = selectedIds.keyAt(i);
+        }
+        return ids;
+    }
+
+    private boolean isSelected(long bookId) {
+        return selectedIds.indexOfKey(bookId) >= 0;
+    }
+
+    /**
+     * Deselect every book
+     */
+    void clearSelection() {
+        if (selectedIds.size() == 0) {
+            return;
+        }
+        selectedIds.clear();
+        notifyItemRangeChanged(0, snapshot.count, PAYLOAD_SELECTION);
+        listener.onSelectionChanged(0);
+    }
+
+    // open a book, or change its selection while books are selected
+    private void onItemClicked(View view) {
+        ViewHolder holder = (ViewHolder) view.getTag();
+        if (selectedIds.size() == 0) {
+            listener.onBookClicked(holder.bookId);
+        } else {
+            toggleSelection(holder);
+        }
+    }
+
+    // a long press starts selecting books
+    private boolean onItemLongClicked(View view) {
+        toggleSelection((ViewHolder) view.getTag());
+        return true;
+    }
+
+    private void toggleSelection(ViewHolder holder) {
+        int position = holder.getAdapterPosition();
+        if (position == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        if (isSelected(holder.bookId)) {
+            selectedIds.remove(holder.bookId);
+        } else {
+            selectedIds.put(holder.bookId, Boolean.TRUE);
+        }
+        notifyItemChanged(position, PAYLOAD_SELECTION);
+        listener.onSelectionChanged(selectedIds.size());
+    }
+
+    // sell a book from the row whose button was clicked
+    private void onSellClicked(View button) {
+        ViewHolder holder = (ViewHolder) button.getTag();
+        int position = holder.getAdapterPosition();
+        if (position == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        if (writeBehind.adjust(holder.bookId, -1, holder.storedQuantity)
+                == InventoryContract.QUANTITY_UNAVAILABLE) {
+            Toast.makeText(button.getContext(), R.string.no_books_to_sell, Toast.LENGTH_SHORT).show();
+        } else {
+            // the sale is shown straight away and saved to the db shortly after
+            notifyItemChanged(position, PAYLOAD_QUANTITY);
+        }
+    }
+
+    /**
+     * Read the page after the last loaded row in the background
+     */
+    private void loadNextPage() {
+        if (loading || !hasMore) {
+            return;
+        }
+        loading = true;
+
+        int loadGeneration = generation;
+        Snapshot rows = snapshot;
+        BookQuery pageQuery = query;
+        long afterId = rows.count == 0 ? -1 : rows.ids[rows.count - 1];
+
+        loader.execute(() -> {
+            BookPage page = Inventory.getBookPage(
+                    pageQuery, rows.lastKeys, afterId, PAGE_SIZE, context);
+            handler.post(() -> onPageLoaded(loadGeneration, rows, page));
+        });
+    }
+
+    /**
+     * Called on the main thread once the next page has been read
+     *
+     * @param loadGeneration generation the page was requested in
+     * @param previous       rows the page follows on from
+     * @param page           that was read, or null if it could not be read
+     */
+    private void onPageLoaded(int loadGeneration, Snapshot previous, BookPage page) {
+        // a reload has started since this page was requested
+        if (loadGeneration != generation || previous != snapshot) {
+            return;
+        }
+        loading = false;
+
+        if (page == null) {
+            // reading is tried again the next time the end of the list is shown
+            return;
+        }
+
+        snapshot = previous.append(page);
+        hasMore = page.hasMore;
+        notifyItemRangeInserted(previous.count, page.size);
+    }
+
+    /**
+     * Read the rows on screen again, along with a page or so either side of them
+     *
+     * @param position row that is about to be shown, or {@link RecyclerView#NO_POSITION}
+     */
+    private void reload(int position) {
+        int first = RecyclerView.NO_POSITION;
+        int last = RecyclerView.NO_POSITION;
+        if (recyclerView != null && recyclerView.getLayoutManager() instanceof LinearLayoutManager) {
+            LinearLayoutManager layout = (LinearLayoutManager) recyclerView.getLayoutManager();
+            first = layout.findFirstVisibleItemPosition();
+            last = layout.findLastVisibleItemPosition();
+        }
+        if (first == RecyclerView.NO_POSITION) {
+            first = 0;
+            last = 0;
+        }
+        if (position != RecyclerView.NO_POSITION) {
+            first = Math.min(first, position);
+            last = Math.max(last, position);
+        }
+
+        // only the sort key at the end of each page is known, so start from one
+        int start = snapshot.pageStartBefore(Math.max(0, first - PREFETCH_DISTANCE));
+        int end = last + PREFETCH_DISTANCE + 1;
+        reload(start, Math.max(end - start, PAGE_SIZE));
+    }
+
+    /**
+     * Read the rows from a page boundary on again, in a single query, and work out
+     * which rows changed on the loader thread. Rows after the ones read are dropped.
+     *
+     * @param start position of the first row to read, 0 or the end of a loaded page
+     * @param limit most rows to read
+     */
+    private void reload(int start, int limit) {
+        loading = true;
+        int loadGeneration = ++generation;
+        Snapshot previous = snapshot;
+        BookQuery pageQuery = query;
+        String[] afterKeys = previous.keysBefore(start);
+        long afterId = start == 0 ? -1 : previous.ids[start - 1];
+
+        // rows after these are dropped rather than compared
+        int oldEnd = Math.min(previous.count, start + limit);
+
+        loader.execute(() -> {
+            BookPage page = Inventory.getBookPage(pageQuery, afterKeys, afterId, limit, context);
+            if (page == null) {
+                handler.post(() -> onReloaded(loadGeneration, previous, start, oldEnd, null, null, false));
+                return;
+            }
+
+            Snapshot next = previous.replaceFrom(start, page);
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(
+                    new SnapshotDiff(previous, next, start, oldEnd), false);
+            handler.post(() -> onReloaded(loadGeneration, previous, start, oldEnd, next, diff, page.hasMore));
+        });
+    }
+
+    /**
+     * Called on the main thread once the rows have been read again
+     *
+     * @param loadGeneration generation the rows were requested in
+     * @param previous       rows the changes were worked out against
+     * @param start          position of the first row that was read
+     * @param oldEnd         position after the last row of previous that was compared
+     * @param next           rows that were read, or null if they could not be read
+     * @param diff           changes from previous to next, between start and oldEnd
+     * @param nextHasMore    true if there may be more rows after next
+     */
+    private void onReloaded(int loadGeneration, Snapshot previous, int start, int oldEnd,
+                            Snapshot next, DiffUtil.DiffResult diff, boolean nextHasMore) {
+        if (loadGeneration != generation) {
+            return;
+        }
+        loading = false;
+
+        if (next == null) {
+            return;
+        }
+
+        // drop selected books that were read again and are no longer there.
+        // books in rows that were dropped may still exist, so they stay selected
+        if (selectedIds.size() > 0) {
+            Set<Long> ids = next.idSet(start, next.count);
+            int selectedCount = selectedIds.size();
+            for (int i = start; i < oldEnd; i++) {
+                long id = previous.ids[i];
+                if (isSelected(id) && !ids.contains(id)) {
+                    selectedIds.remove(id);
+                }
+            }
+            if (selectedIds.size() != selectedCount) {
+                listener.onSelectionChanged(selectedIds.size());
+            }
+        }
+
+        // the rows on screen should not have changed while loading, but if they
+        // did the diff no longer applies
+        boolean stale = previous != snapshot;
+
+        snapshot = next;
+        hasMore = nextHasMore;
+        staleBefore = start;
+        if (stale) {
+            notifyDataSetChanged();
+        } else {
+            // dropped rows first, so the diff's positions still hold
+            if (oldEnd < previous.count) {
+                notifyItemRangeRemoved(oldEnd, previous.count - oldEnd);
+            }
+            diff.dispatchUpdatesTo(new OffsetUpdates(start));
+        }
+    }
+
+    /**
+     * Write a price in cents as dollars and cents, after the currency symbol
+     *
+     * @param cents  price to write
+     * @param buffer to write into
+     * @return number of characters written
+     */
+    private int formatPrice(int cents, char[] buffer) {
+        System.arraycopy(currencyPrefix, 0, buffer, 0, currencyPrefix.length);
+        int length = currencyPrefix.length;
+
+        if (cents < 0) {
+            buffer[length++] = '-';
+            cents = -cents;
+        }
+
+        length = formatNumber(cents / 100, buffer, length);
+        buffer[length++] = '.';
+        buffer[length++] = (char) ('0' + cents % 100 / 10);
+        buffer[length++] = (char) ('0' + cents % 10);
+        return length;
+    }
+
+    /**
+     * Write a whole number without allocating a String
+     *
+     * @param value  to write
+     * @param buffer to write into
+     * @param offset position in the buffer to start writing at
+     * @return position in the buffer after the last character written
+     */
+    private static int formatNumber(int value, char[] buffer, int offset) {
+        if (value < 0) {
+            buffer[offset++] = '-';
+            value = -value;
+        }
+
+        // count the digits, then write them from the right
+        int digits = 1;
+        for (int remaining = value / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+
+        int end = offset + digits;
+        for (int i = end - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Rows shown by the list. Never changed once created.
+     * <p>
+     * The sort key of the last row of each page is kept, so the rows can be read
+     * again from the end of any loaded page.
+     */
+    private static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new long[0], new String[0], new int[0],
+                new int[0], 0, new int[0], new String[0][]);
+
+        final long[] ids;
+        final String[] titles;
+        final int[] prices;
+        final int[] quantities;
+        final int count;
+
+        // position after the last row of each page, and the sort key of that row
+        final int[] pageEnds;
+        final String[][] pageKeys;
+
+        // sort key of the last row, or null if there are no rows
+        final String[] lastKeys;
+
+        Snapshot(long[] ids, String[] titles, int[] prices, int[] quantities, int count,
+                 int[] pageEnds, String[][] pageKeys) {
+            this.ids = ids;
+            this.titles = titles;
+            this.prices = prices;
+            this.quantities = quantities;
+            this.count = count;
+            this.pageEnds = pageEnds;
+            this.pageKeys = pageKeys;
+            this.lastKeys = pageKeys.length == 0 ? null : pageKeys[pageKeys.length - 1];
+        }
+
+        // return a new snapshot with a page added to the end
+        Snapshot append(BookPage page) {
+            return replaceFrom(count, page);
+        }
+
+        // return a new snapshot with the rows from start on replaced by a page
+        Snapshot replaceFrom(int start, BookPage page) {
+            int newCount = start + page.size;
+            long[] newIds = new long[newCount];
+            String[] newTitles = new String[newCount];
+            int[] newPrices = new int[newCount];
+            int[] newQuantities = new int[newCount];
+
+            System.arraycopy(ids, 0, newIds, 0, start);
+            System.arraycopy(titles, 0, newTitles, 0, start);
+            System.arraycopy(prices, 0, newPrices, 0, start);
+            System.arraycopy(quantities, 0, newQuantities, 0, start);
+
+            System.arraycopy(page.ids, 0, newIds, start, page.size);
+            System.arraycopy(page.titles, 0, newTitles, start, page.size);
+            System.arraycopy(page.prices, 0, newPrices, start, page.size);
+            System.arraycopy(page.quantities, 0, newQuantities, start, page.size);
+
+            // pages that end after start are replaced
+            int pages = 0;
+            while (pages < pageEnds.length && pageEnds[pages] <= start) {
+                pages++;
+            }
+            int[] newPageEnds = Arrays.copyOf(pageEnds, page.size == 0 ? pages : pages + 1);
+            String[][] newPageKeys = Arrays.copyOf(pageKeys, newPageEnds.length);
+            if (page.size > 0) {
+                newPageEnds[pages] = newCount;
+                newPageKeys[pages] = page.getLastKeys();
+            }
+
+            return new Snapshot(newIds, newTitles, newPrices, newQuantities, newCount,
+                    newPageEnds, newPageKeys);
+        }
+
+        // return the end of the last page at or before a position, or 0
+        int pageStartBefore(int position) {
+            int start = 0;
+            for (int i = 0; i < pageEnds.length && pageEnds[i] <= position; i++) {
+                start = pageEnds[i];
+            }
+            return start;
+        }
+
+        // return the sort key of the row before start, which must be 0 or the end of a page
+        String[] keysBefore(int start) {
+            for (int i = 0; i < pageEnds.length; i++) {
+                if (pageEnds[i] == start) {
+                    return pageKeys[i];
+                }
+            }
+            return null;
+        }
+
+        Set<Long> idSet(int start, int end) {
+            Set<Long> set = new HashSet<>((end - start) * 2);
+            for (int i = start; i < end; i++) {
+                set.add(ids[i]);
+            }
+            return set;
+        }
+    }
+
+    /**
+     * Compares the rows of two snapshots from the same position on, by book id, and
+     * reports when only the quantity changed
+     */
+    private static class SnapshotDiff extends DiffUtil.Callback {
+        private final Snapshot oldRows;
+        private final Snapshot newRows;
+
+        // position of the first row compared, and the position after the last old row
+        private final int start;
+        private final int oldEnd;
+
+        SnapshotDiff(Snapshot oldRows, Snapshot newRows, int start, int oldEnd) {
+            this.oldRows = oldRows;
+            this.newRows = newRows;
+            this.start = start;
+            this.oldEnd = oldEnd;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldEnd - start;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newRows.count - start;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return oldRows.ids[start + oldPosition] == newRows.ids[start + newPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            int oldRow = start + oldPosition;
+            int newRow = start + newPosition;
+            return oldRows.quantities[oldRow] == newRows.quantities[newRow]
+                    && oldRows.prices[oldRow] == newRows.prices[newRow]
+                    && oldRows.titles[oldRow].equals(newRows.titles[newRow]);
+        }
+
+        @Override
+        public Object getChangePayload(int oldPosition, int newPosition) {
+            int oldRow = start + oldPosition;
+            int newRow = start + newPosition;
+
+            // only the quantity changed, so there is no need to rebind the title and price
+            if (oldRows.prices[oldRow] == newRows.prices[newRow]
+                    && oldRows.titles[oldRow].equals(newRows.titles[newRow])) {
+                return PAYLOAD_QUANTITY;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Passes on changes worked out for rows part way down the list, at their place in it
+     */
+    private class OffsetUpdates implements ListUpdateCallback {
+        private final int offset;
+
+        OffsetUpdates(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(offset + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(offset + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(offset + fromPosition, offset + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notifyItemRangeChanged(offset + position, count, payload);
+        }
+    }
+
+    /**
+     * Holds references to views, and the buffers used to fill them, to improve performance
+     */
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        // longest int plus sign, and room for the currency symbol and cents
+        private static final int NUMBER_BUFFER_SIZE = 32;
+
+        @BindView(R.id.book_name)
+        TextView nameView;
+        @BindView(R.id.book_price)
+        TextView priceView;
+        @BindView(R.id.book_quantity)
+        TextView quantityView;
+        @BindView(R.id.sell_book)
+        AppCompatImageButton sellBook;
+
+        // row currently shown by this view
+        long bookId;
+        int storedQuantity;
+
+        // reused for every row this view shows
+        final char[] price = new char[NUMBER_BUFFER_SIZE];
+        final char[] quantity = new char[NUMBER_BUFFER_SIZE];
+
+        ViewHolder(View view) {
+            super(view);
+            ButterKnife.bind(this, view);
+        }
+    }
+}
@@ -1,49 +1,75 @@
 package io.maerlyn.inventorymanager;
 
-import android.app.LoaderManager;
+import android.app.AlertDialog;
+import android.app.SearchManager;
 import android.content.ContentUris;
+import android.content.Context;
 import android.content.Intent;
-import android.content.Loader;
-import android.database.Cursor;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.view.ActionMode;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.Button;
-import android.widget.ListView;
+import android.widget.EditText;
 import android.widget.ProgressBar;
 import android.widget.Toast;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
+import io.maerlyn.inventorymanager.data.BookQuery;
 import io.maerlyn.inventorymanager.data.Inventory;
 import io.maerlyn.inventorymanager.data.InventoryContract;
+import io.maerlyn.inventorymanager.data.QuantityWriteBehind;
 import io.maerlyn.inventorymanager.model.Book;
 import io.maerlyn.inventorymanager.model.Supplier;
 
 /**
  * Displays a list of available books
  */
-public class MainActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor> {
+public class MainActivity extends AppCompatActivity implements InventoryPagingAdapter.Listener {
 
-    // id for the inventory data loader
-    private static final int INVENTORY_SUMMARY_LOADER = 0;
+    // Adapter for the RecyclerView to display the inventory summary
+    InventoryPagingAdapter pagingAdapter;
 
-    // Adapter for the ListView to display the inventory summary
-    InventoryCursorAdapter cursorAdapter;
+    // shown while books are selected
+    private ActionMode selectionMode;
+
+    // sort order and filters of the list, applied by the provider
+    private final BookQuery bookQuery = new BookQuery();
+
+    // keys used to keep the sort order and filters when the activity is recreated
+    private static final String STATE_SORT = "sort";
+    private static final String STATE_STOCK = "stock";
+    private static final String STATE_MIN_PRICE = "min_price";
+    private static final String STATE_MAX_PRICE = "max_price";
+    private static final String STATE_SUPPLIER_ID = "supplier_id";
+    private static final String STATE_SEARCH = "search";
+
+    // the options menu, kept so its checked items can follow the sort order and filters
+    private Menu optionsMenu;
+
+    // searches while the user types, once they stop for a moment
+    private final Handler searchHandler = new Handler();
+    private final Runnable searchRunnable = () -> pagingAdapter.setQuery(bookQuery);
 
     @BindView(R.id.loading_spinner)
     ProgressBar loadingSpinner;
 
     @BindView(R.id.inventory_list)
-    ListView inventoryListView;
+    RecyclerView inventoryListView;
 
     @BindView(R.id.empty_view)
     View emptyView;
@@ -56,26 +82,39 @@ public class MainActivity extends AppCompatActivity implements
         // bind annotated views
         ButterKnife.bind(this);
 
-        // the empty view will only be displayed when we can't get any data from the database
-        inventoryListView.setEmptyView(emptyView);
-
-        // adapter used to display inventory data
-        cursorAdapter = new InventoryCursorAdapter(this, null);
-        inventoryListView.setAdapter(cursorAdapter);
-
-        // click listener to edit a book's details
-        inventoryListView.setOnItemClickListener((adapterView, view, position, id) -> {
-            Intent intent = new Intent(MainActivity.this, EditorActivity.class);
-
-            // build up the uri of the book that was just clicked
-            Uri currentPetUri = ContentUris.withAppendedId(
-                    InventoryContract.BookEntry.CONTENT_URI, id);
+        if (savedInstanceState != null) {
+            bookQuery.setSort(savedInstanceState.getString(STATE_SORT, bookQuery.getSort()));
+            bookQuery.setStock(savedInstanceState.getString(STATE_STOCK));
+            bookQuery.setMinPrice(savedInstanceState.getInt(STATE_MIN_PRICE, BookQuery.NONE));
+            bookQuery.setMaxPrice(savedInstanceState.getInt(STATE_MAX_PRICE, BookQuery.NONE));
+            bookQuery.setSupplierId(savedInstanceState.getLong(STATE_SUPPLIER_ID, BookQuery.NONE));
+            bookQuery.setSearch(savedInstanceState.getString(STATE_SEARCH));
+        }
 
-            // add the uri to the intent data so we know which record we're editing
-            intent.setData(currentPetUri);
+        // adapter used to display inventory data. it reads pages of books as the list scrolls
+        pagingAdapter = new InventoryPagingAdapter(this, bookQuery, this);
+        inventoryListView.setLayoutManager(new LinearLayoutManager(this));
+        inventoryListView.setHasFixedSize(true);
+        inventoryListView.setAdapter(pagingAdapter);
 
-            startActivity(intent);
+        // the empty view will only be displayed when we can't get any data from the database
+        pagingAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
         });
+        updateEmptyView();
 
         // Button to create a new book
         FloatingActionButton fab = findViewById(R.id.add_new_book);
@@ -84,46 +123,105 @@ public class MainActivity extends AppCompatActivity implements
             startActivity(intent);
         });
 
-        createDefaultSupplier();
+        // make sure new books always have a supplier to use
+        Inventory.submitWrite(() -> {
+            createDefaultSupplier();
+            return null;
+        }, this, null);
 
-        // get inventory data
-        getLoaderManager().initLoader(INVENTORY_SUMMARY_LOADER, null, this);
+        if (savedInstanceState == null) {
+            handleSearchIntent(getIntent());
+        }
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        handleSearchIntent(intent);
     }
 
     /**
-     * Return a {@link Loader<Cursor>} to populate the inventory summary {@link ListView}
+     * Handle a search submitted from outside the list, or a search suggestion
+     * that was picked
      *
-     * @param id     of the loader
-     * @param bundle {@link Bundle} arguments
-     * @return {@link Loader<Cursor>} used to populate the ListView
+     * @param intent that started or was delivered to this activity
      */
+    private void handleSearchIntent(Intent intent) {
+        if (Intent.ACTION_SEARCH.equals(intent.getAction())) {
+            setSearch(intent.getStringExtra(SearchManager.QUERY), 0);
+        } else if (Intent.ACTION_VIEW.equals(intent.getAction()) && intent.getData() != null) {
+            // suggestions point at the book they suggest
+            Uri bookUri = intent.getData();
+            onBookClicked(ContentUris.parseId(bookUri));
+        }
+    }
+
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
-        return Inventory.getSummaryLoader(this);
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_SORT, bookQuery.getSort());
+        outState.putString(STATE_STOCK, bookQuery.getStock());
+        outState.putInt(STATE_MIN_PRICE, bookQuery.getMinPrice());
+        outState.putInt(STATE_MAX_PRICE, bookQuery.getMaxPrice());
+        outState.putLong(STATE_SUPPLIER_ID, bookQuery.getSupplierId());
+        outState.putString(STATE_SEARCH, bookQuery.getSearch());
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        // save any pending sales before another screen reads the data
+        QuantityWriteBehind.getInstance(this).flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchHandler.removeCallbacks(searchRunnable);
+        pagingAdapter.close();
+    }
 
     /**
-     * Called when a previously created loader has finished its load
+     * Open a book in the editor
      *
-     * @param loader that has just finished getting data
-     * @param cursor containing the data
+     * @param bookId of the book that was clicked
      */
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-        // Update {@link InventoryCursorAdapter} with an updated data set
-        cursorAdapter.swapCursor(cursor);
+    public void onBookClicked(long bookId) {
+        Intent intent = new Intent(MainActivity.this, EditorActivity.class);
+
+        // add the uri to the intent data so we know which record we're editing
+        intent.setData(ContentUris.withAppendedId(InventoryContract.BookEntry.CONTENT_URI, bookId));
+
+        startActivity(intent);
     }
 
     /**
-     * Called when a previously created loader is being reset, and thus making its data unavailable.
+     * Show or hide the selection actions as books are selected
      *
-     * @param loader that has just been reset
+     * @param selectedCount number of books now selected
      */
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        // The loader has been reset so we need to remove the current data
-        cursorAdapter.swapCursor(null);
+    public void onSelectionChanged(int selectedCount) {
+        if (selectedCount == 0) {
+            if (selectionMode != null) {
+                selectionMode.finish();
+            }
+            return;
+        }
+
+        if (selectionMode == null) {
+            selectionMode = startSupportActionMode(new SelectionModeCallback());
+        }
+        if (selectionMode != null) {
+            selectionMode.setTitle(getString(R.string.books_selected, selectedCount));
+        }
+    }
+
+    private void updateEmptyView() {
+        emptyView.setVisibility(pagingAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
     /**
@@ -135,9 +233,97 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.inventory_summary, menu);
+        optionsMenu = menu;
+
+        // search as the user types, with suggestions from the provider
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        SearchManager searchManager = (SearchManager) getSystemService(Context.SEARCH_SERVICE);
+        searchView.setSearchableInfo(searchManager.getSearchableInfo(getComponentName()));
+
+        // show the search that was running before the activity was recreated
+        if (bookQuery.getSearch() != null) {
+            searchItem.expandActionView();
+            searchView.setQuery(bookQuery.getSearch(), false);
+        }
+
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                setSearch(query, 0);
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                setSearch(newText, getResources().getInteger(R.integer.search_delay_millis));
+                return true;
+            }
+        });
         return true;
     }
 
+    /**
+     * Check the menu items matching the current sort order and stock filter
+     *
+     * @param menu to be prepared
+     * @return true so the menu is shown
+     */
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        updateOptionsMenu(menu);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    // check the menu items matching the current sort order and stock filter
+    private void updateOptionsMenu(Menu menu) {
+        switch (bookQuery.getSort()) {
+            case InventoryContract.SORT_PRICE:
+                menu.findItem(R.id.action_sort_price).setChecked(true);
+                break;
+            case InventoryContract.SORT_QUANTITY:
+                menu.findItem(R.id.action_sort_quantity).setChecked(true);
+                break;
+            case InventoryContract.SORT_SUPPLIER:
+                menu.findItem(R.id.action_sort_supplier).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.action_sort_title).setChecked(true);
+                break;
+        }
+
+        String stock = bookQuery.getStock();
+        if (InventoryContract.STOCK_IN.equals(stock)) {
+            menu.findItem(R.id.action_filter_stock_in).setChecked(true);
+        } else if (InventoryContract.STOCK_OUT.equals(stock)) {
+            menu.findItem(R.id.action_filter_stock_out).setChecked(true);
+        } else if (InventoryContract.STOCK_LOW.equals(stock)) {
+            menu.findItem(R.id.action_filter_stock_low).setChecked(true);
+        } else {
+            menu.findItem(R.id.action_filter_stock_all).setChecked(true);
+        }
+
+        menu.findItem(R.id.action_filter_clear).setVisible(bookQuery.isFiltered());
+    }
+
+    /**
+     * Search the list, or show every book again if there is nothing to search for
+     *
+     * @param text        typed by the user
+     * @param delayMillis time to wait before searching, in case more is typed
+     */
+    private void setSearch(String text, int delayMillis) {
+        String search = text == null || text.trim().isEmpty() ? null : text.trim();
+        if (TextUtils.equals(search, bookQuery.getSearch())) {
+            return;
+        }
+
+        bookQuery.setSearch(search);
+        searchHandler.removeCallbacks(searchRunnable);
+        searchHandler.postDelayed(searchRunnable, delayMillis);
+    }
+
     /**
      * Handles clicks on menu items in the action bar
      *
@@ -148,35 +334,222 @@ public class MainActivity extends AppCompatActivity implements
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case R.id.action_insert_dummy_data:
-                AsyncSampleDataInserter sampleDataInserter = new AsyncSampleDataInserter();
-                sampleDataInserter.execute();
                 showSpinner();
+                Inventory.submitWrite(this::insertDummyData, this, saved -> {
+                    hideSpinner();
+                    if (!saved) {
+                        Toast.makeText(this, R.string.could_not_insert_sample_data,
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
                 return true;
             case R.id.action_delete_all_entries:
                 deleteAllData();
                 return true;
+            case R.id.action_sort_title:
+                setSort(InventoryContract.SORT_TITLE);
+                return true;
+            case R.id.action_sort_price:
+                setSort(InventoryContract.SORT_PRICE);
+                return true;
+            case R.id.action_sort_quantity:
+                setSort(InventoryContract.SORT_QUANTITY);
+                return true;
+            case R.id.action_sort_supplier:
+                setSort(InventoryContract.SORT_SUPPLIER);
+                return true;
+            case R.id.action_filter_stock_all:
+                setStockFilter(null);
+                return true;
+            case R.id.action_filter_stock_in:
+                setStockFilter(InventoryContract.STOCK_IN);
+                return true;
+            case R.id.action_filter_stock_out:
+                setStockFilter(InventoryContract.STOCK_OUT);
+                return true;
+            case R.id.action_filter_stock_low:
+                setStockFilter(InventoryContract.STOCK_LOW);
+                return true;
+            case R.id.action_filter_price:
+                showPriceFilterDialog();
+                return true;
+            case R.id.action_filter_supplier:
+                showSupplierFilterDialog();
+                return true;
+            case R.id.action_filter_clear:
+                bookQuery.clearFilters();
+                applyBookQuery();
+                return true;
         }
         return false;
     }
 
+    private void setSort(String sort) {
+        bookQuery.setSort(sort);
+        applyBookQuery();
+    }
+
+    private void setStockFilter(String stock) {
+        bookQuery.setStock(stock);
+        applyBookQuery();
+    }
+
+    /**
+     * Show the list again with the current sort order and filters
+     */
+    private void applyBookQuery() {
+        searchHandler.removeCallbacks(searchRunnable);
+        pagingAdapter.setQuery(bookQuery);
+
+        // updated in place, as rebuilding the menu would close the search view
+        if (optionsMenu != null) {
+            updateOptionsMenu(optionsMenu);
+        }
+    }
+
+    /**
+     * Ask for the lowest and highest price of books to show.
+     * Either one can be left empty
+     */
+    private void showPriceFilterDialog() {
+        View view = getLayoutInflater().inflate(R.layout.price_range_dialog, null);
+        EditText minPriceInput = view.findViewById(R.id.min_price);
+        EditText maxPriceInput = view.findViewById(R.id.max_price);
+        minPriceInput.setText(formatPrice(bookQuery.getMinPrice()));
+        maxPriceInput.setText(formatPrice(bookQuery.getMaxPrice()));
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.filter_price);
+        builder.setView(view);
+        builder.setPositiveButton(R.string.apply, (dialog, id) -> {
+            try {
+                bookQuery.setMinPrice(parsePrice(minPriceInput.getText().toString()));
+                bookQuery.setMaxPrice(parsePrice(maxPriceInput.getText().toString()));
+                applyBookQuery();
+            } catch (NumberFormatException e) {
+                Toast.makeText(this, R.string.please_enter_valid_price, Toast.LENGTH_SHORT).show();
+            }
+        });
+        builder.setNegativeButton(R.string.cancel, null);
+        builder.create().show();
+    }
+
+    /**
+     * Convert a dollar value typed by the user to cents
+     *
+     * @param dollars value that was typed
+     * @return price in cents, or {@link BookQuery#NONE} if nothing was typed
+     * @throws NumberFormatException if the value is not a valid price
+     */
+    private int parsePrice(String dollars) {
+        if (TextUtils.isEmpty(dollars.trim())) {
+            return BookQuery.NONE;
+        }
+
+        // rounded so a price like 0.29 doesn't become 28 cents
+        long cents = Math.round(Double.parseDouble(dollars) * 100);
+        if (cents < 0 || cents > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Price out of range: " + dollars);
+        }
+        return (int) cents;
+    }
+
+    // cents as dollars for editing, or empty if there is no price
+    private String formatPrice(int cents) {
+        if (cents == BookQuery.NONE) {
+            return "";
+        }
+        return String.format(Locale.ROOT, "%.2f", cents / 100.0);
+    }
+
+    /**
+     * Ask which supplier to show books from
+     */
+    private void showSupplierFilterDialog() {
+        List<Supplier> suppliers = Inventory.getAllSuppliers(this);
+
+        // the first option shows books from every supplier
+        String[] names = new String[suppliers.size() + 1];
+        names[0] = getString(R.string.all_suppliers);
+        int checked = 0;
+        for (int i = 0; i < suppliers.size(); i++) {
+            names[i + 1] = suppliers.get(i).getName();
+            if (suppliers.get(i).getId() == bookQuery.getSupplierId()) {
+                checked = i + 1;
+            }
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.filter_supplier);
+        builder.setSingleChoiceItems(names, checked, (dialog, which) -> {
+            bookQuery.setSupplierId(which == 0 ? BookQuery.NONE : suppliers.get(which - 1).getId());
+            applyBookQuery();
+            dialog.dismiss();
+        });
+        builder.setNegativeButton(R.string.cancel, null);
+        builder.create().show();
+    }
+
     /**
      * Delete all data in the database
      */
     private void deleteAllData() {
-        int[] rowsDeleted = Inventory.deleteAll(this);
+        Inventory.submitWrite(() -> {
+            int[] rowsDeleted = Inventory.deleteAll(this);
+
+            // make sure we still have out default supplier
+            createDefaultSupplier();
+
+            return rowsDeleted;
+        }, this, rowsDeleted -> {
+            // display toast showing how many rows were deleted
+            Toast.makeText(this, rowsDeleted[0] + " " + getString(R.string.suppliers) +
+                            " " + getString(R.string.and) + " " +
+                            rowsDeleted[1] + " " + getString(R.string.books_deleted),
+                    Toast.LENGTH_SHORT).show();
+        });
+    }
 
-        // make sure we still have out default supplier
-        createDefaultSupplier();
+    /**
+     * Delete a set of books if the user confirms
+     *
+     * @param bookIds of the books to delete
+     */
+    private void confirmAndDeleteBooks(long[] bookIds) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setMessage(R.string.delete_selected_confirm_request);
+
+        // delete confirm
+        builder.setPositiveButton(R.string.delete, (dialog, id) -> deleteBooks(bookIds));
 
-        // display toast showing how many rows were deleted
-        Toast.makeText(this, rowsDeleted[0] + " " + getString(R.string.suppliers) +
-                        " " + getString(R.string.and) + " " +
-                        rowsDeleted[1] + " " + getString(R.string.books_deleted),
-                Toast.LENGTH_SHORT).show();
+        // cancel delete
+        builder.setNegativeButton(R.string.cancel, null);
+
+        builder.create().show();
     }
 
     /**
-     * Create a default supplier for new books to use
+     * Delete a set of books in a single transaction
+     *
+     * @param bookIds of the books to delete
+     */
+    private void deleteBooks(long[] bookIds) {
+        Inventory.submitWrite(() -> Inventory.deleteBooks(bookIds, this), this, deleted -> {
+            int deletedCount = 0;
+            for (boolean bookDeleted : deleted) {
+                if (bookDeleted) {
+                    deletedCount++;
+                }
+            }
+
+            Toast.makeText(this, getString(R.string.selected_books_deleted,
+                    deletedCount, bookIds.length), Toast.LENGTH_SHORT).show();
+        });
+    }
+
+    /**
+     * Create a default supplier for new books to use.
+     * This reads and writes the database, so it must be run on the writer thread.
      */
     private void createDefaultSupplier() {
         List<Supplier> suppliers = Inventory.getAllSuppliers(this);
@@ -192,91 +565,95 @@ public class MainActivity extends AppCompatActivity implements
     }
 
     /**
-     * Insert testing data into the database
+     * Insert testing data into the database.
+     * This must be run on the writer thread.
+     *
+     * @return true if the data was saved
      */
-    private void insertDummyData() {
+    private boolean insertDummyData() {
 
         Supplier amazon = new Supplier(
             "Amazon",
-            "books@google.com",
+            "books@amazon.com",
             "0432 345 634");
 
-        long amazonId = Inventory.insert(amazon, this);
-        amazon.setId(amazonId);
-
         Supplier googleBooks = new Supplier(
                 "Google Books",
                 "books@google.com",
                 "0432 345 654");
 
-        long supplierId = Inventory.insert(googleBooks, this);
-        googleBooks.setId(supplierId);
+        // suppliers must be saved first so the books can reference their ids.
+        // upserts mean loading the sample data twice doesn't create duplicates
+        if (Inventory.upsertSuppliers(Arrays.asList(amazon, googleBooks), this) == -1) {
+            // the books would be saved without a supplier
+            return false;
+        }
+
+        List<Book> books = new ArrayList<>();
 
-        Book dune = new Book(
+        books.add(new Book(
                 amazon,
                 "Dune",
                 1199, // price in cents
                 5, // quantity
                 ImageUtil.getBytes(R.drawable.dune_cover, this)
-        );
-        long duneId = Inventory.insert(dune, this);
-        dune.setId(duneId);
+        ));
 
-        Book time = new Book(
+        books.add(new Book(
                 googleBooks,
                 "A Brief History Of Time",
                 1299, // price in cents
                 7, // quantity
                 ImageUtil.getBytes(
                         R.drawable.brief_history_of_time_cover, this)
-        );
-        long timeId = Inventory.insert(time, this);
-        time.setId(timeId);
+        ));
 
-        Book neuromancer = new Book(
+        books.add(new Book(
                 amazon,
                 "Neuromancer",
                 1199, // price in cents
                 11, // quantity
                 ImageUtil.getBytes(R.drawable.neuromancer_cover, this)
-        );
-
-        long neuromancerid = Inventory.insert(neuromancer, this);
-        neuromancer.setId(neuromancerid);
+        ));
 
-        Book animalFarm = new Book(
+        books.add(new Book(
                 googleBooks,
                 "Animal Farm",
                 99, // price in cents
                 6, // quantity
                 ImageUtil.getBytes(R.drawable.animal_farm_cover, this)
-        );
-
-        long animalFarmId = Inventory.insert(animalFarm, this);
-        animalFarm.setId(animalFarmId);
+        ));
 
-        Book hgg = new Book(
+        books.add(new Book(
                 googleBooks,
                 "The Hitchhiker's Guide to the Galaxy",
                 999, // price in cents
                 42, // quantity
                 ImageUtil.getBytes(R.drawable.hgg_cover, this)
-        );
+        ));
 
-        long hggId = Inventory.insert(hgg, this);
-        hgg.setId(hggId);
-
-        Book timeMachine = new Book(
+        books.add(new Book(
                 googleBooks,
                 "The Time Machine",
                 999, // price in cents
                 12, // quantity
                 ImageUtil.getBytes(R.drawable.time_machine_cover, this)
-        );
-
-        long timeMachineid = Inventory.insert(timeMachine, this);
-        timeMachine.setId(timeMachineid);
+        ));
+
+        // sample ISBNs, in the same order as the books above
+        String[] isbns = {
+                "9780441013593",
+                "9780553380163",
+                "9780441569595",
+                "9780451526342",
+                "9780345391803",
+                "9780451528551"};
+        for (int i = 0; i < books.size(); i++) {
+            books.get(i).setIsbn(isbns[i]);
+        }
 
+        // save all books in a single transaction
+        return Inventory.upsertBooks(books, this) != -1;
     }
 
     private void showSpinner() {
@@ -288,17 +665,36 @@ public class MainActivity extends AppCompatActivity implements
         this.loadingSpinner.setVisibility(View.GONE);
     }
 
-    private class AsyncSampleDataInserter extends AsyncTask<Void, Void, Void> {
+    /**
+     * Contextual action mode used while books are selected in the list
+     */
+    private class SelectionModeCallback implements ActionMode.Callback {
+
         @Override
-        protected Void doInBackground(Void... voids) {
-            insertDummyData();
-            return null;
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.inventory_selection, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            if (item.getItemId() == R.id.action_delete_selected) {
+                confirmAndDeleteBooks(pagingAdapter.getSelectedIds());
+                mode.finish();
+                return true;
+            }
+            return false;
         }
 
         @Override
-        protected void onPostExecute(Void aVoid) {
-            super.onPostExecute(aVoid);
-            hideSpinner();
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionMode = null;
+            pagingAdapter.clearSelection();
         }
     }
 }
@@ -0,0 +1,185 @@
+package io.maerlyn.inventorymanager;
+
+import android.app.LoaderManager;
+import android.content.ContentUris;
+import android.content.Intent;
+import android.content.Loader;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.Locale;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+import io.maerlyn.inventorymanager.data.BookQuery;
+import io.maerlyn.inventorymanager.data.Inventory;
+import io.maerlyn.inventorymanager.data.InventoryContract.BookEntry;
+import io.maerlyn.inventorymanager.data.InventoryContract.SupplierEntry;
+import io.maerlyn.inventorymanager.data.QuantityWriteBehind;
+
+/**
+ * Shows a supplier with the totals of its stock, and lists the supplier's books.
+ * <p>
+ * The totals come from a single grouped query, and the books are paged in title
+ * order from the supplier's books URI. Both only read this supplier's books.
+ *
+ * @author Maerlyn Broadbent
+ */
+public class SupplierActivity extends AppCompatActivity implements
+        LoaderManager.LoaderCallbacks<Cursor>, InventoryPagingAdapter.Listener {
+
+    // id for the supplier stock loader
+    private static final int SUPPLIER_STOCK_LOADER = 0;
+
+    // Adapter for the RecyclerView to display the supplier's books
+    InventoryPagingAdapter pagingAdapter;
+
+    @BindView(R.id.supplier_name)
+    TextView supplierName;
+
+    @BindView(R.id.supplier_stock_summary)
+    TextView stockSummary;
+
+    @BindView(R.id.supplier_stock_value)
+    TextView stockValue;
+
+    @BindView(R.id.inventory_list)
+    RecyclerView bookListView;
+
+    @BindView(R.id.empty_view)
+    View emptyView;
+
+    // id of the supplier being shown
+    private long supplierId;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_supplier);
+
+        // bind annotated views
+        ButterKnife.bind(this);
+
+        // the supplier uri is passed with the intent
+        supplierId = ContentUris.parseId(getIntent().getData());
+
+        // only this supplier's books, in title order
+        BookQuery query = new BookQuery();
+        query.setSupplierId(supplierId);
+
+        pagingAdapter = new InventoryPagingAdapter(this, query, this);
+        bookListView.setLayoutManager(new LinearLayoutManager(this));
+        bookListView.setHasFixedSize(true);
+        bookListView.setAdapter(pagingAdapter);
+
+        pagingAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
+
+        getLoaderManager().initLoader(SUPPLIER_STOCK_LOADER, null, this);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        // save any pending sales before another screen reads the data
+        QuantityWriteBehind.getInstance(this).flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        pagingAdapter.close();
+    }
+
+    /**
+     * Open a book in the editor
+     *
+     * @param bookId of the book that was clicked
+     */
+    @Override
+    public void onBookClicked(long bookId) {
+        Intent intent = new Intent(SupplierActivity.this, EditorActivity.class);
+        intent.setData(BookEntry.getBookUri(bookId));
+        startActivity(intent);
+    }
+
+    /**
+     * Books are only selected from the main list, so undo any selection here
+     *
+     * @param selectedCount number of books now selected
+     */
+    @Override
+    public void onSelectionChanged(int selectedCount) {
+        if (selectedCount > 0) {
+            pagingAdapter.clearSelection();
+        }
+    }
+
+    private void updateEmptyView() {
+        emptyView.setVisibility(pagingAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+        return Inventory.getSupplierStockCursor(this, supplierId);
+    }
+
+    /**
+     * Show the supplier and the totals of its stock
+     *
+     * @param loader that just finished getting data
+     * @param cursor single row with the supplier and its totals
+     */
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        // Bail early if the cursor is null or the supplier no longer exists
+        if (cursor == null || !cursor.moveToFirst()) {
+            return;
+        }
+
+        String name = cursor.getString(cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_NAME));
+        int books = cursor.getInt(cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_BOOK_COUNT));
+        int copies = cursor.getInt(cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_COPY_COUNT));
+        int outOfStock = cursor.getInt(
+                cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_OUT_OF_STOCK_COUNT));
+        long valueCents = cursor.getLong(cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_STOCK_VALUE));
+
+        setTitle(name);
+        supplierName.setText(name);
+        stockSummary.setText(getString(R.string.supplier_stock_summary, books, copies, outOfStock));
+        stockValue.setText(getString(R.string.supplier_stock_value,
+                String.format(Locale.ROOT, "%.2f", valueCents / 100.0)));
+    }
+
+    /**
+     * Callback called when the data needs to be deleted
+     *
+     * @param loader that was reset
+     */
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        supplierName.setText("");
+        stockSummary.setText("");
+        stockValue.setText("");
+    }
+}
@@ -0,0 +1,55 @@
+package io.maerlyn.inventorymanager.data;
+
+/**
+ * A page of book summaries read for the inventory list.
+ * <p>
+ * Values are held in flat arrays rather than {@link io.maerlyn.inventorymanager.model.Book}
+ * objects, so a page costs a handful of allocations however many rows it has.
+ *
+ * @author Maerlyn Broadbent
+ */
+public class BookPage {
+
+    public final long[] ids;
+    public final String[] titles;
+    public final int[] prices;
+    public final int[] quantities;
+
+    // number of rows in this page
+    public final int size;
+
+    // true if there may be more rows after this page
+    public final boolean hasMore;
+
+    // sort key of the last row
+    private final String[] lastKeys;
+
+    BookPage(long[] ids, String[] titles, int[] prices, int[] quantities, int size,
+             boolean hasMore, String[] lastKeys) {
+        this.ids = ids;
+        this.titles = titles;
+        this.prices = prices;
+        this.quantities = quantities;
+        this.size = size;
+        this.hasMore = hasMore;
+        this.lastKeys = lastKeys;
+    }
+
+    /**
+     * Return the sort key of the last row, used to request the next page
+     *
+     * @return values of the sort key columns of the last row, or null if the page is empty
+     */
+    public String[] getLastKeys() {
+        return lastKeys;
+    }
+
+    /**
+     * Return the id of the last row, used to request the next page
+     *
+     * @return id of the last row, or -1 if the page is empty
+     */
+    public long getLastId() {
+        return size == 0 ? -1 : ids[size - 1];
+    }
+}
@@ -0,0 +1,127 @@
+package io.maerlyn.inventorymanager.data;
+
+/**
+ * Sort order and filters for the inventory list.
+ * <p>
+ * Each of them is applied by the provider in the database, see
+ * {@link Inventory#getBookPage(BookQuery, String[], long, int, android.content.Context)}.
+ *
+ * @author Maerlyn Broadbent
+ */
+public class BookQuery {
+
+    // used for filters that are not set
+    public static final int NONE = -1;
+
+    private String sort = InventoryContract.SORT_TITLE;
+    private String stock;
+    private int minPrice = NONE;
+    private int maxPrice = NONE;
+    private long supplierId = NONE;
+    private String search;
+
+    public BookQuery() {
+    }
+
+    /**
+     * Copy constructor
+     *
+     * @param other query to copy
+     */
+    public BookQuery(BookQuery other) {
+        this.sort = other.sort;
+        this.stock = other.stock;
+        this.minPrice = other.minPrice;
+        this.maxPrice = other.maxPrice;
+        this.supplierId = other.supplierId;
+        this.search = other.search;
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    /**
+     * @param sort one of the SORT_ constants in {@link InventoryContract}
+     */
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+
+    public String getStock() {
+        return stock;
+    }
+
+    /**
+     * @param stock one of the STOCK_ constants in {@link InventoryContract}, or null for any
+     */
+    public void setStock(String stock) {
+        this.stock = stock;
+    }
+
+    public int getMinPrice() {
+        return minPrice;
+    }
+
+    /**
+     * @param minPrice lowest price in cents, or {@link #NONE}
+     */
+    public void setMinPrice(int minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public int getMaxPrice() {
+        return maxPrice;
+    }
+
+    /**
+     * @param maxPrice highest price in cents, or {@link #NONE}
+     */
+    public void setMaxPrice(int maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public long getSupplierId() {
+        return supplierId;
+    }
+
+    /**
+     * @param supplierId id of the only supplier to show books from, or {@link #NONE}
+     */
+    public void setSupplierId(long supplierId) {
+        this.supplierId = supplierId;
+    }
+
+    public String getSearch() {
+        return search;
+    }
+
+    /**
+     * While searching, books are ranked by how well they match and the sort order
+     * is not used. Filters still apply.
+     *
+     * @param search words to search titles and supplier names for, or null to show every book
+     */
+    public void setSearch(String search) {
+        this.search = search;
+    }
+
+    /**
+     * Return true if any filter is set
+     *
+     * @return true if some books may be left out of the list
+     */
+    public boolean isFiltered() {
+        return stock != null || minPrice != NONE || maxPrice != NONE || supplierId != NONE;
+    }
+
+    /**
+     * Clear every filter, leaving the sort order as it is
+     */
+    public void clearFilters() {
+        stock = null;
+        minPrice = NONE;
+        maxPrice = NONE;
+        supplierId = NONE;
+    }
+}
@@ -0,0 +1,127 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.database.AbstractCursor;
+
+/**
+ * Read only cursor over a query result held in memory.
+ * <p>
+ * The rows are shared with the {@link QueryResultCache} and with every other
+ * cursor over the same result, so they are never changed. Blobs are copied
+ * before they are handed out.
+ *
+ * @author Maerlyn Broadbent
+ */
+class CachedCursor extends AbstractCursor {
+
+    private final String[] columns;
+    private final Object[][] rows;
+
+    CachedCursor(String[] columns, Object[][] rows) {
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    @Override
+    public int getCount() {
+        return rows.length;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columns;
+    }
+
+    @Override
+    public int getType(int column) {
+        Object value = get(column);
+        if (value == null) {
+            return FIELD_TYPE_NULL;
+        }
+        if (value instanceof Long) {
+            return FIELD_TYPE_INTEGER;
+        }
+        if (value instanceof Double) {
+            return FIELD_TYPE_FLOAT;
+        }
+        if (value instanceof byte[]) {
+            return FIELD_TYPE_BLOB;
+        }
+        return FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public String getString(int column) {
+        Object value = get(column);
+        if (value == null || value instanceof byte[]) {
+            return null;
+        }
+        return value.toString();
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        Object value = get(column);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Long.parseLong((String) value);
+            } catch (NumberFormatException e) {
+                return (long) getDouble(column);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        Object value = get(column);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        Object value = get(column);
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        return value == null ? null : value.toString().getBytes();
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return get(column) == null;
+    }
+
+    // value of a column in the current row
+    private Object get(int column) {
+        checkPosition();
+        return rows[getPosition()][column];
+    }
+}
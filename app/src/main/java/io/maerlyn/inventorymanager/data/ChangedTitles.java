@@ -0,0 +1,98 @@
+package io.maerlyn.inventorymanager.data;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Ids of books whose title may have changed since the in memory title index last
+ * read them. The provider adds to it from its own write paths, and the next fuzzy
+ * search reads only those titles again.
+ * <p>
+ * A write that can't say which books it changed, or more changes than are worth
+ * reading one by one, marks every title stale instead, so the set never grows
+ * past its limit.
+ * <p>
+ * While a write transaction is open a search could read titles from before it
+ * commits, so ids are only cleared once no transaction is open.
+ *
+ * @author Maerlyn Broadbent
+ */
+class ChangedTitles {
+
+    private final int maxIds;
+
+    private final Set<Long> ids = new HashSet<>();
+
+    // true if every title must be read again
+    private boolean stale = false;
+
+    // number of write transactions open
+    private int openWrites = 0;
+
+    /**
+     * @param maxIds most ids kept before every title is marked stale
+     */
+    ChangedTitles(int maxIds) {
+        this.maxIds = maxIds;
+    }
+
+    /**
+     * Record that a book was inserted, deleted or had its title written
+     *
+     * @param bookId of the book
+     */
+    synchronized void add(long bookId) {
+        if (stale) {
+            return;
+        }
+
+        ids.add(bookId);
+        if (ids.size() > maxIds) {
+            markStale();
+        }
+    }
+
+    /**
+     * Record a write that may have changed any title
+     */
+    synchronized void markStale() {
+        stale = true;
+        ids.clear();
+    }
+
+    /**
+     * Start of a write transaction. Ids are kept until the matching {@link #endWrite()}
+     */
+    synchronized void beginWrite() {
+        openWrites++;
+    }
+
+    /**
+     * End of a write transaction. Call after the transaction has ended
+     */
+    synchronized void endWrite() {
+        openWrites--;
+    }
+
+    /**
+     * Get the books to read again, and forget them unless a write is still open
+     *
+     * @return ids of the changed books, or null if every title must be read again
+     */
+    synchronized long[] take() {
+        long[] changed = null;
+        if (!stale) {
+            changed = new long[ids.size()];
+            int i = 0;
+            for (long id : ids) {
+                changed[i++] = id;
+            }
+        }
+
+        if (openWrites == 0) {
+            ids.clear();
+            stale = false;
+        }
+        return changed;
+    }
+}
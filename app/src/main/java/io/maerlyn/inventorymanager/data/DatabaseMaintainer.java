@@ -0,0 +1,486 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.maerlyn.inventorymanager.data.InventoryContract.BookEntry;
+import io.maerlyn.inventorymanager.data.InventoryContract.SupplierEntry;
+
+/**
+ * Keeps the database compact and its query plans current, a small step at a time
+ * while the app is idle.
+ * <p>
+ * Writes are counted as they happen. Once they have stopped for a while, a run
+ * works out what is due and does it one step at a time, giving way as soon as
+ * writes start again:
+ * <ul>
+ * <li>ANALYZE of each index whose table has grown or shrunk by a tenth since it was
+ * last analyzed, or has had that many writes, one index per step</li>
+ * <li>PRAGMA incremental_vacuum once enough of the file is free pages, such as
+ * after deleting books with covers. A few hundred pages are handed back per step</li>
+ * <li>PRAGMA quick_check, at most once per check interval</li>
+ * </ul>
+ * A file created before auto_vacuum was turned on keeps its free pages until it has
+ * been converted. That takes a full VACUUM, which rewrites the whole file at once, so
+ * it is a separate job done once, the first time the database is idle, and only if
+ * the file is small enough and there is room for the copy.
+ * <p>
+ * Each run is logged and recorded in the maintenance log table with what it did,
+ * the bytes it reclaimed and how long its steps took.
+ *
+ * @author Maerlyn Broadbent
+ */
+class DatabaseMaintainer {
+
+    private static final String LOG_TAG = DatabaseMaintainer.class.getSimpleName();
+
+    // values of PRAGMA auto_vacuum
+    private static final int AUTO_VACUUM_NONE = 0;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // free pages handed back by each incremental vacuum step
+    private static final int VACUUM_PAGES_PER_STEP = 256;
+
+    // a table is analyzed again once it changes by this fraction of its rows
+    private static final int ANALYZE_CHANGE_DIVISOR = 10;
+
+    // tables smaller than this plan well enough without statistics
+    private static final int MIN_ANALYZE_ROWS = 100;
+
+    // pause between steps once a step has used up its time, so other work can run
+    private static final long STEP_GAP_MILLIS = 250;
+
+    // runs kept in the maintenance log
+    private static final int LOG_RUNS_KEPT = 100;
+
+    // tables whose indexes are analyzed. the search table's shadow tables are left alone
+    private static final String[] TABLES = {BookEntry.TABLE_NAME, SupplierEntry.TABLE_NAME};
+
+    private final SQLiteOpenHelper dbHelper;
+    private final WalCheckpointer checkpointer;
+    private final long idleMillis;
+    private final long stepMillis;
+    private final int minFreePercent;
+    private final long integrityIntervalMillis;
+    private final long convertMaxBytes;
+    private final Handler handler;
+
+    // uptime of the last write, writes since the last ANALYZE, and whether a check is waiting
+    private long lastWriteMillis = 0;
+    private long writesSinceAnalyze = 0;
+    private boolean checkScheduled = false;
+
+    // true once the conversion to incremental vacuum has been looked at in this process
+    private boolean conversionScheduled = false;
+
+    // work of the run in progress, or null between runs. only used on the handler thread
+    private Run run;
+
+    private final Runnable check = this::check;
+    private final Runnable convert = this::convert;
+
+    /**
+     * @param dbHelper                helper for the database to maintain
+     * @param checkpointer            told when a run has written to the database
+     * @param idleMillis              time without writes before a run starts
+     * @param stepMillis              time a run may take before pausing
+     * @param minFreePercent          share of the file that has to be free pages before
+     *                                they are handed back
+     * @param integrityIntervalMillis time between integrity checks
+     * @param convertMaxBytes         largest file that is converted to incremental vacuum
+     */
+    DatabaseMaintainer(SQLiteOpenHelper dbHelper, WalCheckpointer checkpointer, long idleMillis,
+                       long stepMillis, int minFreePercent, long integrityIntervalMillis,
+                       long convertMaxBytes) {
+        this.dbHelper = dbHelper;
+        this.checkpointer = checkpointer;
+        this.idleMillis = idleMillis;
+        this.stepMillis = stepMillis;
+        this.minFreePercent = minFreePercent;
+        this.integrityIntervalMillis = integrityIntervalMillis;
+        this.convertMaxBytes = convertMaxBytes;
+
+        HandlerThread thread = new HandlerThread("inventory-maintenance");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Ask for free pages to be kept so they can be handed back a few at a time.
+     * Call from onConfigure, before the first table is created and before WAL is
+     * turned on. Files that already exist keep their setting until they are converted
+     *
+     * @param db database being configured
+     */
+    static void configure(SQLiteDatabase db) {
+        // only an empty file takes the setting, so don't ask on every open
+        if (longForQuery(db, "PRAGMA page_count") != 0) {
+            return;
+        }
+
+        Cursor cursor = db.rawQuery("PRAGMA auto_vacuum=" + AUTO_VACUUM_INCREMENTAL, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Look for due work once the database has been idle for a while. Call from onOpen
+     */
+    synchronized void onOpen() {
+        if (!conversionScheduled) {
+            conversionScheduled = true;
+            handler.postDelayed(convert, idleMillis);
+        }
+        schedule(idleMillis);
+    }
+
+    /**
+     * Note that the database has been written to. Cheap enough to call on every write
+     */
+    synchronized void onWrite() {
+        lastWriteMillis = SystemClock.uptimeMillis();
+        writesSinceAnalyze++;
+        schedule(idleMillis);
+    }
+
+    // run the check after a delay, unless one is already waiting
+    private synchronized void schedule(long delayMillis) {
+        if (!checkScheduled) {
+            checkScheduled = true;
+            handler.postDelayed(check, delayMillis);
+        }
+    }
+
+    // start or continue a run if writes have stopped
+    private void check() {
+        long lastWrite;
+        synchronized (this) {
+            checkScheduled = false;
+            lastWrite = lastWriteMillis;
+        }
+        long idleFor = SystemClock.uptimeMillis() - lastWrite;
+        if (idleFor < idleMillis) {
+            schedule(idleMillis - idleFor);
+            return;
+        }
+
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            if (run == null) {
+                run = plan(db);
+                if (run == null) {
+                    return;
+                }
+            }
+
+            long start = SystemClock.uptimeMillis();
+            while (run.hasWork()) {
+                if (SystemClock.uptimeMillis() - start >= stepMillis) {
+                    // carry on shortly, if nothing is written in the meantime
+                    run.millis += SystemClock.uptimeMillis() - start;
+                    schedule(STEP_GAP_MILLIS);
+                    return;
+                }
+                synchronized (this) {
+                    if (lastWriteMillis != lastWrite) {
+                        // writes have started again, so wait until they stop. onWrite
+                        // has already scheduled the next check
+                        run.millis += SystemClock.uptimeMillis() - start;
+                        return;
+                    }
+                }
+                step(db, run);
+            }
+            run.millis += SystemClock.uptimeMillis() - start;
+
+            finish(db, run);
+        } catch (Exception e) {
+            // nothing is lost by skipping a run, the next write schedules another
+            Log.e(LOG_TAG, "Exception while maintaining the database", e);
+        }
+        run = null;
+    }
+
+    /**
+     * Switch a file created before auto_vacuum was turned on over to incremental
+     * vacuum, once writes have stopped. Runs at most once per process, and does
+     * nothing once the file has been converted
+     */
+    private void convert() {
+        long idleFor;
+        synchronized (this) {
+            idleFor = SystemClock.uptimeMillis() - lastWriteMillis;
+        }
+        if (idleFor < idleMillis) {
+            handler.postDelayed(convert, idleMillis - idleFor);
+            return;
+        }
+
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            if (longForQuery(db, "PRAGMA auto_vacuum") != AUTO_VACUUM_NONE) {
+                return;
+            }
+
+            // VACUUM rewrites the whole file through a temporary copy, and writes
+            // wait until it is done
+            long bytes = longForQuery(db, "PRAGMA page_count") * db.getPageSize();
+            long usableBytes = new File(db.getPath()).getUsableSpace();
+            if (bytes > convertMaxBytes || usableBytes < bytes * 2) {
+                Log.i(LOG_TAG, "Not converting a " + bytes / 1024 + " KB file to incremental" +
+                        " vacuum, " + usableBytes / 1024 + " KB free");
+                return;
+            }
+
+            long start = SystemClock.uptimeMillis();
+            // can't be in a transaction
+            db.execSQL("PRAGMA auto_vacuum=" + AUTO_VACUUM_INCREMENTAL);
+            db.execSQL("VACUUM");
+            checkpointer.onWrite();
+
+            Log.i(LOG_TAG, "Converted a " + bytes / 1024 + " KB file to incremental vacuum in " +
+                    (SystemClock.uptimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            // the file is left as it was, and is looked at again next time the app starts
+            Log.e(LOG_TAG, "Exception while converting the database to incremental vacuum", e);
+        }
+    }
+
+    /**
+     * Work out what is due
+     *
+     * @param db database to maintain
+     * @return {@link Run} with the work to do, or null if nothing is due
+     */
+    private Run plan(SQLiteDatabase db) {
+        Run plan = new Run();
+        plan.pageCount = longForQuery(db, "PRAGMA page_count");
+        plan.freePages = longForQuery(db, "PRAGMA freelist_count");
+
+        // stale statistics
+        long writes;
+        synchronized (this) {
+            writes = writesSinceAnalyze;
+        }
+        for (String table : TABLES) {
+            addStaleIndexes(db, table, writes, plan.indexesToAnalyze);
+        }
+        if (!plan.indexesToAnalyze.isEmpty()) {
+            synchronized (this) {
+                writesSinceAnalyze = 0;
+            }
+        }
+
+        // free pages, from deleted books and their covers. a file that hasn't been
+        // converted can't hand them back a few at a time, so they are left for convert
+        if (plan.freePages > 0 && plan.freePages * 100 >= plan.pageCount * minFreePercent &&
+                longForQuery(db, "PRAGMA auto_vacuum") != AUTO_VACUUM_NONE) {
+            plan.vacuumPages = plan.freePages;
+        }
+
+        // integrity, if it hasn't been checked recently
+        long lastCheck = longForQuery(db, "SELECT IFNULL(MAX(" +
+                InventoryDbHelper.MAINTENANCE_LOG_COLUMN_FINISHED_AT + "), 0) FROM " +
+                InventoryDbHelper.MAINTENANCE_LOG_TABLE + " WHERE " +
+                InventoryDbHelper.MAINTENANCE_LOG_COLUMN_INTEGRITY + " IS NOT NULL");
+        plan.checkIntegrity = System.currentTimeMillis() - lastCheck >= integrityIntervalMillis;
+
+        return plan.hasWork() ? plan : null;
+    }
+
+    /**
+     * Add the indexes of a table whose statistics are missing or out of date
+     *
+     * @param db      database to maintain
+     * @param table   whose indexes to look at
+     * @param writes  made since the last ANALYZE, to any table
+     * @param indexes list to add the stale indexes to
+     */
+    private static void addStaleIndexes(SQLiteDatabase db, String table, long writes,
+                                        List<String> indexes) {
+        long rows = longForQuery(db, "SELECT COUNT(*) FROM " + table);
+        if (rows < MIN_ANALYZE_ROWS) {
+            return;
+        }
+        long allowedChange = Math.max(rows / ANALYZE_CHANGE_DIVISOR, MIN_ANALYZE_ROWS);
+        boolean hasStats = longForQuery(db,
+                "SELECT COUNT(*) FROM sqlite_master WHERE name = 'sqlite_stat1'") > 0;
+
+        // the first number of an index's statistics is the row count when it was analyzed
+        Cursor cursor = db.rawQuery("SELECT name, " +
+                (hasStats ? "(SELECT stat FROM sqlite_stat1 WHERE idx = name)" : "NULL") +
+                " FROM sqlite_master WHERE type = 'index' AND tbl_name = ?", new String[]{table});
+        try {
+            while (cursor.moveToNext()) {
+                String stat = cursor.getString(1);
+                long analyzedRows = stat == null ? -1 : Long.parseLong(stat.split(" ")[0]);
+                if (analyzedRows < 0 || writes >= allowedChange ||
+                        Math.abs(rows - analyzedRows) >= allowedChange) {
+                    indexes.add(cursor.getString(0));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // do the next piece of work of a run
+    private void step(SQLiteDatabase db, Run run) {
+        if (!run.indexesToAnalyze.isEmpty()) {
+            String index = run.indexesToAnalyze.remove(0);
+            db.execSQL("ANALYZE " + index);
+            run.analyzed++;
+        } else if (run.vacuumPages > 0) {
+            run.vacuumPages = Math.max(0, run.vacuumPages - vacuum(db, VACUUM_PAGES_PER_STEP));
+        } else if (run.checkIntegrity) {
+            run.integrity = DatabaseUtils.stringForQuery(db, "PRAGMA quick_check(1)", null);
+            run.checkIntegrity = false;
+        }
+    }
+
+    /**
+     * Hand free pages back to the file system
+     *
+     * @param db    database to maintain
+     * @param pages most pages to hand back
+     * @return pages handed back, or all of them if none were
+     */
+    private static long vacuum(SQLiteDatabase db, int pages) {
+        long before = longForQuery(db, "PRAGMA freelist_count");
+
+        // each page freed is a row of the result, so every row has to be read.
+        // in a transaction so it runs on the connection that writes
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + pages + ")", null);
+            try {
+                cursor.getCount();
+            } finally {
+                cursor.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        long freed = before - longForQuery(db, "PRAGMA freelist_count");
+        return freed > 0 ? freed : Long.MAX_VALUE;
+    }
+
+    /**
+     * Record a finished run, and let the checkpointer copy what it wrote into the file
+     *
+     * @param db  database that was maintained
+     * @param run that has finished
+     */
+    private void finish(SQLiteDatabase db, Run run) {
+        long pageCount = longForQuery(db, "PRAGMA page_count");
+        long freePages = longForQuery(db, "PRAGMA freelist_count");
+        long reclaimedBytes = Math.max(0, run.pageCount - pageCount) * db.getPageSize();
+
+        ContentValues values = new ContentValues();
+        values.put(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_FINISHED_AT, System.currentTimeMillis());
+        values.put(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_MILLIS, run.millis);
+        values.put(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_ANALYZED, run.analyzed);
+        values.put(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_RECLAIMED_BYTES, reclaimedBytes);
+        values.put(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_FREE_PAGES, freePages);
+        values.put(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_PAGE_COUNT, pageCount);
+        values.put(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_INTEGRITY, run.integrity);
+
+        db.beginTransaction();
+        try {
+            db.insert(InventoryDbHelper.MAINTENANCE_LOG_TABLE, null, values);
+            db.delete(InventoryDbHelper.MAINTENANCE_LOG_TABLE,
+                    InventoryDbHelper.MAINTENANCE_LOG_COLUMN_SEQ + " <= (SELECT MAX(" +
+                            InventoryDbHelper.MAINTENANCE_LOG_COLUMN_SEQ + ") FROM " +
+                            InventoryDbHelper.MAINTENANCE_LOG_TABLE + ") - " + LOG_RUNS_KEPT, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        checkpointer.onWrite();
+
+        Log.i(LOG_TAG, "Maintenance took " + run.millis + "ms: analyzed " + run.analyzed +
+                " indexes, reclaimed " + reclaimedBytes / 1024 + " KB, " + freePages + " of " +
+                pageCount + " pages free" +
+                (run.integrity == null ? "" : ", integrity " + run.integrity));
+        if (run.integrity != null && !"ok".equals(run.integrity)) {
+            Log.e(LOG_TAG, "Database failed its integrity check: " + run.integrity);
+        }
+    }
+
+    /**
+     * Return the most recent run in the maintenance log
+     *
+     * @return {@link Bundle} with the InventoryContract maintenance extras, empty if
+     * there hasn't been a run
+     */
+    Bundle getLastRunStats() {
+        Bundle stats = new Bundle();
+        Cursor cursor = dbHelper.getReadableDatabase().query(InventoryDbHelper.MAINTENANCE_LOG_TABLE,
+                null, null, null, null, null,
+                InventoryDbHelper.MAINTENANCE_LOG_COLUMN_SEQ + " DESC", "1");
+        try {
+            if (cursor.moveToFirst()) {
+                stats.putLong(InventoryContract.EXTRA_MAINTENANCE_FINISHED_AT, cursor.getLong(
+                        cursor.getColumnIndex(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_FINISHED_AT)));
+                stats.putLong(InventoryContract.EXTRA_MAINTENANCE_MILLIS, cursor.getLong(
+                        cursor.getColumnIndex(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_MILLIS)));
+                stats.putInt(InventoryContract.EXTRA_ANALYZED_INDEXES, cursor.getInt(
+                        cursor.getColumnIndex(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_ANALYZED)));
+                stats.putLong(InventoryContract.EXTRA_RECLAIMED_BYTES, cursor.getLong(
+                        cursor.getColumnIndex(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_RECLAIMED_BYTES)));
+                stats.putLong(InventoryContract.EXTRA_FREE_PAGES, cursor.getLong(
+                        cursor.getColumnIndex(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_FREE_PAGES)));
+                stats.putLong(InventoryContract.EXTRA_PAGE_COUNT, cursor.getLong(
+                        cursor.getColumnIndex(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_PAGE_COUNT)));
+                stats.putString(InventoryContract.EXTRA_INTEGRITY, cursor.getString(
+                        cursor.getColumnIndex(InventoryDbHelper.MAINTENANCE_LOG_COLUMN_INTEGRITY)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return stats;
+    }
+
+    private static long longForQuery(SQLiteDatabase db, String sql) {
+        return DatabaseUtils.longForQuery(db, sql, null);
+    }
+
+    /**
+     * Work left to do in a run, and what it has done so far
+     */
+    private static class Run {
+        // size of the file when the run started
+        long pageCount;
+        long freePages;
+
+        final List<String> indexesToAnalyze = new ArrayList<>();
+        long vacuumPages;
+        boolean checkIntegrity;
+
+        // time spent in steps, indexes analyzed and the result of the integrity check
+        long millis;
+        int analyzed;
+        String integrity;
+
+        boolean hasWork() {
+            return !indexesToAnalyze.isEmpty() || vacuumPages > 0 || checkIntegrity;
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package io.maerlyn.inventorymanager.data;
 
+import android.content.ContentProvider;
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
@@ -7,10 +12,14 @@ import android.content.CursorLoader;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.util.Log;
+import android.util.LongSparseArray;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import io.maerlyn.inventorymanager.R;
 import io.maerlyn.inventorymanager.data.InventoryContract.BookEntry;
@@ -27,16 +36,62 @@ public class Inventory {
 
     private static final String LOG_TAG = Inventory.class.getSimpleName();
 
+    // the provider, or the resolver if the provider is in another process. found on first use
+    private static volatile InventoryRepository repository;
+
+    /**
+     * Return the repository used to read and write the inventory database.
+     * <p>
+     * The provider lives in this process, so it is called directly. That skips the
+     * provider lookup, permission checks and cursor wrapping a ContentResolver
+     * adds to every call, while still running the provider's validation and
+     * notifications. Loaders keep using the ContentResolver.
+     *
+     * @param context activity context
+     * @return repository for the inventory database
+     */
+    static InventoryRepository getRepository(Context context) {
+        InventoryRepository result = repository;
+        if (result != null) {
+            return result;
+        }
+
+        ContentResolver contentResolver = context.getApplicationContext().getContentResolver();
+        ContentProviderClient client =
+                contentResolver.acquireContentProviderClient(InventoryContract.CONTENT_AUTHORITY);
+        if (client != null) {
+            ContentProvider provider = client.getLocalContentProvider();
+            client.release();
+            if (provider instanceof InventoryRepository) {
+                result = (InventoryRepository) provider;
+            }
+        }
+        if (result == null) {
+            result = new ResolverRepository(contentResolver);
+        }
+
+        repository = result;
+        return result;
+    }
+
     /**
-     * Return a list of all suppliers
+     * Return a list of all suppliers. Suppliers are cached, see {@link SupplierCache}
      *
      * @param context activity context
      * @return list of {@link Supplier} objects
      */
     public static List<Supplier> getAllSuppliers(Context context) {
-        List<Supplier> suppliers = new ArrayList<>();
+        return SupplierCache.getInstance(context).getAll();
+    }
 
-        Cursor cursor = context.getContentResolver().query(
+    /**
+     * Return a list of all suppliers, read from the database
+     *
+     * @param context activity context
+     * @return list of {@link Supplier} objects
+     */
+    static List<Supplier> queryAllSuppliers(Context context) {
+        Cursor cursor = getRepository(context).query(
                 SupplierEntry.CONTENT_URI,
                 SupplierEntry.COLUMNS_ALL,
                 null,       // WHERE clause
@@ -47,15 +102,15 @@ public class Inventory {
     }
 
     /**
-     * Return a list of all books
+     * Return a list of all books. Books and their suppliers are read in a single query.
      *
      * @param context activity context
      * @return list of {@link Book} objects
      */
     public static List<Book> getAllBooks(Context context) {
-        Cursor cursor = context.getContentResolver().query(
-                BookEntry.CONTENT_URI,
-                BookEntry.COLUMNS_ALL,
+        Cursor cursor = getRepository(context).query(
+                BookEntry.CONTENT_DETAIL_URI,
+                null,       // all book and supplier columns
                 null,       // WHERE clause
                 null,       // data for the WHERE clause
                 null);      // sort order
@@ -64,20 +119,30 @@ public class Inventory {
     }
 
     /**
-     * Return a single {@link Supplier} by id
+     * Return a single {@link Supplier} by id. Suppliers are cached, see {@link SupplierCache}
      *
      * @param supplierId id of the supplier to return
      * @param context    activity context
      * @return {@link Supplier}
      */
     public static Supplier getSupplierById(long supplierId, Context context) {
-        Uri uri = SupplierEntry.getSupplierUri(supplierId);
+        return SupplierCache.getInstance(context).get(supplierId);
+    }
 
-        Cursor cursor = context.getContentResolver().query(
-                uri,
+    /**
+     * Return a single {@link Supplier} by id, read from the database
+     *
+     * @param supplierId id of the supplier to return
+     * @param context    activity context
+     * @return {@link Supplier}
+     */
+    static Supplier querySupplierById(long supplierId, Context context) {
+        // the id in the URI is the selection
+        Cursor cursor = getRepository(context).query(
+                SupplierEntry.getSupplierUri(supplierId),
                 SupplierEntry.COLUMNS_ALL,
-                SupplierEntry._ID + "=?",
-                new String[]{String.valueOf(ContentUris.parseId(uri))},
+                null,
+                null,
                 null);
 
         return cursorToSupplier(cursor, context);
@@ -91,13 +156,12 @@ public class Inventory {
      * @return {@link Book}
      */
     public static Book getBookById(long bookId, Context context) {
-        Uri uri = BookEntry.getBookUri(bookId);
-
-        Cursor cursor = context.getContentResolver().query(
-                uri,
-                BookEntry.COLUMNS_ALL,
-                BookEntry._ID + "=?",
-                new String[]{String.valueOf(ContentUris.parseId(uri))},
+        // the detail URI includes the supplier, so no second query is needed
+        Cursor cursor = getRepository(context).query(
+                BookEntry.getBookDetailUri(bookId),
+                null,
+                null,
+                null,
                 null);
 
         return cursorToBook(cursor, true, true, context);
@@ -112,7 +176,7 @@ public class Inventory {
      */
     public static long insert(Book book, Context context) {
         ContentValues values = bookToContentValues(book);
-        Uri uri = context.getContentResolver().insert(BookEntry.CONTENT_URI, values);
+        Uri uri = getRepository(context).insert(BookEntry.CONTENT_URI, values);
         return ContentUris.parseId(uri);
     }
 
@@ -125,10 +189,189 @@ public class Inventory {
      */
     public static long insert(Supplier supplier, Context context) {
         ContentValues values = supplierToContentValues(supplier);
-        Uri uri = context.getContentResolver().insert(SupplierEntry.CONTENT_URI, values);
+        Uri uri = getRepository(context).insert(SupplierEntry.CONTENT_URI, values);
         return ContentUris.parseId(uri);
     }
 
+    /**
+     * Insert a list of books into the inventory database in a single transaction.
+     * The id of each book is set once it has been inserted.
+     *
+     * @param books   to insert
+     * @param context activity context
+     * @return number of books inserted, or -1 if the batch failed and nothing was inserted
+     */
+    public static int insertBooks(List<Book> books, Context context) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(books.size());
+
+        for (Book book : books) {
+            operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                    .withValues(bookToContentValues(book))
+                    .build());
+        }
+
+        ContentProviderResult[] results = applyBatch(operations, context);
+        if (results == null) {
+            return -1;
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            books.get(i).setId(ContentUris.parseId(results[i].uri));
+        }
+
+        return results.length;
+    }
+
+    /**
+     * Insert a list of suppliers into the inventory database in a single transaction.
+     * The id of each supplier is set once it has been inserted.
+     *
+     * @param suppliers to insert
+     * @param context   activity context
+     * @return number of suppliers inserted, or -1 if the batch failed and nothing was inserted
+     */
+    public static int insertSuppliers(List<Supplier> suppliers, Context context) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(suppliers.size());
+
+        for (Supplier supplier : suppliers) {
+            operations.add(ContentProviderOperation.newInsert(SupplierEntry.CONTENT_URI)
+                    .withValues(supplierToContentValues(supplier))
+                    .build());
+        }
+
+        ContentProviderResult[] results = applyBatch(operations, context);
+        if (results == null) {
+            return -1;
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            suppliers.get(i).setId(ContentUris.parseId(results[i].uri));
+        }
+
+        return results.length;
+    }
+
+    /**
+     * Insert a book, or update the existing book with the same ISBN
+     *
+     * @param book    to insert or update. must have an ISBN
+     * @param context activity context
+     * @return id of the inserted or updated book, or -1 if it could not be saved
+     */
+    public static long upsert(Book book, Context context) {
+        try {
+            Uri uri = getRepository(context).insert(
+                    BookEntry.CONTENT_UPSERT_URI, bookToContentValues(book));
+            if (uri != null) {
+                book.setId(ContentUris.parseId(uri));
+                return book.getId();
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception while upserting a book", e);
+        }
+        return -1;
+    }
+
+    /**
+     * Insert a supplier, or update the existing supplier with the same email
+     *
+     * @param supplier to insert or update
+     * @param context  activity context
+     * @return id of the inserted or updated supplier, or -1 if it could not be saved
+     */
+    public static long upsert(Supplier supplier, Context context) {
+        try {
+            Uri uri = getRepository(context).insert(
+                    SupplierEntry.CONTENT_UPSERT_URI, supplierToContentValues(supplier));
+            if (uri != null) {
+                supplier.setId(ContentUris.parseId(uri));
+                return supplier.getId();
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception while upserting a supplier", e);
+        }
+        return -1;
+    }
+
+    /**
+     * Insert or update a list of books by ISBN in a single transaction.
+     * The id of each book is set once it has been saved.
+     *
+     * @param books   to insert or update. each must have an ISBN
+     * @param context activity context
+     * @return number of books saved, or -1 if the batch failed and nothing was saved
+     */
+    public static int upsertBooks(List<Book> books, Context context) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(books.size());
+
+        for (Book book : books) {
+            operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_UPSERT_URI)
+                    .withValues(bookToContentValues(book))
+                    .build());
+        }
+
+        ContentProviderResult[] results = applyBatch(operations, context);
+        if (results == null) {
+            return -1;
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            books.get(i).setId(ContentUris.parseId(results[i].uri));
+        }
+
+        return results.length;
+    }
+
+    /**
+     * Insert or update a list of suppliers by email in a single transaction.
+     * The id of each supplier is set once it has been saved.
+     *
+     * @param suppliers to insert or update
+     * @param context   activity context
+     * @return number of suppliers saved, or -1 if the batch failed and nothing was saved
+     */
+    public static int upsertSuppliers(List<Supplier> suppliers, Context context) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(suppliers.size());
+
+        for (Supplier supplier : suppliers) {
+            operations.add(ContentProviderOperation.newInsert(SupplierEntry.CONTENT_UPSERT_URI)
+                    .withValues(supplierToContentValues(supplier))
+                    .build());
+        }
+
+        ContentProviderResult[] results = applyBatch(operations, context);
+        if (results == null) {
+            return -1;
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            suppliers.get(i).setId(ContentUris.parseId(results[i].uri));
+        }
+
+        return results.length;
+    }
+
+    /**
+     * Apply a list of operations against the inventory database in a single transaction
+     *
+     * @param operations to apply
+     * @param context    activity context
+     * @return result of each operation, or null if the batch was rolled back
+     */
+    private static ContentProviderResult[] applyBatch(
+            ArrayList<ContentProviderOperation> operations, Context context) {
+        if (operations.isEmpty()) {
+            return new ContentProviderResult[0];
+        }
+
+        try {
+            return getRepository(context).applyBatch(operations);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception while applying a batch of operations", e);
+            return null;
+        }
+    }
+
     /**
      * Delete a book from the inventory database
      *
@@ -141,10 +384,7 @@ public class Inventory {
         int rowCount = -1;
 
         try {
-            rowCount = context.getContentResolver().delete(
-                    uri,
-                    BookEntry._ID + "=?",
-                    new String[]{String.valueOf(ContentUris.parseId(uri))});
+            rowCount = getRepository(context).delete(uri, null, null);
         } catch (Exception e) {
             Log.e(LOG_TAG, "Exception while deleting a book by ID", e);
         }
@@ -152,24 +392,54 @@ public class Inventory {
     }
 
     /**
-     * Delete a list of books from the inventory database
+     * Delete a list of books from the inventory database in a single transaction
      *
      * @param books   to delete
      * @param context activity context
-     * @return true if deletion was successful
+     * @return true if every book was deleted
      */
     public static boolean delete(List<Book> books, Context context) {
         if (books.size() < 1) {
             return false;
         }
 
-        boolean deleteSuccess = false;
+        long[] bookIds = new long[books.size()];
+        for (int i = 0; i < books.size(); i++) {
+            bookIds[i] = books.get(i).getId();
+        }
 
-        for (Book book : books) {
-            deleteSuccess = delete(book, context);
+        for (boolean deleted : deleteBooks(bookIds, context)) {
+            if (!deleted) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    /**
+     * Delete books by id from the inventory database in a single transaction
+     *
+     * @param bookIds of the books to delete
+     * @param context activity context
+     * @return for each id, true if that book was deleted
+     */
+    public static boolean[] deleteBooks(long[] bookIds, Context context) {
+        Bundle extras = new Bundle();
+        extras.putLongArray(InventoryContract.EXTRA_BOOK_IDS, bookIds);
 
-        return deleteSuccess;
+        try {
+            Bundle result = getRepository(context).call(
+                    InventoryContract.METHOD_DELETE_BOOKS,
+                    null,
+                    extras);
+
+            if (result != null) {
+                return result.getBooleanArray(InventoryContract.EXTRA_DELETED);
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception while deleting books by ID", e);
+        }
+        return new boolean[bookIds.length];
     }
 
     /**
@@ -184,10 +454,7 @@ public class Inventory {
         int rowCount = -1;
 
         try {
-            rowCount = context.getContentResolver().delete(
-                    uri,
-                    SupplierEntry._ID + "=?",
-                    new String[]{String.valueOf(ContentUris.parseId(uri))});
+            rowCount = getRepository(context).delete(uri, null, null);
         } catch (Exception e) {
             Log.e(LOG_TAG, "Exception while deleting a supplier by ID", e);
         }
@@ -207,7 +474,7 @@ public class Inventory {
     }
 
     private static int deleteAllSuppliers(Context context) {
-        return context.getContentResolver().delete(
+        return getRepository(context).delete(
                 SupplierEntry.CONTENT_URI,
                 null,
                 null
@@ -215,7 +482,7 @@ public class Inventory {
     }
 
     private static int deleteAllBooks(Context context) {
-        return context.getContentResolver().delete(
+        return getRepository(context).delete(
                 BookEntry.CONTENT_URI,
                 null,
                 null
@@ -223,47 +490,337 @@ public class Inventory {
     }
 
     /**
-     * Update a single book in the inventory database
+     * Update a single book in the inventory database.
+     * Only fields that have changed since the book was loaded are written, and only
+     * if the stored book is still at the version it was loaded at.
      *
      * @param book    to update
      * @param context activity context
+     * @return {@link UpdateResult} holding the stored book if it has been changed by someone else
      */
-    public static boolean update(Book book, Context context) {
-        Uri uri = BookEntry.getBookUri(book.getId());
+    public static UpdateResult<Book> update(Book book, Context context) {
+        if (!book.hasChanges()) {
+            return UpdateResult.saved();
+        }
+
+        Uri uri = withExpectedVersion(BookEntry.getBookUri(book.getId()), book.getVersion());
         int rowCount = -1;
 
         try {
-            rowCount = context.getContentResolver().update(
+            rowCount = getRepository(context).update(
                     uri,
-                    bookToContentValues(book),
-                    BookEntry._ID + "=?",
-                    new String[]{String.valueOf(ContentUris.parseId(uri))});
+                    changedBookToContentValues(book),
+                    null,
+                    null);
         } catch (Exception e) {
-            Log.e(LOG_TAG, "Exception while deleting a book by ID", e);
+            Log.e(LOG_TAG, "Exception while updating a book by ID", e);
+            return UpdateResult.failed();
         }
-        return rowCount == 1;
+
+        if (rowCount == 1) {
+            book.clearChanges();
+            book.setVersion(book.getVersion() + 1);
+            return UpdateResult.saved();
+        }
+        return bookConflict(book.getId(), context);
     }
 
     /**
-     * Update a single supplier in the inventory database
+     * Update a single supplier in the inventory database.
+     * Only fields that have changed since the supplier was loaded are written, and only
+     * if the stored supplier is still at the version it was loaded at.
      *
      * @param supplier to update
      * @param context  activity context
+     * @return {@link UpdateResult} holding the stored supplier if it has been changed by someone else
      */
-    public static boolean update(Supplier supplier, Context context) {
-        Uri uri = SupplierEntry.getSupplierUri(supplier.getId());
+    public static UpdateResult<Supplier> update(Supplier supplier, Context context) {
+        if (!supplier.hasChanges()) {
+            return UpdateResult.saved();
+        }
+
+        Uri uri = withExpectedVersion(
+                SupplierEntry.getSupplierUri(supplier.getId()), supplier.getVersion());
         int rowCount = -1;
 
         try {
-            rowCount = context.getContentResolver().update(
+            rowCount = getRepository(context).update(
                     uri,
-                    supplierToContentValues(supplier),
-                    SupplierEntry._ID + "=?",
-                    new String[]{String.valueOf(ContentUris.parseId(uri))});
+                    changedSupplierToContentValues(supplier),
+                    null,
+                    null);
         } catch (Exception e) {
-            Log.e(LOG_TAG, "Exception while deleting a supplier by ID", e);
+            Log.e(LOG_TAG, "Exception while updating a supplier by ID", e);
+            return UpdateResult.failed();
         }
-        return rowCount == 1;
+
+        if (rowCount == 1) {
+            supplier.clearChanges();
+            supplier.setVersion(supplier.getVersion() + 1);
+            return UpdateResult.saved();
+        }
+
+        // nothing was updated, either the supplier was changed or it no longer exists.
+        // the cache may not have heard about the change yet, so read the stored row
+        Supplier current = querySupplierById(supplier.getId(), context);
+        return current == null ? UpdateResult.failed() : UpdateResult.conflict(current);
+    }
+
+    /**
+     * Return the result of a book update that changed nothing. Either the
+     * book was changed by someone else, or it no longer exists.
+     *
+     * @param bookId  of the book that was not updated
+     * @param context activity context
+     * @return {@link UpdateResult}
+     */
+    private static UpdateResult<Book> bookConflict(long bookId, Context context) {
+        Book current = getBookById(bookId, context);
+        return current == null ? UpdateResult.failed() : UpdateResult.conflict(current);
+    }
+
+    // Return a URI that only updates the row if it is at the given version
+    private static Uri withExpectedVersion(Uri uri, long version) {
+        return uri.buildUpon()
+                .appendQueryParameter(InventoryContract.PARAM_EXPECTED_VERSION,
+                        String.valueOf(version))
+                .build();
+    }
+
+    /**
+     * Sell a single copy of a book
+     *
+     * @param bookId  of the book to sell
+     * @param context activity context
+     * @return new quantity, or {@link InventoryContract#QUANTITY_UNAVAILABLE}
+     * if there are no copies left to sell
+     */
+    public static int sellBook(long bookId, Context context) {
+        return adjustQuantity(bookId, -1, context);
+    }
+
+    /**
+     * Order a single copy of a book
+     *
+     * @param bookId  of the book to order
+     * @param context activity context
+     * @return new quantity, or {@link InventoryContract#QUANTITY_UNAVAILABLE}
+     * if the book does not exist
+     */
+    public static int orderBook(long bookId, Context context) {
+        return adjustQuantity(bookId, 1, context);
+    }
+
+    /**
+     * Atomically change the quantity of a book in the inventory database.
+     * Only the quantity column is written.
+     *
+     * @param bookId  of the book to adjust
+     * @param delta   amount to add to the quantity. negative to remove stock
+     * @param context activity context
+     * @return new quantity, or {@link InventoryContract#QUANTITY_UNAVAILABLE}
+     * if the adjustment would leave the quantity below zero
+     */
+    public static int adjustQuantity(long bookId, int delta, Context context) {
+        Bundle extras = new Bundle();
+        extras.putLong(InventoryContract.EXTRA_BOOK_ID, bookId);
+        extras.putInt(InventoryContract.EXTRA_QUANTITY_DELTA, delta);
+
+        try {
+            Bundle result = getRepository(context).call(
+                    InventoryContract.METHOD_ADJUST_QUANTITY,
+                    null,
+                    extras);
+
+            if (result != null) {
+                return result.getInt(InventoryContract.EXTRA_QUANTITY,
+                        InventoryContract.QUANTITY_UNAVAILABLE);
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception while adjusting the quantity of a book", e);
+        }
+        return InventoryContract.QUANTITY_UNAVAILABLE;
+    }
+
+    /**
+     * Atomically change the quantity of many books in a single transaction
+     *
+     * @param bookIds books to adjust
+     * @param deltas  amount to add to the quantity of each book
+     * @param context activity context
+     * @return new quantity of each book, with {@link InventoryContract#QUANTITY_UNAVAILABLE}
+     * for each adjustment that would have left the quantity below zero,
+     * or null if the adjustments could not be saved
+     */
+    public static int[] adjustQuantities(long[] bookIds, int[] deltas, Context context) {
+        return adjustQuantities(bookIds, deltas, InventoryContract.NO_BATCH_SEQUENCE, context);
+    }
+
+    /**
+     * Atomically change the quantity of many books in a single transaction, unless
+     * the batch is the last one that was saved
+     *
+     * @param bookIds  books to adjust
+     * @param deltas   amount to add to the quantity of each book
+     * @param sequence of the batch, recorded with the changes
+     * @param context  activity context
+     * @return new quantity of each book, with {@link InventoryContract#QUANTITY_UNAVAILABLE}
+     * for each adjustment that would have left the quantity below zero. empty if the
+     * batch had already been saved, or null if the adjustments could not be saved
+     */
+    public static int[] adjustQuantities(long[] bookIds, int[] deltas, long sequence,
+                                         Context context) {
+        Bundle extras = new Bundle();
+        extras.putLongArray(InventoryContract.EXTRA_BOOK_IDS, bookIds);
+        extras.putIntArray(InventoryContract.EXTRA_QUANTITY_DELTAS, deltas);
+        extras.putLong(InventoryContract.EXTRA_BATCH_SEQUENCE, sequence);
+
+        try {
+            Bundle result = getRepository(context).call(
+                    InventoryContract.METHOD_ADJUST_QUANTITIES,
+                    null,
+                    extras);
+
+            if (result != null) {
+                return result.getIntArray(InventoryContract.EXTRA_QUANTITIES);
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception while adjusting the quantity of books", e);
+        }
+        return null;
+    }
+
+    /**
+     * Queue a write to run on the inventory writer thread
+     *
+     * @param task     to run
+     * @param context  activity context
+     * @param callback called on the main thread with the result. may be null
+     * @param <T>      type of the result
+     * @return {@link Future} result of the write
+     */
+    public static <T> Future<T> submitWrite(Callable<T> task, Context context,
+                                            InventoryWriter.Callback<T> callback) {
+        return InventoryWriter.getInstance(context).submit(task, callback);
+    }
+
+    /**
+     * Insert a book into the inventory database on the writer thread
+     *
+     * @param book     to insert
+     * @param context  activity context
+     * @param callback called on the main thread with the id of the new book,
+     *                 or -1 if it could not be inserted. may be null
+     * @return {@link Future} id of the new book
+     */
+    public static Future<Long> insertAsync(Book book, Context context,
+                                           InventoryWriter.Callback<Long> callback) {
+        ContentProviderOperation operation = ContentProviderOperation
+                .newInsert(BookEntry.CONTENT_URI)
+                .withValues(bookToContentValues(book))
+                .build();
+
+        return InventoryWriter.getInstance(context).submit(
+                operation,
+                result -> result != null && result.uri != null
+                        ? ContentUris.parseId(result.uri)
+                        : -1L,
+                callback);
+    }
+
+    /**
+     * Update a single book on the writer thread.
+     * Only fields that have changed since the book was loaded are written, and only
+     * if the stored book is still at the version it was loaded at.
+     *
+     * @param book     to update
+     * @param context  activity context
+     * @param callback called on the main thread with the {@link UpdateResult}. may be null
+     * @return {@link Future} result of the update
+     */
+    public static Future<UpdateResult<Book>> updateAsync(
+            Book book, Context context, InventoryWriter.Callback<UpdateResult<Book>> callback) {
+        if (!book.hasChanges()) {
+            return submitWrite(UpdateResult::saved, context, callback);
+        }
+
+        Context appContext = context.getApplicationContext();
+        long expectedVersion = book.getVersion();
+        ContentProviderOperation operation = ContentProviderOperation
+                .newUpdate(withExpectedVersion(BookEntry.getBookUri(book.getId()), expectedVersion))
+                .withValues(changedBookToContentValues(book))
+                .build();
+
+        // a conflict is looked up on the writer thread, so the stored book can't change underneath it
+        return InventoryWriter.getInstance(context).submit(
+                operation,
+                result -> {
+                    if (result == null || result.count == null) {
+                        return UpdateResult.failed();
+                    }
+                    return result.count == 1
+                            ? UpdateResult.saved()
+                            : bookConflict(book.getId(), appContext);
+                },
+                result -> {
+                    if (result.isSaved()) {
+                        book.clearChanges();
+                        book.setVersion(expectedVersion + 1);
+                    }
+                    if (callback != null) {
+                        callback.onComplete(result);
+                    }
+                });
+    }
+
+    /**
+     * Delete a book from the inventory database on the writer thread
+     *
+     * @param bookId   of the book to delete
+     * @param context  activity context
+     * @param callback called on the main thread with true if the book was deleted. may be null
+     * @return {@link Future} true if the book was deleted
+     */
+    public static Future<Boolean> deleteBookAsync(long bookId, Context context,
+                                                  InventoryWriter.Callback<Boolean> callback) {
+        ContentProviderOperation operation = ContentProviderOperation
+                .newDelete(BookEntry.getBookUri(bookId))
+                .build();
+
+        return InventoryWriter.getInstance(context).submit(
+                operation,
+                result -> result != null && result.count != null && result.count == 1,
+                callback);
+    }
+
+    /**
+     * Atomically change the quantity of a book on the writer thread
+     *
+     * @param bookId   of the book to adjust
+     * @param delta    amount to add to the quantity. negative to remove stock
+     * @param context  activity context
+     * @param callback called on the main thread with the new quantity, or
+     *                 {@link InventoryContract#QUANTITY_UNAVAILABLE}. may be null
+     * @return {@link Future} new quantity
+     */
+    public static Future<Integer> adjustQuantityAsync(long bookId, int delta, Context context,
+                                                      InventoryWriter.Callback<Integer> callback) {
+        Context appContext = context.getApplicationContext();
+        return submitWrite(() -> adjustQuantity(bookId, delta, appContext), context, callback);
+    }
+
+    /**
+     * Delete all data in the database on the writer thread
+     *
+     * @param context  activity context
+     * @param callback called on the main thread with the number of suppliers
+     *                 and books deleted. may be null
+     * @return {@link Future} number of suppliers and books deleted
+     */
+    public static Future<int[]> deleteAllAsync(Context context,
+                                               InventoryWriter.Callback<int[]> callback) {
+        Context appContext = context.getApplicationContext();
+        return submitWrite(() -> deleteAll(appContext), context, callback);
     }
 
     /**
@@ -279,6 +836,7 @@ public class Inventory {
         values.put(BookEntry.COLUMN_BOOK_QUANTITY, book.getQuantity());
         values.put(BookEntry.COLUMN_BOOK_IMAGE, book.getImage());
         values.put(BookEntry.COLUMN_BOOK_SUPPLIER_ID, book.getSupplier().getId());
+        values.put(BookEntry.COLUMN_BOOK_ISBN, book.getIsbn());
         return values;
     }
 
@@ -296,6 +854,57 @@ public class Inventory {
         return values;
     }
 
+    /**
+     * Return {@link ContentValues} containing only the fields of a {@link Book}
+     * that have changed since it was loaded
+     *
+     * @param book used to generate {@link ContentValues}
+     * @return {@link ContentValues}
+     */
+    private static ContentValues changedBookToContentValues(Book book) {
+        ContentValues values = new ContentValues();
+        if (book.isChanged(Book.FIELD_NAME)) {
+            values.put(BookEntry.COLUMN_BOOK_TITLE, book.getName());
+        }
+        if (book.isChanged(Book.FIELD_PRICE)) {
+            values.put(BookEntry.COLUMN_BOOK_PRICE, book.getPrice());
+        }
+        if (book.isChanged(Book.FIELD_QUANTITY)) {
+            values.put(BookEntry.COLUMN_BOOK_QUANTITY, book.getQuantity());
+        }
+        if (book.isChanged(Book.FIELD_IMAGE)) {
+            values.put(BookEntry.COLUMN_BOOK_IMAGE, book.getImage());
+        }
+        if (book.isChanged(Book.FIELD_SUPPLIER)) {
+            values.put(BookEntry.COLUMN_BOOK_SUPPLIER_ID, book.getSupplier().getId());
+        }
+        if (book.isChanged(Book.FIELD_ISBN)) {
+            values.put(BookEntry.COLUMN_BOOK_ISBN, book.getIsbn());
+        }
+        return values;
+    }
+
+    /**
+     * Return {@link ContentValues} containing only the fields of a {@link Supplier}
+     * that have changed since it was loaded
+     *
+     * @param supplier used to generate {@link ContentValues}
+     * @return {@link ContentValues}
+     */
+    private static ContentValues changedSupplierToContentValues(Supplier supplier) {
+        ContentValues values = new ContentValues();
+        if (supplier.isChanged(Supplier.FIELD_NAME)) {
+            values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, supplier.getName());
+        }
+        if (supplier.isChanged(Supplier.FIELD_EMAIL)) {
+            values.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, supplier.getEmail());
+        }
+        if (supplier.isChanged(Supplier.FIELD_PHONE_NUM)) {
+            values.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUM, supplier.getPhoneNum());
+        }
+        return values;
+    }
+
     /**
      * Return a single {@link Book} for a given {@link Cursor}
      *
@@ -322,6 +931,7 @@ public class Inventory {
                 int priceIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_PRICE);
                 int quantityIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_QUANTITY);
                 int imageIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_IMAGE);
+                int isbnIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_ISBN);
 
                 // get data if we have the columns, otherwise use a default val
                 String title = titleIndex > -1
@@ -340,15 +950,34 @@ public class Inventory {
                         ? cursor.getBlob(imageIndex)
                         : new byte[0];
 
+                // use the cached supplier, then the supplier columns of a joined cursor,
+                // and only look the supplier up as a last resort
+                Supplier supplier = SupplierCache.getInstance(context).peek(supplierId);
+                if (supplier == null) {
+                    supplier = cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_EMAIL) > -1
+                            ? cursorToJoinedSupplier(cursor, supplierId)
+                            : getSupplierById(supplierId, context);
+                }
+
                 // create book object from cursor data
                 book = new Book(
                         cursor.getLong(cursor.getColumnIndex(BookEntry._ID)),
-                        getSupplierById(supplierId, context),
+                        supplier,
                         title,
                         price,
                         quantity,
                         image
                 );
+
+                if (isbnIndex > -1) {
+                    book.setIsbn(cursor.getString(isbnIndex));
+                    book.clearChanges();
+                }
+
+                int versionIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_VERSION);
+                if (versionIndex > -1) {
+                    book.setVersion(cursor.getLong(versionIndex));
+                }
             }
 
         } catch (Exception e) {
@@ -387,10 +1016,12 @@ public class Inventory {
                         cursor.getString(cursor.getColumnIndex(
                                 SupplierEntry.COLUMN_SUPPLIER_NAME)),
                         cursor.getString(cursor.getColumnIndex(
-                                SupplierEntry.COLUMN_SUPPLIER_NAME)),
+                                SupplierEntry.COLUMN_SUPPLIER_EMAIL)),
                         cursor.getString(cursor.getColumnIndex(
                                 SupplierEntry.COLUMN_SUPPLIER_PHONE_NUM))
                 );
+                supplier.setVersion(cursor.getLong(cursor.getColumnIndex(
+                        SupplierEntry.COLUMN_SUPPLIER_VERSION)));
             }
 
         } catch (Exception e) {
@@ -407,9 +1038,14 @@ public class Inventory {
     }
 
     /**
-     * Return a {@link List} of {@link Book} for a given {@link Cursor}
+     * Return a {@link List} of {@link Book} for a given {@link Cursor}.
+     * <p>
+     * Suppliers already in the {@link SupplierCache} are used as is. Otherwise, if
+     * the cursor has supplier columns, as returned by {@link BookEntry#CONTENT_DETAIL_URI},
+     * suppliers are read from it, or else each supplier is looked up once. Books with
+     * the same supplier share a single {@link Supplier}.
      *
-     * @param cursor  containing the supplier data
+     * @param cursor  containing the book data
      * @param context app context
      * @return {@link List} of {@link Book}
      */
@@ -417,22 +1053,50 @@ public class Inventory {
         List<Book> books = new ArrayList<>();
 
         try {
-            while (cursor != null && cursor.moveToNext()) {
+            if (cursor == null) {
+                return books;
+            }
 
-                long supplierId = cursor.getLong(cursor.getColumnIndex(
-                        BookEntry.COLUMN_BOOK_SUPPLIER_ID));
+            // get column indexes once rather than for every row
+            int idIndex = cursor.getColumnIndex(BookEntry._ID);
+            int supplierIdIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_SUPPLIER_ID);
+            int titleIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_TITLE);
+            int priceIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_PRICE);
+            int quantityIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_QUANTITY);
+            int imageIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_IMAGE);
+            int isbnIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_ISBN);
+            int versionIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_VERSION);
+            boolean joined = cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_EMAIL) > -1;
+
+            // suppliers already built, by id
+            LongSparseArray<Supplier> suppliers = new LongSparseArray<>();
+            SupplierCache supplierCache = SupplierCache.getInstance(context);
+
+            while (cursor.moveToNext()) {
+                long supplierId = cursor.getLong(supplierIdIndex);
+
+                Supplier supplier = suppliers.get(supplierId);
+                if (supplier == null) {
+                    supplier = supplierCache.peek(supplierId);
+                }
+                if (supplier == null) {
+                    supplier = joined
+                            ? cursorToJoinedSupplier(cursor, supplierId)
+                            : getSupplierById(supplierId, context);
+                    suppliers.put(supplierId, supplier);
+                }
 
                 Book book = new Book(
-                        getSupplierById(supplierId, context),
-                        cursor.getString(cursor.getColumnIndex(
-                                BookEntry.COLUMN_BOOK_TITLE)),
-                        cursor.getInt(cursor.getColumnIndex(
-                                BookEntry.COLUMN_BOOK_PRICE)),
-                        cursor.getInt(cursor.getColumnIndex(
-                                BookEntry.COLUMN_BOOK_QUANTITY)),
-                        cursor.getBlob(cursor.getColumnIndex(
-                                BookEntry.COLUMN_BOOK_IMAGE))
+                        cursor.getLong(idIndex),
+                        supplier,
+                        cursor.getString(titleIndex),
+                        cursor.getInt(priceIndex),
+                        cursor.getInt(quantityIndex),
+                        cursor.getBlob(imageIndex)
                 );
+                book.setIsbn(cursor.getString(isbnIndex));
+                book.setVersion(cursor.getLong(versionIndex));
+                book.clearChanges();
 
                 // add book to the list to return
                 books.add(book);
@@ -450,6 +1114,21 @@ public class Inventory {
         return books;
     }
 
+    /**
+     * Return the {@link Supplier} in the current row of a cursor that joins books with suppliers
+     *
+     * @param cursor     positioned on the row to read
+     * @param supplierId id of the supplier in this row
+     * @return {@link Supplier}
+     */
+    private static Supplier cursorToJoinedSupplier(Cursor cursor, long supplierId) {
+        return new Supplier(
+                supplierId,
+                cursor.getString(cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_NAME)),
+                cursor.getString(cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_EMAIL)),
+                cursor.getString(cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUM)));
+    }
+
     /**
      * Return a {@link List} of {@link Supplier} for a given {@link Cursor}
      *
@@ -472,6 +1151,8 @@ public class Inventory {
                         cursor.getString(cursor.getColumnIndex(
                                 SupplierEntry.COLUMN_SUPPLIER_PHONE_NUM))
                 );
+                supplier.setVersion(cursor.getLong(cursor.getColumnIndex(
+                        SupplierEntry.COLUMN_SUPPLIER_VERSION)));
 
                 // add supplier to list to return
                 suppliers.add(supplier);
@@ -487,23 +1168,233 @@ public class Inventory {
         return suppliers;
     }
 
-    public static Loader<Cursor> getSummaryLoader(Context context) {
-        // Define a projection that specifies the columns from the table we care about.
-        String[] projection = {
-                BookEntry._ID,
-                BookEntry.COLUMN_BOOK_SUPPLIER_ID,
-                BookEntry.COLUMN_BOOK_TITLE,
-                BookEntry.COLUMN_BOOK_PRICE,
-                BookEntry.COLUMN_BOOK_QUANTITY};
+    /**
+     * Return a page of book summaries, sorted and filtered by the given query.
+     * <p>
+     * Pages are read with keyset pagination, so reading any page costs the same
+     * however far into the list it is. Sorting and filtering are done by the provider.
+     * While searching, matches are ranked by the provider and paged by position.
+     * A search that matches nothing is tried again allowing for typos. The books of
+     * a single supplier are read through that supplier's books URI.
+     *
+     * @param query     sort order, filters and search
+     * @param afterKeys {@link BookPage#getLastKeys()} of the previous page, or null for the first page
+     * @param afterId   id of the last row of the previous page
+     * @param limit     most rows to return
+     * @param context   activity context
+     * @return {@link BookPage}, or null if the page could not be read
+     */
+    public static BookPage getBookPage(BookQuery query, String[] afterKeys, long afterId,
+                                       int limit, Context context) {
+        if (query.getSearch() != null) {
+            return getSearchPage(query, afterKeys, limit, context);
+        }
+
+        Uri listUri = BookEntry.CONTENT_URI;
+        if (query.getSupplierId() != BookQuery.NONE) {
+            // the supplier is part of the URI rather than a filter
+            listUri = SupplierEntry.getSupplierBooksUri(query.getSupplierId());
+            query = new BookQuery(query);
+            query.setSupplierId(BookQuery.NONE);
+        }
 
-        // This loader will execute the ContentProvider's query method on a background thread
-        return new CursorLoader(
-                context,                // Parent activity context
-                BookEntry.CONTENT_URI,  // Provider content URI to query
-                projection,             // Columns to include in the resulting Cursor
-                null,                   // No selection clause
-                null,                   // No selection arguments
-                null);                  // Default sort order
+        // ask for one extra row to find out if there is another page
+        Uri.Builder builder = BookEntry.getBookPageUri(
+                listUri, query.getSort(), afterKeys, afterId, limit + 1).buildUpon();
+        appendFilters(builder, query);
+
+        return readBookPage(builder.build(), BookEntry.getPageKeyColumns(query.getSort()),
+                limit, null, 0, context);
+    }
+
+    /**
+     * Return a page of books matching a search, best match first.
+     * <p>
+     * The key of a search result is its position and the search mode, so later pages
+     * keep using fuzzy matching once the first page needed it.
+     *
+     * @param query     search and filters
+     * @param afterKeys {@link BookPage#getLastKeys()} of the previous page, or null for the first page
+     * @param limit     most rows to return
+     * @param context   activity context
+     * @return {@link BookPage}, or null if the page could not be read
+     */
+    private static BookPage getSearchPage(BookQuery query, String[] afterKeys, int limit,
+                                          Context context) {
+        String mode = afterKeys == null ? InventoryContract.MODE_PREFIX : afterKeys[1];
+        int offset = afterKeys == null ? 0 : Integer.parseInt(afterKeys[0]);
+
+        Uri.Builder builder = BookEntry.getBookSearchUri(
+                query.getSearch(), mode, offset, limit + 1).buildUpon();
+        appendFilters(builder, query);
+        BookPage page = readBookPage(builder.build(), new String[0], limit, mode, offset, context);
+
+        if (page != null && page.size == 0 && afterKeys == null) {
+            // nothing starts with what was typed, so look for titles spelt like it
+            builder = BookEntry.getBookSearchUri(
+                    query.getSearch(), InventoryContract.MODE_FUZZY, 0, limit + 1).buildUpon();
+            appendFilters(builder, query);
+            page = readBookPage(builder.build(), new String[0], limit,
+                    InventoryContract.MODE_FUZZY, 0, context);
+        }
+        return page;
+    }
+
+    /**
+     * Read a page of book summaries
+     *
+     * @param uri        to read the page from, asking for one more row than the limit
+     * @param keyColumns sort key columns returned after the list columns
+     * @param limit      most rows to return
+     * @param searchMode search mode the page was read with, or null if it isn't a search
+     * @param offset     position of the first row, for search results
+     * @param context    activity context
+     * @return {@link BookPage}, or null if the page could not be read
+     */
+    private static BookPage readBookPage(Uri uri, String[] keyColumns, int limit,
+                                         String searchMode, int offset, Context context) {
+        // the list columns, followed by the sort key columns
+        String[] projection = new String[4 + keyColumns.length];
+        projection[0] = BookEntry._ID;
+        projection[1] = BookEntry.COLUMN_BOOK_TITLE;
+        projection[2] = BookEntry.COLUMN_BOOK_PRICE;
+        projection[3] = BookEntry.COLUMN_BOOK_QUANTITY;
+        System.arraycopy(keyColumns, 0, projection, 4, keyColumns.length);
+
+        Cursor cursor = null;
+        try {
+            cursor = getRepository(context).query(uri, projection, null, null, null);
+            if (cursor == null) {
+                return null;
+            }
+
+            int size = Math.min(cursor.getCount(), limit);
+            long[] ids = new long[size];
+            String[] titles = new String[size];
+            int[] prices = new int[size];
+            int[] quantities = new int[size];
+            String[] lastKeys = null;
+
+            for (int i = 0; i < size && cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+                titles[i] = cursor.getString(1);
+                prices[i] = cursor.getInt(2);
+                quantities[i] = cursor.getInt(3);
+            }
+
+            if (size > 0 && searchMode != null) {
+                // the next page of search results starts after this one
+                lastKeys = new String[]{String.valueOf(offset + size), searchMode};
+            } else if (size > 0) {
+                // the next page starts after the sort key of the last row
+                cursor.moveToPosition(size - 1);
+                lastKeys = new String[keyColumns.length];
+                for (int i = 0; i < keyColumns.length; i++) {
+                    lastKeys[i] = cursor.getString(4 + i);
+                }
+            }
+
+            return new BookPage(ids, titles, prices, quantities, size,
+                    cursor.getCount() > limit, lastKeys);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception while reading a page of books", e);
+            return null;
+        } finally {
+            // we need to close the cursor to prevent memory leaks
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Return the size of the in memory title index used for fuzzy search
+     *
+     * @param context activity context
+     * @return {@link Bundle} with the number of books, trigrams and estimated bytes,
+     * or null if the provider could not be reached
+     */
+    public static Bundle getTitleIndexStats(Context context) {
+        try {
+            return getRepository(context).call(
+                    InventoryContract.METHOD_TITLE_INDEX_STATS, null, null);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception while reading title index stats", e);
+            return null;
+        }
+    }
+
+    /**
+     * Return how well the provider's query result cache is doing
+     *
+     * @param context activity context
+     * @return {@link Bundle} with hit, miss, eviction and invalidation counts, the number
+     * of cached results and their estimated bytes. empty if the cache is turned off, or
+     * null if the provider could not be reached
+     */
+    public static Bundle getQueryCacheStats(Context context) {
+        try {
+            return getRepository(context).call(
+                    InventoryContract.METHOD_QUERY_CACHE_STATS, null, null);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception while reading query cache stats", e);
+            return null;
+        }
+    }
+
+    /**
+     * Return the fraction of provider queries answered from memory
+     *
+     * @param context activity context
+     * @return hits divided by all lookups, or 0 if there have been none
+     */
+    public static float getQueryCacheHitRatio(Context context) {
+        Bundle stats = getQueryCacheStats(context);
+        if (stats == null) {
+            return 0;
+        }
+
+        long hits = stats.getLong(InventoryContract.EXTRA_CACHE_HITS);
+        long lookups = hits + stats.getLong(InventoryContract.EXTRA_CACHE_MISSES);
+        return lookups == 0 ? 0 : (float) hits / lookups;
+    }
+
+    /**
+     * Return what the most recent background maintenance run did
+     *
+     * @param context activity context
+     * @return {@link Bundle} with when the run finished, how long its steps took, the
+     * indexes it analyzed, the bytes it reclaimed, the free and total pages left and
+     * the result of its integrity check if it ran one. empty if there hasn't been a
+     * run, or null if the provider could not be reached
+     */
+    public static Bundle getMaintenanceStats(Context context) {
+        try {
+            return getRepository(context).call(
+                    InventoryContract.METHOD_MAINTENANCE_STATS, null, null);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception while reading maintenance stats", e);
+            return null;
+        }
+    }
+
+    // add the filters of a query to a book page or search URI
+    private static void appendFilters(Uri.Builder builder, BookQuery query) {
+        if (query.getStock() != null) {
+            builder.appendQueryParameter(InventoryContract.PARAM_STOCK, query.getStock());
+        }
+        if (query.getMinPrice() != BookQuery.NONE) {
+            builder.appendQueryParameter(InventoryContract.PARAM_MIN_PRICE,
+                    String.valueOf(query.getMinPrice()));
+        }
+        if (query.getMaxPrice() != BookQuery.NONE) {
+            builder.appendQueryParameter(InventoryContract.PARAM_MAX_PRICE,
+                    String.valueOf(query.getMaxPrice()));
+        }
+        if (query.getSupplierId() != BookQuery.NONE) {
+            builder.appendQueryParameter(InventoryContract.PARAM_SUPPLIER_ID,
+                    String.valueOf(query.getSupplierId()));
+        }
     }
 
     public static Loader<Cursor> getBookDetailCursor(Context context, long id) {
@@ -516,12 +1407,34 @@ public class Inventory {
                 null);                          // Default sort order
     }
 
+    /**
+     * Return a loader for a supplier with the totals of its books, in a single row.
+     * It reloads whenever a book or supplier changes
+     *
+     * @param context activity context
+     * @param id      of the supplier
+     * @return {@link Loader} of a cursor with the supplier columns and the
+     * SupplierEntry totals columns
+     */
+    public static Loader<Cursor> getSupplierStockCursor(Context context, long id) {
+        return new CursorLoader(
+                context,
+                SupplierEntry.getSupplierStockUri(id),
+                null,
+                null,
+                null,
+                null);
+    }
+
     public static Book bookDetailCursorToBook(Cursor cursor) {
         // get column indexes in cursor
         int bookTitleIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_TITLE);
         int bookPriceIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_PRICE);
         int bookQuantityIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_QUANTITY);
         int bookImageIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_IMAGE);
+        int bookIsbnIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_ISBN);
+        int bookVersionIndex = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_VERSION);
+        int bookIdIndex = cursor.getColumnIndex(BookEntry._ID);
         int bookSupplierId = cursor.getColumnIndex(BookEntry.COLUMN_BOOK_SUPPLIER_ID);
 
         int supplierNameIndex = cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_NAME);
@@ -535,11 +1448,19 @@ public class Inventory {
                 cursor.getString(supplierEmailIndex),
                 cursor.getString(supplierPhoneIndex));
 
-        return new Book(
+        Book book = new Book(
+                cursor.getLong(bookIdIndex),
                 supplier,
                 cursor.getString(bookTitleIndex),
                 cursor.getInt(bookPriceIndex),
                 cursor.getInt(bookQuantityIndex),
                 cursor.getBlob(bookImageIndex));
+
+        // a freshly loaded book has nothing to save
+        book.setIsbn(cursor.getString(bookIsbnIndex));
+        book.setVersion(cursor.getLong(bookVersionIndex));
+        book.clearChanges();
+
+        return book;
     }
 }
@@ -18,6 +18,108 @@ public class InventoryContract {
     public static final String PATH_BOOKS = "books";
     public static final String PATH_SUPPLIERS = "suppliers";
     public static final String PATH_BOOKS_DETAIL = PATH_BOOKS + "/detail";
+    public static final String PATH_BOOKS_UPSERT = PATH_BOOKS + "/upsert";
+    public static final String PATH_BOOKS_SEARCH = PATH_BOOKS + "/search";
+    public static final String PATH_SUPPLIERS_UPSERT = PATH_SUPPLIERS + "/upsert";
+
+    // appended to a single supplier URI for the supplier's books, or for its stock totals
+    public static final String PATH_SUPPLIER_BOOKS = PATH_BOOKS;
+    public static final String PATH_SUPPLIER_STOCK = "stock";
+
+    // provider call() to atomically adjust the quantity of a book
+    public static final String METHOD_ADJUST_QUANTITY = "adjust_quantity";
+    public static final String EXTRA_BOOK_ID = "book_id";
+    public static final String EXTRA_QUANTITY_DELTA = "quantity_delta";
+    public static final String EXTRA_QUANTITY = "quantity";
+
+    // provider call() to atomically adjust the quantity of many books in one transaction
+    public static final String METHOD_ADJUST_QUANTITIES = "adjust_quantities";
+    public static final String EXTRA_BOOK_IDS = "book_ids";
+    public static final String EXTRA_QUANTITY_DELTAS = "quantity_deltas";
+    public static final String EXTRA_QUANTITIES = "quantities";
+
+    // optional sequence number of the batch. the last saved batch is not applied twice
+    public static final String EXTRA_BATCH_SEQUENCE = "batch_sequence";
+
+    // provider call() to delete many books in one transaction
+    public static final String METHOD_DELETE_BOOKS = "delete_books";
+    public static final String EXTRA_DELETED = "deleted";
+
+    // query parameter on a book or supplier URI. the update only applies if the row
+    // is still at this version
+    public static final String PARAM_EXPECTED_VERSION = "expected_version";
+
+    // query parameters on the book list URI to read one page at a time. rows are ordered
+    // by the sort key then _id, and start after the row with the given key and _id.
+    // sort keys made of several columns repeat PARAM_AFTER_KEY once for each column
+    public static final String PARAM_LIMIT = "limit";
+    public static final String PARAM_SORT = "sort";
+    public static final String PARAM_AFTER_KEY = "after_key";
+    public static final String PARAM_AFTER_ID = "after_id";
+
+    // sort keys for PARAM_SORT. titles and supplier names are compared ignoring case,
+    // using the rules of the device's language
+    public static final String SORT_TITLE = "title";
+    public static final String SORT_PRICE = "price";
+    public static final String SORT_QUANTITY = "quantity";
+    public static final String SORT_SUPPLIER = "supplier";
+
+    // query parameters on the book list URI to narrow down a page of books.
+    // prices are in cents
+    public static final String PARAM_STOCK = "stock";
+    public static final String PARAM_MIN_PRICE = "min_price";
+    public static final String PARAM_MAX_PRICE = "max_price";
+    public static final String PARAM_SUPPLIER_ID = "supplier_id";
+
+    // stock levels for PARAM_STOCK
+    public static final String STOCK_IN = "in";
+    public static final String STOCK_OUT = "out";
+    public static final String STOCK_LOW = "low";
+
+    // query parameters on the book search URI. results are ranked, so they are paged
+    // by offset. the filter parameters above can be used as well
+    public static final String PARAM_QUERY = "q";
+    public static final String PARAM_OFFSET = "offset";
+
+    // query parameter on the book search URI to choose how words are matched.
+    // fuzzy matches titles that are spelt slightly differently, best match first,
+    // and ignores supplier names
+    public static final String PARAM_MODE = "mode";
+    public static final String MODE_PREFIX = "prefix";
+    public static final String MODE_FUZZY = "fuzzy";
+
+    // provider call() to report the size of the in memory title index used by fuzzy search
+    public static final String METHOD_TITLE_INDEX_STATS = "title_index_stats";
+    public static final String EXTRA_INDEXED_BOOKS = "indexed_books";
+    public static final String EXTRA_INDEXED_TRIGRAMS = "indexed_trigrams";
+    public static final String EXTRA_MEMORY_BYTES = "memory_bytes";
+
+    // provider call() to report how well the query result cache is doing
+    public static final String METHOD_QUERY_CACHE_STATS = "query_cache_stats";
+    public static final String EXTRA_CACHE_HITS = "cache_hits";
+    public static final String EXTRA_CACHE_MISSES = "cache_misses";
+    public static final String EXTRA_CACHE_EVICTIONS = "cache_evictions";
+    public static final String EXTRA_CACHE_INVALIDATIONS = "cache_invalidations";
+    public static final String EXTRA_CACHE_ENTRIES = "cache_entries";
+
+    // provider call() to report the most recent background maintenance run
+    public static final String METHOD_MAINTENANCE_STATS = "maintenance_stats";
+    public static final String EXTRA_MAINTENANCE_FINISHED_AT = "maintenance_finished_at";
+    public static final String EXTRA_MAINTENANCE_MILLIS = "maintenance_millis";
+    public static final String EXTRA_ANALYZED_INDEXES = "analyzed_indexes";
+    public static final String EXTRA_RECLAIMED_BYTES = "reclaimed_bytes";
+    public static final String EXTRA_FREE_PAGES = "free_pages";
+    public static final String EXTRA_PAGE_COUNT = "page_count";
+    public static final String EXTRA_INTEGRITY = "integrity";
+
+    // books with at least one, but no more than this many copies are low on stock
+    public static final int LOW_STOCK_THRESHOLD = 5;
+
+    // returned in place of a quantity when an adjustment could not be made
+    public static final int QUANTITY_UNAVAILABLE = -1;
+
+    // a batch of quantity changes that can safely be applied more than once
+    public static final long NO_BATCH_SEQUENCE = 0;
 
     // ensure this class is never instantiated
     private InventoryContract() {
@@ -33,6 +135,12 @@ public class InventoryContract {
         // URI to access expanded book data
         public static final Uri CONTENT_DETAIL_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_BOOKS_DETAIL);
 
+        // URI to search books by title and supplier name
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_BOOKS_SEARCH);
+
+        // URI to insert books, or update them if a book with the same ISBN exists
+        public static final Uri CONTENT_UPSERT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_BOOKS_UPSERT);
+
         //The MIME type of the {@link #CONTENT_URI} for a list of books.
         public static final String CONTENT_LIST_TYPE =
                 ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_BOOKS;
@@ -48,13 +156,19 @@ public class InventoryContract {
         public final static String COLUMN_BOOK_PRICE = "price";
         public final static String COLUMN_BOOK_QUANTITY = "quantity";
         public final static String COLUMN_BOOK_IMAGE = "image";
+        public final static String COLUMN_BOOK_ISBN = "isbn";
+
+        // incremented by the provider on every write
+        public final static String COLUMN_BOOK_VERSION = "version";
         public final static String[] COLUMNS_ALL = {
                 BookEntry._ID,
                 BookEntry.COLUMN_BOOK_SUPPLIER_ID,
                 BookEntry.COLUMN_BOOK_TITLE,
                 BookEntry.COLUMN_BOOK_PRICE,
                 BookEntry.COLUMN_BOOK_QUANTITY,
-                BookEntry.COLUMN_BOOK_IMAGE
+                BookEntry.COLUMN_BOOK_IMAGE,
+                BookEntry.COLUMN_BOOK_ISBN,
+                BookEntry.COLUMN_BOOK_VERSION
         };
 
         // Return a URI for a given id
@@ -66,6 +180,63 @@ public class InventoryContract {
         public static Uri getBookDetailUri(long id) {
             return ContentUris.withAppendedId(CONTENT_DETAIL_URI, id);
         }
+
+        // Return a URI for a page of books sorted by the given key, after the given row.
+        // afterKeys holds the values of getPageKeyColumns(sort) for that row, and is
+        // null for the first page
+        public static Uri getBookPageUri(String sort, String[] afterKeys, long afterId, int limit) {
+            return getBookPageUri(CONTENT_URI, sort, afterKeys, afterId, limit);
+        }
+
+        // Return a URI for a page of the books at a list URI, such as the books of one supplier
+        public static Uri getBookPageUri(Uri listUri, String sort, String[] afterKeys, long afterId,
+                                         int limit) {
+            Uri.Builder builder = listUri.buildUpon()
+                    .appendQueryParameter(PARAM_SORT, sort)
+                    .appendQueryParameter(PARAM_LIMIT, String.valueOf(limit));
+            if (afterKeys != null) {
+                for (String afterKey : afterKeys) {
+                    builder.appendQueryParameter(PARAM_AFTER_KEY, afterKey);
+                }
+                builder.appendQueryParameter(PARAM_AFTER_ID, String.valueOf(afterId));
+            }
+            return builder.build();
+        }
+
+        // Return a URI for a page of books matching a search. each word of the query matches
+        // the start of a word in the title or supplier name. books whose title starts with
+        // the query come first, then books with every word in the title, then the rest
+        public static Uri getBookSearchUri(String query, int offset, int limit) {
+            return getBookSearchUri(query, MODE_PREFIX, offset, limit);
+        }
+
+        // Return a URI for a page of books matching a search in the given PARAM_MODE
+        public static Uri getBookSearchUri(String query, String mode, int offset, int limit) {
+            return CONTENT_SEARCH_URI.buildUpon()
+                    .appendQueryParameter(PARAM_QUERY, query)
+                    .appendQueryParameter(PARAM_MODE, mode)
+                    .appendQueryParameter(PARAM_OFFSET, String.valueOf(offset))
+                    .appendQueryParameter(PARAM_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        // Return the columns that make up a sort key, in order. a page of books sorted
+        // by that key can return these columns
+        public static String[] getPageKeyColumns(String sort) {
+            switch (sort) {
+                case SORT_TITLE:
+                    return new String[]{COLUMN_BOOK_TITLE};
+                case SORT_PRICE:
+                    return new String[]{COLUMN_BOOK_PRICE};
+                case SORT_QUANTITY:
+                    return new String[]{COLUMN_BOOK_QUANTITY, COLUMN_BOOK_TITLE};
+                case SORT_SUPPLIER:
+                    return new String[]{SupplierEntry.COLUMN_SUPPLIER_NAME,
+                            COLUMN_BOOK_SUPPLIER_ID, COLUMN_BOOK_TITLE};
+                default:
+                    throw new IllegalArgumentException("Unknown sort " + sort);
+            }
+        }
     }
 
     /**
@@ -75,6 +246,9 @@ public class InventoryContract {
         // URI to access supplier data
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
 
+        // URI to insert suppliers, or update them if a supplier with the same email exists
+        public static final Uri CONTENT_UPSERT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS_UPSERT);
+
         //The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
         public static final String CONTENT_LIST_TYPE =
                 ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
@@ -89,16 +263,41 @@ public class InventoryContract {
         public final static String COLUMN_SUPPLIER_NAME = "name";
         public final static String COLUMN_SUPPLIER_EMAIL = "email";
         public final static String COLUMN_SUPPLIER_PHONE_NUM = "phone_num";
+
+        // lower case, trimmed email used to identify a supplier. set by the provider
+        public final static String COLUMN_SUPPLIER_EMAIL_KEY = "email_key";
+
+        // incremented by the provider on every write
+        public final static String COLUMN_SUPPLIER_VERSION = "version";
         public final static String[] COLUMNS_ALL = {
                 SupplierEntry._ID,
                 SupplierEntry.COLUMN_SUPPLIER_NAME,
                 SupplierEntry.COLUMN_SUPPLIER_EMAIL,
-                SupplierEntry.COLUMN_SUPPLIER_PHONE_NUM
+                SupplierEntry.COLUMN_SUPPLIER_PHONE_NUM,
+                SupplierEntry.COLUMN_SUPPLIER_VERSION
         };
 
+        // totals over the supplier's books, returned by the stock URI along with the
+        // supplier columns. the stock value is the price of every copy, in cents
+        public final static String COLUMN_SUPPLIER_BOOK_COUNT = "book_count";
+        public final static String COLUMN_SUPPLIER_COPY_COUNT = "copy_count";
+        public final static String COLUMN_SUPPLIER_OUT_OF_STOCK_COUNT = "out_of_stock_count";
+        public final static String COLUMN_SUPPLIER_STOCK_VALUE = "stock_value";
+
         // Return a URI for a given id
         public static Uri getSupplierUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        // Return a URI for the books of a supplier, in title order. the paging and filter
+        // parameters of the book list URI can be used as well
+        public static Uri getSupplierBooksUri(long id) {
+            return Uri.withAppendedPath(getSupplierUri(id), PATH_SUPPLIER_BOOKS);
+        }
+
+        // Return a URI for a supplier with the totals of its books, in a single row
+        public static Uri getSupplierStockUri(long id) {
+            return Uri.withAppendedPath(getSupplierUri(id), PATH_SUPPLIER_STOCK);
+        }
     }
 }
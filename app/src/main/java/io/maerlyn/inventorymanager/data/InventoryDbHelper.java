@@ -3,14 +3,10 @@ package io.maerlyn.inventorymanager.data;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.util.Log;
-
-import java.util.List;
 
+import io.maerlyn.inventorymanager.R;
 import io.maerlyn.inventorymanager.data.InventoryContract.BookEntry;
 import io.maerlyn.inventorymanager.data.InventoryContract.SupplierEntry;
-import io.maerlyn.inventorymanager.model.Book;
-import io.maerlyn.inventorymanager.model.Supplier;
 
 /**
  * Helper class for working with the application database
@@ -26,7 +22,11 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
 
     // common SQL strings
     private static final String CREATE_TABLE = "CREATE TABLE";
-    private static final String DROP_TABLE_IF_EXISTS = "DROP TABLE IF EXISTS";
+    private static final String CREATE_UNIQUE_INDEX = "CREATE UNIQUE INDEX";
+    private static final String CREATE_INDEX = "CREATE INDEX";
+    private static final String COLLATE_LOCALIZED = "COLLATE LOCALIZED";
+    private static final String DROP_INDEX_IF_EXISTS = "DROP INDEX IF EXISTS";
+    private static final String ON = "ON";
     private static final String TEXT = "TEXT";
     private static final String INTEGER = "INTEGER";
     private static final String BLOB = "BLOB";
@@ -44,14 +44,77 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
     private static final String CONT = "," + SPACE;
 
 
-    // DB version. this must be incremented if the schema changes
-    private static final int DATABASE_VERSION = 5;
+    // DB version. this must be incremented if the schema changes, and a migration added
+    static final int DATABASE_VERSION = 14;
+
+    // every schema change since version 5, the oldest that can be upgraded.
+    // version 8 only added an index that version 9 replaces
+    private static final Migration[] MIGRATIONS = {
+            new Migration(6, "natural keys", InventoryDbHelper::upgradeToNaturalKeys),
+            new Migration(7, "row versions", InventoryDbHelper::upgradeToRowVersions),
+            new Migration(9, "sort and filter indexes", InventoryDbHelper::upgradeToSortIndexes),
+            new Migration(10, "full text search", InventoryDbHelper::createSearchTable),
+            new Migration(11, "title log", InventoryDbHelper::createTitleLog),
+            new Migration(12, "maintenance log", InventoryDbHelper::createMaintenanceLog),
+            new Migration(13, "quantity batches", InventoryDbHelper::createQuantityBatchTable),
+            new Migration(14, "drop title log", InventoryDbHelper::dropTitleLog)
+    };
+
+    // index names
+    private static final String INDEX_BOOK_ISBN = "book_isbn_idx";
+    private static final String INDEX_SUPPLIER_EMAIL_KEY = "supplier_email_key_idx";
+    private static final String INDEX_BOOK_TITLE = "book_title_idx";
+    private static final String INDEX_BOOK_PRICE = "book_price_idx";
+    private static final String INDEX_BOOK_QUANTITY = "book_quantity_idx";
+    private static final String INDEX_BOOK_SUPPLIER_TITLE = "book_supplier_title_idx";
+    private static final String INDEX_BOOK_SUPPLIER_PRICE = "book_supplier_price_idx";
+    private static final String INDEX_BOOK_SUPPLIER_QUANTITY = "book_supplier_quantity_idx";
+    private static final String INDEX_SUPPLIER_NAME = "supplier_name_idx";
+
+    // full text search table over book titles and supplier names. its docid is the book _id
+    static final String SEARCH_TABLE = "book_search";
+    static final String SEARCH_COLUMN_TITLE = "title";
+    static final String SEARCH_COLUMN_SUPPLIER = "supplier";
+
+    // ids of books whose title was written, from version 11 until version 14 dropped it
+    private static final String TITLE_LOG_TABLE = "book_title_log";
+    private static final String TITLE_LOG_COLUMN_SEQ = "seq";
+    private static final String TITLE_LOG_COLUMN_BOOK_ID = "book_id";
+    private static final String[] TITLE_LOG_TRIGGERS =
+            {"book_title_log_insert", "book_title_log_update", "book_title_log_delete"};
+
+    // one row per background maintenance run, newest last
+    static final String MAINTENANCE_LOG_TABLE = "maintenance_log";
+    static final String MAINTENANCE_LOG_COLUMN_SEQ = "seq";
+    static final String MAINTENANCE_LOG_COLUMN_FINISHED_AT = "finished_at";
+    static final String MAINTENANCE_LOG_COLUMN_MILLIS = "duration_millis";
+    static final String MAINTENANCE_LOG_COLUMN_ANALYZED = "analyzed_indexes";
+    static final String MAINTENANCE_LOG_COLUMN_RECLAIMED_BYTES = "reclaimed_bytes";
+    static final String MAINTENANCE_LOG_COLUMN_FREE_PAGES = "free_pages";
+    static final String MAINTENANCE_LOG_COLUMN_PAGE_COUNT = "page_count";
+    static final String MAINTENANCE_LOG_COLUMN_INTEGRITY = "integrity";
+
+    // sequence of the last saved batch of quantity changes
+    static final String QUANTITY_BATCH_TABLE = "quantity_batch";
+    static final String QUANTITY_BATCH_COLUMN_SEQUENCE = "sequence";
 
     // instance of this class for application use
     private static InventoryDbHelper instance;
 
     Context context;
 
+    // compiled statements for the current database connection
+    private final StatementCache statementCache = new StatementCache();
+
+    // page size of the file, and page cache of the connection that writes
+    private final StorageProfile storageProfile;
+
+    // copies the write-ahead log back into the database in the background
+    private final WalCheckpointer checkpointer;
+
+    // analyzes, vacuums and checks the database while the app is idle
+    private final DatabaseMaintainer maintainer;
+
     /**
      * This class should not be directly instantiated.
      * Get an instance using the getInstance() method.
@@ -61,6 +124,18 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
     private InventoryDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         this.context = context;
+
+        storageProfile = StorageProfile.fromResources(context.getResources());
+        checkpointer = new WalCheckpointer(this,
+                context.getResources().getInteger(R.integer.wal_checkpoint_kilobytes) * 1024L,
+                context.getResources().getInteger(R.integer.wal_idle_checkpoint_millis));
+        maintainer = new DatabaseMaintainer(this, checkpointer,
+                context.getResources().getInteger(R.integer.maintenance_idle_millis),
+                context.getResources().getInteger(R.integer.maintenance_step_millis),
+                context.getResources().getInteger(R.integer.maintenance_free_page_percent),
+                context.getResources().getInteger(R.integer.maintenance_integrity_check_hours) *
+                        60 * 60 * 1000L,
+                context.getResources().getInteger(R.integer.maintenance_convert_max_kilobytes) * 1024L);
     }
 
     /**
@@ -90,6 +165,63 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
 
         // enable foreign key support
         db.setForeignKeyConstraintsEnabled(true);
+
+        // the page size has to be set before the file is first put in WAL mode
+        storageProfile.apply(db);
+
+        // so deleted rows can be handed back to the file system a few pages at a time.
+        // only a new file takes this. older files are converted once by the maintainer
+        DatabaseMaintainer.configure(db);
+
+        // readers never commit, so only this connection needs the checkpoint threshold
+        checkpointer.configure(db);
+
+        // readers get their own connections and a consistent snapshot, so
+        // loaders are not blocked while a long import is being written
+        db.enableWriteAheadLogging();
+    }
+
+    /**
+     * Called when the database has been opened
+     *
+     * @param db application database
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        // statements compiled against a previous connection are no longer valid
+        statementCache.clear();
+
+        // statistics may be missing after an upgrade, and integrity is checked daily
+        maintainer.onOpen();
+    }
+
+    /**
+     * Return the compiled statement cache for the current database connection
+     *
+     * @return {@link StatementCache}
+     */
+    StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * Return the checkpointer, to be told about every write
+     *
+     * @return {@link WalCheckpointer}
+     */
+    WalCheckpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    /**
+     * Return the maintainer, to be told about every write
+     *
+     * @return {@link DatabaseMaintainer}
+     */
+    DatabaseMaintainer getMaintainer() {
+        return maintainer;
     }
 
     /**
@@ -98,8 +230,22 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
+        create(new SQLiteMigrationDatabase(db));
+    }
+
+    /**
+     * Create every table, index and trigger of the current schema
+     *
+     * @param db empty database
+     */
+    static void create(MigrationDatabase db) {
         createSupplierTable(db);
         createBookTable(db);
+        createNaturalKeyIndexes(db);
+        createListIndexes(db);
+        createSearchTable(db);
+        createMaintenanceLog(db);
+        createQuantityBatchTable(db);
     }
 
     /**
@@ -108,14 +254,16 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
      * @param db The SQLiteDatabase the table is being inserted into.
      */
 
-    private void createSupplierTable(SQLiteDatabase db) {
+    private static void createSupplierTable(MigrationDatabase db) {
         /*
         CREATE TABLE supplier
         (
             _id INTEGER PRIMARY KEY AUTOINCREMENT,
             name TEXT NOT NULL,
             email TEXT NOT NULL,
-            phone_num TEXT
+            phone_num TEXT,
+            email_key TEXT,
+            version INTEGER NOT NULL DEFAULT 0
         );
          */
         db.execSQL(CREATE_TABLE + SPACE + SupplierEntry.TABLE_NAME +
@@ -123,7 +271,9 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
                 SupplierEntry._ID + SPACE + INTEGER_PRIMARY_KEY_AUTOINCREMENT + CONT +
                 SupplierEntry.COLUMN_SUPPLIER_NAME + SPACE + TEXT_NOT_NULL + CONT +
                 SupplierEntry.COLUMN_SUPPLIER_EMAIL + SPACE + TEXT_NOT_NULL + CONT +
-                SupplierEntry.COLUMN_SUPPLIER_PHONE_NUM + SPACE + TEXT +
+                SupplierEntry.COLUMN_SUPPLIER_PHONE_NUM + SPACE + TEXT + CONT +
+                SupplierEntry.COLUMN_SUPPLIER_EMAIL_KEY + SPACE + TEXT + CONT +
+                SupplierEntry.COLUMN_SUPPLIER_VERSION + SPACE + INTEGER_NOT_NULL + SPACE + DEFAULT + SPACE + "0" +
                 BR + STATEMENT_END);
     }
 
@@ -133,7 +283,7 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
      * @param db The SQLiteDatabase the table is being inserted into.
      */
 
-    private void createBookTable(SQLiteDatabase db) {
+    private static void createBookTable(MigrationDatabase db) {
         final int zero = 0;
 
         /*
@@ -145,6 +295,8 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
             price INTEGER NOT NULL DEFAULT 0,
             quantity INTEGER NOT NULL DEFAULT 0,
             image BLOB,
+            isbn TEXT,
+            version INTEGER NOT NULL DEFAULT 0,
             FOREIGN KEY (supplier_id) REFERENCES supplier (_id)
         );
          */
@@ -156,17 +308,261 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
                 BookEntry.COLUMN_BOOK_PRICE + SPACE + INTEGER_NOT_NULL + SPACE + DEFAULT + SPACE + zero + CONT +
                 BookEntry.COLUMN_BOOK_QUANTITY + SPACE + INTEGER_NOT_NULL + SPACE + DEFAULT + SPACE + zero + CONT +
                 BookEntry.COLUMN_BOOK_IMAGE + SPACE + BLOB + CONT +
+                BookEntry.COLUMN_BOOK_ISBN + SPACE + TEXT + CONT +
+                BookEntry.COLUMN_BOOK_VERSION + SPACE + INTEGER_NOT_NULL + SPACE + DEFAULT + SPACE + zero + CONT +
                 FOREIGN_KEY + SPACE + BL + BookEntry.COLUMN_BOOK_SUPPLIER_ID + BR + SPACE +
                 REFERENCES + SPACE + SupplierEntry.TABLE_NAME + SPACE + BL + SupplierEntry._ID + BR +
                 BR + STATEMENT_END);
     }
 
+    /**
+     * Creates the unique indexes used to find existing books and suppliers when upserting.
+     * NULL keys never conflict, so books without an ISBN are still allowed.
+     *
+     * @param db The SQLiteDatabase the indexes are being added to.
+     */
+    private static void createNaturalKeyIndexes(MigrationDatabase db) {
+        // CREATE UNIQUE INDEX book_isbn_idx ON book (isbn);
+        db.execSQL(CREATE_UNIQUE_INDEX + SPACE + INDEX_BOOK_ISBN + SPACE + ON + SPACE +
+                BookEntry.TABLE_NAME + SPACE + BL + BookEntry.COLUMN_BOOK_ISBN + BR + STATEMENT_END);
+
+        // CREATE UNIQUE INDEX supplier_email_key_idx ON supplier (email_key);
+        db.execSQL(CREATE_UNIQUE_INDEX + SPACE + INDEX_SUPPLIER_EMAIL_KEY + SPACE + ON + SPACE +
+                SupplierEntry.TABLE_NAME + SPACE + BL + SupplierEntry.COLUMN_SUPPLIER_EMAIL_KEY + BR +
+                STATEMENT_END);
+    }
+
+    /**
+     * Creates the indexes used to page through the book list in order.
+     * Every index ends with the rowid, so ties are broken by _id without a sort.
+     *
+     * @param db The SQLiteDatabase the indexes are being added to.
+     */
+    private static void createListIndexes(MigrationDatabase db) {
+        // CREATE INDEX book_title_idx ON book (title COLLATE LOCALIZED);
+        createIndex(db, INDEX_BOOK_TITLE, BookEntry.TABLE_NAME,
+                BookEntry.COLUMN_BOOK_TITLE + SPACE + COLLATE_LOCALIZED);
+
+        // CREATE INDEX book_price_idx ON book (price);
+        createIndex(db, INDEX_BOOK_PRICE, BookEntry.TABLE_NAME,
+                BookEntry.COLUMN_BOOK_PRICE);
+
+        // CREATE INDEX book_quantity_idx ON book (quantity, title COLLATE LOCALIZED);
+        // also finds out of stock books in title order
+        createIndex(db, INDEX_BOOK_QUANTITY, BookEntry.TABLE_NAME,
+                BookEntry.COLUMN_BOOK_QUANTITY + CONT +
+                        BookEntry.COLUMN_BOOK_TITLE + SPACE + COLLATE_LOCALIZED);
+
+        // the books of one supplier, in each order the list can be sorted in.
+        // book_supplier_title_idx also reads books in supplier order. as they start
+        // with supplier_id, they also serve the foreign key check when a supplier is
+        // deleted, so supplier_id needs no index of its own
+        createIndex(db, INDEX_BOOK_SUPPLIER_TITLE, BookEntry.TABLE_NAME,
+                BookEntry.COLUMN_BOOK_SUPPLIER_ID + CONT +
+                        BookEntry.COLUMN_BOOK_TITLE + SPACE + COLLATE_LOCALIZED);
+        createIndex(db, INDEX_BOOK_SUPPLIER_PRICE, BookEntry.TABLE_NAME,
+                BookEntry.COLUMN_BOOK_SUPPLIER_ID + CONT + BookEntry.COLUMN_BOOK_PRICE);
+        createIndex(db, INDEX_BOOK_SUPPLIER_QUANTITY, BookEntry.TABLE_NAME,
+                BookEntry.COLUMN_BOOK_SUPPLIER_ID + CONT + BookEntry.COLUMN_BOOK_QUANTITY +
+                        CONT + BookEntry.COLUMN_BOOK_TITLE + SPACE + COLLATE_LOCALIZED);
+
+        // CREATE INDEX supplier_name_idx ON supplier (name COLLATE LOCALIZED);
+        createIndex(db, INDEX_SUPPLIER_NAME, SupplierEntry.TABLE_NAME,
+                SupplierEntry.COLUMN_SUPPLIER_NAME + SPACE + COLLATE_LOCALIZED);
+    }
+
+    // CREATE INDEX name ON table (columns);
+    private static void createIndex(MigrationDatabase db, String name, String table, String columns) {
+        db.execSQL(CREATE_INDEX + SPACE + name + SPACE + ON + SPACE +
+                table + SPACE + BL + columns + BR + STATEMENT_END);
+    }
+
+    /**
+     * Version 9 sorts and filters the book list in the database. Titles were indexed
+     * ignoring case only, they are now indexed in the order of the device's language.
+     *
+     * @param db application database
+     */
+    private static void upgradeToSortIndexes(MigrationDatabase db) {
+        db.execSQL(DROP_INDEX_IF_EXISTS + SPACE + INDEX_BOOK_TITLE + STATEMENT_END);
+        createListIndexes(db);
+    }
+
+    /**
+     * Creates the full text search table and the triggers that keep it in step with
+     * the book and supplier tables, then indexes any books that already exist.
+     * <p>
+     * FTS4 is used as it is available on every supported version of Android. Prefixes
+     * of two and three characters are indexed as well, so short prefix searches don't
+     * have to read every term that starts with them.
+     *
+     * @param db application database
+     */
+    private static void createSearchTable(MigrationDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + SEARCH_TABLE + " USING fts4(" +
+                SEARCH_COLUMN_TITLE + CONT + SEARCH_COLUMN_SUPPLIER + CONT +
+                "prefix=\"2,3\")" + STATEMENT_END);
+
+        // name of the supplier of the book being written
+        String supplierName = "(SELECT " + SupplierEntry.COLUMN_SUPPLIER_NAME +
+                " FROM " + SupplierEntry.TABLE_NAME +
+                " WHERE " + SupplierEntry._ID + " = new." + BookEntry.COLUMN_BOOK_SUPPLIER_ID + ")";
+
+        db.execSQL("CREATE TRIGGER book_search_insert AFTER INSERT ON " + BookEntry.TABLE_NAME +
+                " BEGIN INSERT INTO " + SEARCH_TABLE + " (docid, " + SEARCH_COLUMN_TITLE + CONT +
+                SEARCH_COLUMN_SUPPLIER + ") VALUES (new." + BookEntry._ID + CONT +
+                "new." + BookEntry.COLUMN_BOOK_TITLE + CONT + supplierName + "); END" + STATEMENT_END);
+
+        // quantity and price changes don't touch the search table
+        db.execSQL("CREATE TRIGGER book_search_update AFTER UPDATE OF " +
+                BookEntry.COLUMN_BOOK_TITLE + CONT + BookEntry.COLUMN_BOOK_SUPPLIER_ID +
+                " ON " + BookEntry.TABLE_NAME +
+                " BEGIN UPDATE " + SEARCH_TABLE + " SET " +
+                SEARCH_COLUMN_TITLE + " = new." + BookEntry.COLUMN_BOOK_TITLE + CONT +
+                SEARCH_COLUMN_SUPPLIER + " = " + supplierName +
+                " WHERE docid = old." + BookEntry._ID + "; END" + STATEMENT_END);
+
+        db.execSQL("CREATE TRIGGER book_search_delete AFTER DELETE ON " + BookEntry.TABLE_NAME +
+                " BEGIN DELETE FROM " + SEARCH_TABLE +
+                " WHERE docid = old." + BookEntry._ID + "; END" + STATEMENT_END);
+
+        // renaming a supplier renames it for each of its books, found by book_supplier_title_idx
+        db.execSQL("CREATE TRIGGER supplier_search_update AFTER UPDATE OF " +
+                SupplierEntry.COLUMN_SUPPLIER_NAME + " ON " + SupplierEntry.TABLE_NAME +
+                " BEGIN UPDATE " + SEARCH_TABLE + " SET " +
+                SEARCH_COLUMN_SUPPLIER + " = new." + SupplierEntry.COLUMN_SUPPLIER_NAME +
+                " WHERE docid IN (SELECT " + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME +
+                " WHERE " + BookEntry.COLUMN_BOOK_SUPPLIER_ID + " = new." + SupplierEntry._ID +
+                "); END" + STATEMENT_END);
+
+        // index the books that are already there
+        db.execSQL("INSERT INTO " + SEARCH_TABLE + " (docid, " + SEARCH_COLUMN_TITLE + CONT +
+                SEARCH_COLUMN_SUPPLIER + ") SELECT " +
+                BookEntry.TABLE_NAME + "." + BookEntry._ID + CONT +
+                BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_TITLE + CONT +
+                SupplierEntry.TABLE_NAME + "." + SupplierEntry.COLUMN_SUPPLIER_NAME +
+                " FROM " + BookEntry.TABLE_NAME + " LEFT JOIN " + SupplierEntry.TABLE_NAME +
+                " ON " + BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_SUPPLIER_ID + " = " +
+                SupplierEntry.TABLE_NAME + "." + SupplierEntry._ID + STATEMENT_END);
+    }
+
+    /**
+     * Version 11 added a log of title changes for the in memory title index, and the
+     * triggers that fill it. Version 14 drops it again.
+     *
+     * @param db application database
+     */
+    private static void createTitleLog(MigrationDatabase db) {
+        // CREATE TABLE book_title_log (seq INTEGER PRIMARY KEY AUTOINCREMENT, book_id INTEGER NOT NULL);
+        db.execSQL(CREATE_TABLE + SPACE + TITLE_LOG_TABLE + SPACE + BL +
+                TITLE_LOG_COLUMN_SEQ + SPACE + INTEGER_PRIMARY_KEY_AUTOINCREMENT + CONT +
+                TITLE_LOG_COLUMN_BOOK_ID + SPACE + INTEGER_NOT_NULL + BR + STATEMENT_END);
+
+        String logInsert = " BEGIN INSERT INTO " + TITLE_LOG_TABLE + " (" +
+                TITLE_LOG_COLUMN_BOOK_ID + ") VALUES (";
+
+        db.execSQL("CREATE TRIGGER " + TITLE_LOG_TRIGGERS[0] + " AFTER INSERT ON " + BookEntry.TABLE_NAME +
+                logInsert + "new." + BookEntry._ID + "); END" + STATEMENT_END);
+        db.execSQL("CREATE TRIGGER " + TITLE_LOG_TRIGGERS[1] + " AFTER UPDATE OF " +
+                BookEntry.COLUMN_BOOK_TITLE + " ON " + BookEntry.TABLE_NAME +
+                logInsert + "new." + BookEntry._ID + "); END" + STATEMENT_END);
+        db.execSQL("CREATE TRIGGER " + TITLE_LOG_TRIGGERS[2] + " AFTER DELETE ON " + BookEntry.TABLE_NAME +
+                logInsert + "old." + BookEntry._ID + "); END" + STATEMENT_END);
+    }
+
+    /**
+     * Version 14 drops the title log. It grew by a row on every book write and was
+     * only pruned by searches, so the provider now tells the title index about its
+     * own writes instead.
+     *
+     * @param db application database
+     */
+    private static void dropTitleLog(MigrationDatabase db) {
+        for (String trigger : TITLE_LOG_TRIGGERS) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + trigger + STATEMENT_END);
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + TITLE_LOG_TABLE + STATEMENT_END);
+    }
+
+    /**
+     * Version 12 adds the maintenance log, which records what each background
+     * maintenance run did and how long it took.
+     *
+     * @param db application database
+     */
+    private static void createMaintenanceLog(MigrationDatabase db) {
+        // CREATE TABLE maintenance_log (seq INTEGER PRIMARY KEY AUTOINCREMENT, finished_at INTEGER NOT NULL,
+        //     duration_millis INTEGER NOT NULL, analyzed_indexes INTEGER NOT NULL, reclaimed_bytes INTEGER NOT NULL,
+        //     free_pages INTEGER NOT NULL, page_count INTEGER NOT NULL, integrity TEXT);
+        db.execSQL(CREATE_TABLE + SPACE + MAINTENANCE_LOG_TABLE + SPACE + BL +
+                MAINTENANCE_LOG_COLUMN_SEQ + SPACE + INTEGER_PRIMARY_KEY_AUTOINCREMENT + CONT +
+                MAINTENANCE_LOG_COLUMN_FINISHED_AT + SPACE + INTEGER_NOT_NULL + CONT +
+                MAINTENANCE_LOG_COLUMN_MILLIS + SPACE + INTEGER_NOT_NULL + CONT +
+                MAINTENANCE_LOG_COLUMN_ANALYZED + SPACE + INTEGER_NOT_NULL + CONT +
+                MAINTENANCE_LOG_COLUMN_RECLAIMED_BYTES + SPACE + INTEGER_NOT_NULL + CONT +
+                MAINTENANCE_LOG_COLUMN_FREE_PAGES + SPACE + INTEGER_NOT_NULL + CONT +
+                MAINTENANCE_LOG_COLUMN_PAGE_COUNT + SPACE + INTEGER_NOT_NULL + CONT +
+                MAINTENANCE_LOG_COLUMN_INTEGRITY + SPACE + TEXT + BR + STATEMENT_END);
+    }
+
+    /**
+     * Version 13 records the last saved batch of quantity changes, so a batch
+     * replayed from its journal after the process died is not applied twice.
+     *
+     * @param db application database
+     */
+    private static void createQuantityBatchTable(MigrationDatabase db) {
+        // CREATE TABLE quantity_batch (sequence INTEGER PRIMARY KEY);
+        db.execSQL(CREATE_TABLE + SPACE + QUANTITY_BATCH_TABLE + SPACE + BL +
+                QUANTITY_BATCH_COLUMN_SEQUENCE + SPACE + INTEGER + " PRIMARY KEY" + BR + STATEMENT_END);
+    }
+
+    /**
+     * Version 6 adds natural keys: an ISBN for books and a normalised email for suppliers.
+     * <p>
+     * Existing suppliers that share an email keep a key only on the oldest row,
+     * so the unique index can be created without losing any data.
+     *
+     * @param db application database
+     */
+    private static void upgradeToNaturalKeys(MigrationDatabase db) {
+        Migration.addColumn(db, BookEntry.TABLE_NAME,
+                BookEntry.COLUMN_BOOK_ISBN + SPACE + TEXT);
+        Migration.addColumn(db, SupplierEntry.TABLE_NAME,
+                SupplierEntry.COLUMN_SUPPLIER_EMAIL_KEY + SPACE + TEXT);
+
+        db.execSQL("UPDATE " + SupplierEntry.TABLE_NAME +
+                " SET " + SupplierEntry.COLUMN_SUPPLIER_EMAIL_KEY + " = lower(trim(" +
+                SupplierEntry.COLUMN_SUPPLIER_EMAIL + "))" +
+                " WHERE " + SupplierEntry._ID + " IN (SELECT MIN(" + SupplierEntry._ID + ")" +
+                " FROM " + SupplierEntry.TABLE_NAME +
+                " GROUP BY lower(trim(" + SupplierEntry.COLUMN_SUPPLIER_EMAIL + ")))" +
+                STATEMENT_END);
+
+        createNaturalKeyIndexes(db);
+    }
+
+    /**
+     * Version 7 adds a row version to books and suppliers for optimistic concurrency
+     *
+     * @param db application database
+     */
+    private static void upgradeToRowVersions(MigrationDatabase db) {
+        Migration.addColumn(db, BookEntry.TABLE_NAME,
+                BookEntry.COLUMN_BOOK_VERSION + SPACE + INTEGER_NOT_NULL + SPACE + DEFAULT + " 0");
+        Migration.addColumn(db, SupplierEntry.TABLE_NAME,
+                SupplierEntry.COLUMN_SUPPLIER_VERSION + SPACE + INTEGER_NOT_NULL + SPACE + DEFAULT + " 0");
+    }
+
     /**
      * Called when schema changes need to be made.
      * <p>
      * This method will only be called if a database already
      * exists on disk with the same DATABASE_NAME,
      * but a different DATABASE_VERSION.
+     * <p>
+     * SQLiteOpenHelper already holds a transaction around this call, so the
+     * migrations nest inside it and the whole upgrade commits at once.
      *
      * @param db          application database
      * @param prevVersion version number of the previous db
@@ -174,32 +570,18 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int prevVersion, int newVersion) {
-        if (prevVersion != newVersion) {
-
-            // load all table data
-//            List<Supplier> suppliers = Inventory.getAllSuppliers(this.context);
-//            List<Book> books = Inventory.getAllBooks(this.context);
-
-            // drop current tables
-//            db.execSQL(DROP_TABLE_IF_EXISTS + SPACE + BookEntry.TABLE_NAME);
-//            db.execSQL(DROP_TABLE_IF_EXISTS + SPACE + SupplierEntry.TABLE_NAME);
-//
-//            // recreate database
-//            createSupplierTable(db);
-//            createBookTable(db);
-//
-//            // reinsert data
-//            try {
-//                for (Supplier supplier : suppliers) {
-//                    Inventory.insert(supplier, context);
-//                }
-//
-//                for (Book book : books) {
-//                    Inventory.insert(book, context);
-//                }
-//            } catch (Exception e) {
-//                Log.e(LOG_TAG, "Could not migrate data to new schema", e);
-//            }
-        }
+        upgrade(new SQLiteMigrationDatabase(db), prevVersion, newVersion);
+    }
+
+    /**
+     * Migrate the schema from one version to another, keeping every row
+     *
+     * @param db          database to migrate
+     * @param prevVersion version the database is at
+     * @param newVersion  version to migrate to
+     * @return time taken by each migration, in nanoseconds
+     */
+    static long[] upgrade(MigrationDatabase db, int prevVersion, int newVersion) {
+        return Migration.run(db, MIGRATIONS, prevVersion, newVersion);
     }
 }
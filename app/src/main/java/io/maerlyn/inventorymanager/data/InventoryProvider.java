@@ -1,33 +1,63 @@
 package io.maerlyn.inventorymanager.data;
 
+import android.app.SearchManager;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 import android.util.Log;
+import android.util.LongSparseArray;
 import android.util.Patterns;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import io.maerlyn.inventorymanager.R;
 import io.maerlyn.inventorymanager.data.InventoryContract.BookEntry;
 import io.maerlyn.inventorymanager.data.InventoryContract.SupplierEntry;
 
 /**
  * {@link ContentProvider} for book inventory manager.
+ * <p>
+ * Other apps and loaders reach it through a ContentResolver. Inside the app,
+ * {@link Inventory} calls it directly as an {@link InventoryRepository}.
  *
  * @author Maerlyn Broadbent
  */
-public class InventoryProvider extends ContentProvider {
+public class InventoryProvider extends ContentProvider implements InventoryRepository {
     public static final String LOG_TAG = InventoryProvider.class.getSimpleName();
 
     // ints representing each valid URI
     private static final int BOOKS = 100;
     private static final int BOOK_ID = 101;
     private static final int BOOK_DETAIL_ID = 102;
+    private static final int BOOKS_UPSERT = 103;
+    private static final int BOOKS_DETAIL = 104;
+    private static final int BOOKS_SEARCH = 105;
     private static final int SUPPLIERS = 200;
     private static final int SUPPLIER_ID = 201;
+    private static final int SUPPLIERS_UPSERT = 202;
+    private static final int SUPPLIER_BOOKS = 203;
+    private static final int SUPPLIER_STOCK = 204;
+    private static final int SEARCH_SUGGEST = 300;
 
     // used to match a given URI with the ints above
     private static final UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
@@ -45,15 +75,265 @@ public class InventoryProvider extends ContentProvider {
         // single book with supplier detail by ID
         uriMatcher.addURI(authority, InventoryContract.PATH_BOOKS_DETAIL + "/#", BOOK_DETAIL_ID);
 
+        // list of books with supplier detail
+        uriMatcher.addURI(authority, InventoryContract.PATH_BOOKS_DETAIL, BOOKS_DETAIL);
+
+        // insert or update books by ISBN
+        uriMatcher.addURI(authority, InventoryContract.PATH_BOOKS_UPSERT, BOOKS_UPSERT);
+
+        // search books by title and supplier name
+        uriMatcher.addURI(authority, InventoryContract.PATH_BOOKS_SEARCH, BOOKS_SEARCH);
+
+        // search suggestions, with the query either in the path or in the selection args
+        uriMatcher.addURI(authority, SearchManager.SUGGEST_URI_PATH_QUERY, SEARCH_SUGGEST);
+        uriMatcher.addURI(authority, SearchManager.SUGGEST_URI_PATH_QUERY + "/*", SEARCH_SUGGEST);
+
         // list of suppliers
         uriMatcher.addURI(authority, InventoryContract.PATH_SUPPLIERS, SUPPLIERS);
 
+        // insert or update suppliers by email
+        uriMatcher.addURI(authority, InventoryContract.PATH_SUPPLIERS_UPSERT, SUPPLIERS_UPSERT);
+
         // single supplier by ID
         uriMatcher.addURI(authority, InventoryContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+
+        // books of a single supplier, and the supplier with the totals of its books
+        uriMatcher.addURI(authority, InventoryContract.PATH_SUPPLIERS + "/#/" +
+                InventoryContract.PATH_SUPPLIER_BOOKS, SUPPLIER_BOOKS);
+        uriMatcher.addURI(authority, InventoryContract.PATH_SUPPLIERS + "/#/" +
+                InventoryContract.PATH_SUPPLIER_STOCK, SUPPLIER_STOCK);
     }
 
+    // book with supplier detail by id
+    private static final String SQL_BOOK_DETAIL_BY_ID =
+            "SELECT book._id, book.supplier_id, book.title, book.price, " +
+                    "book.quantity, book.image, book.isbn, book.version, supplier.name, supplier.email, supplier.phone_num " +
+                    "FROM book " +
+                    "INNER JOIN supplier " +
+                    "ON book.supplier_id = supplier._id " +
+                    "WHERE book._id = ?";
+
+    // supplier by id, with the totals of its books in a single grouped query. the books
+    // are found through an index that starts with supplier_id, so only they are read
+    private static final String SQL_SUPPLIER_STOCK_BY_ID =
+            "SELECT supplier._id, supplier.name, supplier.email, supplier.phone_num, supplier.version, " +
+                    "COUNT(book._id) AS book_count, " +
+                    "IFNULL(SUM(book.quantity), 0) AS copy_count, " +
+                    "COUNT(CASE WHEN book.quantity = 0 THEN 1 END) AS out_of_stock_count, " +
+                    "IFNULL(SUM(book.price * book.quantity), 0) AS stock_value " +
+                    "FROM supplier " +
+                    "LEFT JOIN book " +
+                    "ON book.supplier_id = supplier._id " +
+                    "WHERE supplier._id = ? " +
+                    "GROUP BY supplier._id";
+
+    // default order of a supplier's books, read in order from book_supplier_title_idx
+    private static final String SUPPLIER_BOOKS_ORDER =
+            "book.title COLLATE LOCALIZED, book._id";
+
+    // books joined with their supplier
+    private static final String TABLES_BOOK_DETAIL =
+            "book INNER JOIN supplier ON book.supplier_id = supplier._id";
+
+    // columns that can be requested from the book detail list, all returned by default
+    private static final Map<String, String> BOOK_DETAIL_PROJECTION = new HashMap<>();
+
+    static {
+        String[] bookColumns = {
+                BookEntry._ID,
+                BookEntry.COLUMN_BOOK_SUPPLIER_ID,
+                BookEntry.COLUMN_BOOK_TITLE,
+                BookEntry.COLUMN_BOOK_PRICE,
+                BookEntry.COLUMN_BOOK_QUANTITY,
+                BookEntry.COLUMN_BOOK_IMAGE,
+                BookEntry.COLUMN_BOOK_ISBN,
+                BookEntry.COLUMN_BOOK_VERSION};
+        String[] supplierColumns = {
+                SupplierEntry.COLUMN_SUPPLIER_NAME,
+                SupplierEntry.COLUMN_SUPPLIER_EMAIL,
+                SupplierEntry.COLUMN_SUPPLIER_PHONE_NUM};
+
+        for (String column : bookColumns) {
+            BOOK_DETAIL_PROJECTION.put(column,
+                    BookEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+        for (String column : supplierColumns) {
+            BOOK_DETAIL_PROJECTION.put(column,
+                    SupplierEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+    }
+
+    // books matching a search, with their supplier
+    private static final String TABLES_BOOK_SEARCH =
+            InventoryDbHelper.SEARCH_TABLE + " INNER JOIN book ON book._id = " +
+                    InventoryDbHelper.SEARCH_TABLE + ".docid " +
+                    "LEFT JOIN supplier ON book.supplier_id = supplier._id";
+
+    // matches the search query against the search table
+    private static final String SEARCH_MATCH = InventoryDbHelper.SEARCH_TABLE + " MATCH ?";
+
+    // ranks a match: 0 if the title starts with the query, 1 if every word is in the
+    // title, 2 if some words only matched the supplier name. the title only match is
+    // not correlated, so it is run once per query
+    private static final String SEARCH_RANK =
+            "CASE WHEN book.title LIKE ? ESCAPE '\\' THEN 0 " +
+                    "WHEN book._id IN (SELECT docid FROM " + InventoryDbHelper.SEARCH_TABLE +
+                    " WHERE " + SEARCH_MATCH + ") THEN 1 ELSE 2 END";
+
+    // columns that can be requested from a book search, all returned by default
+    private static final Map<String, String> BOOK_SEARCH_PROJECTION = new HashMap<>();
+
+    // columns of a search suggestion. the intent data id is appended to the books URI
+    private static final Map<String, String> SEARCH_SUGGEST_PROJECTION = new HashMap<>();
+    private static final String[] SEARCH_SUGGEST_COLUMNS = {
+            BaseColumns._ID,
+            SearchManager.SUGGEST_COLUMN_TEXT_1,
+            SearchManager.SUGGEST_COLUMN_TEXT_2,
+            SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID};
+
+    // suggestions shown when the search view doesn't ask for a number
+    private static final int DEFAULT_SUGGESTION_LIMIT = 10;
+
+    // books with supplier, for fuzzy search matches
+    private static final String TABLES_BOOK_WITH_SUPPLIER =
+            "book LEFT JOIN supplier ON book.supplier_id = supplier._id";
+
+    static {
+        String[] bookColumns = {
+                BookEntry._ID,
+                BookEntry.COLUMN_BOOK_SUPPLIER_ID,
+                BookEntry.COLUMN_BOOK_TITLE,
+                BookEntry.COLUMN_BOOK_PRICE,
+                BookEntry.COLUMN_BOOK_QUANTITY};
+        for (String column : bookColumns) {
+            BOOK_SEARCH_PROJECTION.put(column,
+                    BookEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+        BOOK_SEARCH_PROJECTION.put(SupplierEntry.COLUMN_SUPPLIER_NAME,
+                SupplierEntry.TABLE_NAME + "." + SupplierEntry.COLUMN_SUPPLIER_NAME +
+                        " AS " + SupplierEntry.COLUMN_SUPPLIER_NAME);
+
+        SEARCH_SUGGEST_PROJECTION.put(BaseColumns._ID,
+                "book._id AS " + BaseColumns._ID);
+        SEARCH_SUGGEST_PROJECTION.put(SearchManager.SUGGEST_COLUMN_TEXT_1,
+                "book.title AS " + SearchManager.SUGGEST_COLUMN_TEXT_1);
+        SEARCH_SUGGEST_PROJECTION.put(SearchManager.SUGGEST_COLUMN_TEXT_2,
+                "supplier.name AS " + SearchManager.SUGGEST_COLUMN_TEXT_2);
+        SEARCH_SUGGEST_PROJECTION.put(SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID,
+                "book._id AS " + SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID);
+    }
+
+    // titles and supplier names sort in the order of the device's language, ignoring case.
+    // Android re-indexes LOCALIZED indexes itself when the language changes
+    private static final String COLLATE_LOCALIZED = " COLLATE LOCALIZED";
+
+    // each sort that can be used to page through books. all but the supplier sort are
+    // served in order by an index created in InventoryDbHelper
+    private static final Map<String, PageSort> PAGE_SORTS = new HashMap<>();
+
+    static {
+        String title = BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_TITLE + COLLATE_LOCALIZED;
+        String price = BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_PRICE;
+        String quantity = BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_QUANTITY;
+
+        // books without a supplier have an empty name and a supplier id of 0, so they come
+        // first. the CAST gives the id integer affinity, so it compares with a bound string
+        String supplierName = "IFNULL(" + SupplierEntry.TABLE_NAME + "." +
+                SupplierEntry.COLUMN_SUPPLIER_NAME + ", '')";
+        String supplierId = "IFNULL(" + BookEntry.TABLE_NAME + "." +
+                BookEntry.COLUMN_BOOK_SUPPLIER_ID + ", 0)";
+
+        // the key columns of a page hold the same values the rows were sorted by
+        Map<String, String> supplierProjection = new HashMap<>(BOOK_DETAIL_PROJECTION);
+        supplierProjection.put(SupplierEntry.COLUMN_SUPPLIER_NAME,
+                supplierName + " AS " + SupplierEntry.COLUMN_SUPPLIER_NAME);
+        supplierProjection.put(BookEntry.COLUMN_BOOK_SUPPLIER_ID,
+                supplierId + " AS " + BookEntry.COLUMN_BOOK_SUPPLIER_ID);
+
+        PAGE_SORTS.put(InventoryContract.SORT_TITLE,
+                new PageSort(BookEntry.TABLE_NAME, null, title));
+        PAGE_SORTS.put(InventoryContract.SORT_PRICE,
+                new PageSort(BookEntry.TABLE_NAME, null, price));
+        PAGE_SORTS.put(InventoryContract.SORT_QUANTITY,
+                new PageSort(BookEntry.TABLE_NAME, null, quantity, title));
+
+        // suppliers by name, then each supplier's books by title. the supplier's id keeps
+        // the books of two suppliers with the same name apart. a LEFT JOIN, as books don't
+        // need a supplier, so this sort is done with a temporary b-tree rather than an index
+        PAGE_SORTS.put(InventoryContract.SORT_SUPPLIER,
+                new PageSort(TABLES_BOOK_WITH_SUPPLIER, supplierProjection,
+                        supplierName + COLLATE_LOCALIZED,
+                        "CAST(" + supplierId + " AS INTEGER)",
+                        title));
+    }
+
+    // single row deletes by id
+    private static final String SQL_DELETE_BOOK_BY_ID =
+            "DELETE FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + "=?";
+    private static final String SQL_DELETE_SUPPLIER_BY_ID =
+            "DELETE FROM " + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry._ID + "=?";
+
+    // every table has a version column that moves forward on each write
+    private static final String COLUMN_VERSION = BookEntry.COLUMN_BOOK_VERSION;
+    private static final String VERSION_INCREMENT = COLUMN_VERSION + "=" + COLUMN_VERSION + "+1";
+
+    // change quantity without letting it drop below zero
+    private static final String SQL_ADJUST_QUANTITY =
+            "UPDATE " + BookEntry.TABLE_NAME +
+                    " SET " + BookEntry.COLUMN_BOOK_QUANTITY + " = " + BookEntry.COLUMN_BOOK_QUANTITY + " + ?, " +
+                    VERSION_INCREMENT +
+                    " WHERE " + BookEntry._ID + " = ?" +
+                    " AND " + BookEntry.COLUMN_BOOK_QUANTITY + " + ? >= 0";
+    private static final String SQL_QUANTITY_BY_ID =
+            "SELECT " + BookEntry.COLUMN_BOOK_QUANTITY +
+                    " FROM " + BookEntry.TABLE_NAME +
+                    " WHERE " + BookEntry._ID + " = ?";
+
+    // the last batch of quantity changes that was saved, so a replayed batch is only applied once
+    private static final String SQL_QUANTITY_BATCH_SAVED =
+            "SELECT COUNT(*) FROM " + InventoryDbHelper.QUANTITY_BATCH_TABLE +
+                    " WHERE " + InventoryDbHelper.QUANTITY_BATCH_COLUMN_SEQUENCE + " = ?";
+    private static final String SQL_CLEAR_QUANTITY_BATCH =
+            "DELETE FROM " + InventoryDbHelper.QUANTITY_BATCH_TABLE;
+    private static final String SQL_RECORD_QUANTITY_BATCH =
+            "INSERT INTO " + InventoryDbHelper.QUANTITY_BATCH_TABLE +
+                    " (" + InventoryDbHelper.QUANTITY_BATCH_COLUMN_SEQUENCE + ") VALUES (?)";
+
+    // most ids bound into a single IN (...) clause. SQLite allows at most 999 arguments
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+
+    // titles less similar than this to a fuzzy search are not matches
+    private static final float FUZZY_MIN_SIMILARITY = 0.3f;
+
+    // most fuzzy matches that are ranked. every one is read in a single statement
+    private static final int MAX_FUZZY_MATCHES = MAX_IDS_PER_STATEMENT;
+
+    // tables read by each kind of query, so cached results can be dropped on writes
+    private static final String[] TABLES_BOOK = {BookEntry.TABLE_NAME};
+    private static final String[] TABLES_SUPPLIER = {SupplierEntry.TABLE_NAME};
+    private static final String[] TABLES_BOOK_AND_SUPPLIER =
+            {BookEntry.TABLE_NAME, SupplierEntry.TABLE_NAME};
+
     private InventoryDbHelper dbHelper;
 
+    // titles of every book, by trigram, for fuzzy search. built on first use
+    private final TrigramIndex titleIndex = new TrigramIndex();
+
+    // false until the title index is first built
+    private boolean titleIndexBuilt = false;
+
+    // books written since the title index last read them. every change is read back in one statement
+    private final ChangedTitles changedTitles = new ChangedTitles(MAX_IDS_PER_STATEMENT);
+
+    // coalesces change notifications so listeners don't requery once per row
+    private NotificationBatcher notifications;
+
+    // recent query results, dropped when a table they read is written to. null when turned off
+    private QueryResultCache queryCache;
+
+    // suppliers cached for this process, dropped as part of each supplier write
+    private SupplierCache supplierCache;
+
     /**
      * Return the MIME type for a given URI
      *
@@ -69,10 +349,20 @@ public class InventoryProvider extends ContentProvider {
                 return BookEntry.CONTENT_ITEM_TYPE;
             case BOOK_DETAIL_ID:
                 return BookEntry.CONTENT_ITEM_TYPE;
+            case BOOKS_DETAIL:
+                return BookEntry.CONTENT_LIST_TYPE;
+            case BOOKS_UPSERT:
+                return BookEntry.CONTENT_LIST_TYPE;
             case SUPPLIERS:
                 return SupplierEntry.CONTENT_LIST_TYPE;
             case SUPPLIER_ID:
                 return SupplierEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIERS_UPSERT:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_BOOKS:
+                return BookEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_STOCK:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri);
         }
@@ -81,6 +371,17 @@ public class InventoryProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         dbHelper = InventoryDbHelper.getInstance(getContext());
+        supplierCache = SupplierCache.getInstance(getContext());
+
+        notifications = new NotificationBatcher(getContext().getContentResolver());
+        notifications.setWindowMillis(
+                getContext().getResources().getInteger(R.integer.notification_window_millis));
+
+        // 0 turns the query cache off
+        int cacheKilobytes = getContext().getResources().getInteger(R.integer.query_cache_kilobytes);
+        if (cacheKilobytes > 0) {
+            queryCache = new QueryResultCache(cacheKilobytes * 1024L);
+        }
         return true;
     }
 
@@ -100,6 +401,14 @@ public class InventoryProvider extends ContentProvider {
             case SUPPLIERS:
                 validateSupplier(values);
                 return insertRow(uri, values, SupplierEntry.TABLE_NAME);
+            case BOOKS_UPSERT:
+                validateBook(values);
+                return upsertRow(BookEntry.CONTENT_URI, values, BookEntry.TABLE_NAME,
+                        BookEntry.COLUMN_BOOK_ISBN);
+            case SUPPLIERS_UPSERT:
+                validateSupplier(values);
+                return upsertRow(SupplierEntry.CONTENT_URI, values, SupplierEntry.TABLE_NAME,
+                        SupplierEntry.COLUMN_SUPPLIER_EMAIL_KEY);
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
@@ -124,13 +433,402 @@ public class InventoryProvider extends ContentProvider {
             return null;
         }
 
+        if (BookEntry.TABLE_NAME.equals(table)) {
+            changedTitles.add(newRowId);
+        }
+
         // Notify all listeners that data has changed
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
 
         // Return the id of the newly inserted row
         return ContentUris.withAppendedId(uri, newRowId);
     }
 
+    /**
+     * Insert multiple rows in a single transaction.
+     * <p>
+     * Every row is validated before it is written. If any row is invalid the
+     * whole batch is rolled back. Listeners are notified once, after commit.
+     * Upsert URIs are supported, so a whole price list can be synced in one pass.
+     *
+     * @param uri    API URI to direct the data
+     * @param values rows to insert
+     * @return number of rows inserted
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int rowsInserted = 0;
+        boolean committed = false;
+
+        beginBatch();
+        db.beginTransaction();
+        try {
+            for (ContentValues rowValues : values) {
+                if (insert(uri, rowValues) != null) {
+                    rowsInserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            db.endTransaction();
+            endBatch(committed);
+        }
+
+        return rowsInserted;
+    }
+
+    /**
+     * Apply a list of operations in a single transaction.
+     * <p>
+     * Each operation still goes through insert/update/delete, so all of the
+     * usual validation applies. Listeners are notified once, after commit.
+     *
+     * @param operations to apply
+     * @return result of each operation
+     * @throws OperationApplicationException if any operation fails
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        boolean committed = false;
+
+        beginBatch();
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            committed = true;
+            return results;
+        } finally {
+            db.endTransaction();
+            endBatch(committed);
+        }
+    }
+
+    /**
+     * Insert a row, or update the existing row with the same natural key.
+     * <p>
+     * The UPDATE is tried first because re-syncs mostly touch existing rows. If it
+     * matches nothing the row is inserted. Both statements are compiled once and
+     * reused, so a batch of upserts never needs a separate lookup per row.
+     *
+     * @param notifyUri URI to notify when the row changes
+     * @param values    data to insert or update
+     * @param table     to write the data to
+     * @param keyColumn unique column that identifies an existing row
+     * @return URI of the inserted or updated row
+     */
+    private Uri upsertRow(Uri notifyUri, ContentValues values, String table, String keyColumn) {
+        Object key = values.get(keyColumn);
+        if (key == null) {
+            throw new IllegalArgumentException("Upsert requires a value for " + keyColumn);
+        }
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        StatementCache statements = dbHelper.getStatementCache();
+
+        // UPDATE table SET col1=?, col2=? WHERE key=?
+        // INSERT INTO table (col1, col2) VALUES (?, ?)
+        StringBuilder update = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        StringBuilder insertColumns = new StringBuilder();
+        StringBuilder insertValues = new StringBuilder();
+        Object[] updateArgs = new Object[values.size() + 1];
+        Object[] insertArgs = new Object[values.size()];
+
+        int i = 0;
+        for (String column : values.keySet()) {
+            if (i > 0) {
+                update.append(',');
+                insertColumns.append(',');
+                insertValues.append(',');
+            }
+            update.append(column).append("=?");
+            insertColumns.append(column);
+            insertValues.append('?');
+            updateArgs[i] = insertArgs[i] = values.get(column);
+            i++;
+        }
+        update.append(',').append(VERSION_INCREMENT);
+        update.append(" WHERE ").append(keyColumn).append("=?");
+        updateArgs[i] = key;
+
+        long rowId;
+        db.beginTransaction();
+        try {
+            if (statements.executeUpdateDelete(db, update.toString(), updateArgs) > 0) {
+                rowId = statements.simpleQueryForLong(db,
+                        "SELECT " + BaseColumns._ID + " FROM " + table +
+                                " WHERE " + keyColumn + "=?",
+                        key);
+            } else {
+                rowId = statements.executeInsert(db,
+                        "INSERT INTO " + table + " (" + insertColumns + ") VALUES (" + insertValues + ")",
+                        insertArgs);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (rowId == -1) {
+            Log.e(LOG_TAG, "Failed to upsert row into " + table);
+            return null;
+        }
+
+        if (BookEntry.TABLE_NAME.equals(table)) {
+            changedTitles.add(rowId);
+        }
+        notifyChange(notifyUri);
+        return ContentUris.withAppendedId(notifyUri, rowId);
+    }
+
+    /**
+     * Run a provider specific method
+     *
+     * @param method name of the method to run
+     * @param arg    unused
+     * @param extras arguments for the method
+     * @return result of the method
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        switch (method) {
+            case InventoryContract.METHOD_ADJUST_QUANTITY:
+                int quantity = adjustQuantity(
+                        extras.getLong(InventoryContract.EXTRA_BOOK_ID),
+                        extras.getInt(InventoryContract.EXTRA_QUANTITY_DELTA));
+
+                Bundle result = new Bundle();
+                result.putInt(InventoryContract.EXTRA_QUANTITY, quantity);
+                return result;
+            case InventoryContract.METHOD_ADJUST_QUANTITIES:
+                int[] quantities = adjustQuantities(
+                        extras.getLongArray(InventoryContract.EXTRA_BOOK_IDS),
+                        extras.getIntArray(InventoryContract.EXTRA_QUANTITY_DELTAS),
+                        extras.getLong(InventoryContract.EXTRA_BATCH_SEQUENCE,
+                                InventoryContract.NO_BATCH_SEQUENCE));
+
+                Bundle results = new Bundle();
+                results.putIntArray(InventoryContract.EXTRA_QUANTITIES, quantities);
+                return results;
+            case InventoryContract.METHOD_TITLE_INDEX_STATS:
+                Bundle stats = new Bundle();
+                synchronized (titleIndex) {
+                    stats.putInt(InventoryContract.EXTRA_INDEXED_BOOKS, titleIndex.size());
+                    stats.putInt(InventoryContract.EXTRA_INDEXED_TRIGRAMS, titleIndex.trigramCount());
+                    stats.putLong(InventoryContract.EXTRA_MEMORY_BYTES, titleIndex.estimateMemoryBytes());
+                }
+                return stats;
+            case InventoryContract.METHOD_QUERY_CACHE_STATS:
+                Bundle cacheStats = new Bundle();
+                if (queryCache != null) {
+                    cacheStats.putLong(InventoryContract.EXTRA_CACHE_HITS, queryCache.getHitCount());
+                    cacheStats.putLong(InventoryContract.EXTRA_CACHE_MISSES, queryCache.getMissCount());
+                    cacheStats.putLong(InventoryContract.EXTRA_CACHE_EVICTIONS, queryCache.getEvictionCount());
+                    cacheStats.putLong(InventoryContract.EXTRA_CACHE_INVALIDATIONS,
+                            queryCache.getInvalidationCount());
+                    cacheStats.putInt(InventoryContract.EXTRA_CACHE_ENTRIES, queryCache.getEntryCount());
+                    cacheStats.putLong(InventoryContract.EXTRA_MEMORY_BYTES, queryCache.getSizeBytes());
+                }
+                return cacheStats;
+            case InventoryContract.METHOD_MAINTENANCE_STATS:
+                return dbHelper.getMaintainer().getLastRunStats();
+            case InventoryContract.METHOD_DELETE_BOOKS:
+                boolean[] deleted = deleteBooks(
+                        extras.getLongArray(InventoryContract.EXTRA_BOOK_IDS));
+
+                Bundle deleteResult = new Bundle();
+                deleteResult.putBooleanArray(InventoryContract.EXTRA_DELETED, deleted);
+                return deleteResult;
+            default:
+                throw new IllegalArgumentException("Unknown method " + method);
+        }
+    }
+
+    /**
+     * Atomically change the quantity of a book.
+     * <p>
+     * This is a single conditional UPDATE, so concurrent adjustments can not
+     * overwrite each other and stock can never drop below zero.
+     *
+     * @param bookId of the book to adjust
+     * @param delta  amount to add to the quantity. negative to remove stock
+     * @return new quantity, or {@link InventoryContract#QUANTITY_UNAVAILABLE} if the
+     * book does not exist or does not have enough stock
+     */
+    private int adjustQuantity(long bookId, int delta) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        StatementCache statements = dbHelper.getStatementCache();
+        int quantity = InventoryContract.QUANTITY_UNAVAILABLE;
+        boolean committed = false;
+
+        beginBatch();
+        db.beginTransaction();
+        try {
+            int rowsUpdated = statements.executeUpdateDelete(
+                    db, SQL_ADJUST_QUANTITY, delta, bookId, delta);
+
+            if (rowsUpdated == 1) {
+                quantity = (int) statements.simpleQueryForLong(db, SQL_QUANTITY_BY_ID, bookId);
+                notifyChange(BookEntry.getBookUri(bookId));
+            }
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            db.endTransaction();
+            endBatch(committed);
+        }
+
+        return quantity;
+    }
+
+    /**
+     * Atomically change the quantity of many books in a single transaction.
+     * <p>
+     * Each book is adjusted with the same conditional UPDATE as
+     * {@link #adjustQuantity(long, int)}. An adjustment that would take a book below
+     * zero is skipped without affecting the others.
+     * <p>
+     * A batch with a sequence number is recorded in the same transaction, and is
+     * not applied again if it is replayed with the sequence of the last saved batch.
+     *
+     * @param bookIds  books to adjust
+     * @param deltas   amount to add to the quantity of each book
+     * @param sequence of the batch, or {@link InventoryContract#NO_BATCH_SEQUENCE}
+     * @return new quantity of each book, or {@link InventoryContract#QUANTITY_UNAVAILABLE}
+     * for each adjustment that was skipped. empty if the batch had already been saved
+     */
+    private int[] adjustQuantities(long[] bookIds, int[] deltas, long sequence) {
+        if (bookIds == null || deltas == null || bookIds.length != deltas.length) {
+            throw new IllegalArgumentException("Each book requires a quantity delta");
+        }
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        StatementCache statements = dbHelper.getStatementCache();
+        int[] quantities = new int[bookIds.length];
+        boolean committed = false;
+
+        beginBatch();
+        db.beginTransaction();
+        try {
+            if (sequence != InventoryContract.NO_BATCH_SEQUENCE) {
+                if (statements.simpleQueryForLong(db, SQL_QUANTITY_BATCH_SAVED, sequence) > 0) {
+                    db.setTransactionSuccessful();
+                    committed = true;
+                    return new int[0];
+                }
+                statements.executeUpdateDelete(db, SQL_CLEAR_QUANTITY_BATCH);
+                statements.executeInsert(db, SQL_RECORD_QUANTITY_BATCH, sequence);
+            }
+
+            for (int i = 0; i < bookIds.length; i++) {
+                int rowsUpdated = statements.executeUpdateDelete(
+                        db, SQL_ADJUST_QUANTITY, deltas[i], bookIds[i], deltas[i]);
+
+                if (rowsUpdated == 1) {
+                    quantities[i] = (int) statements.simpleQueryForLong(
+                            db, SQL_QUANTITY_BY_ID, bookIds[i]);
+                    notifyChange(BookEntry.getBookUri(bookIds[i]));
+                } else {
+                    quantities[i] = InventoryContract.QUANTITY_UNAVAILABLE;
+                }
+            }
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            db.endTransaction();
+            endBatch(committed);
+        }
+
+        return quantities;
+    }
+
+    /**
+     * Delete many books by id in a single transaction.
+     * <p>
+     * Ids are deleted in chunks with one DELETE ... WHERE _id IN (...) per chunk.
+     * Listeners are notified once, after commit.
+     *
+     * @param bookIds books to delete
+     * @return for each id, true if that book existed and was deleted
+     */
+    private boolean[] deleteBooks(long[] bookIds) {
+        if (bookIds == null) {
+            throw new IllegalArgumentException("Deletion requires a list of book ids");
+        }
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        boolean[] deleted = new boolean[bookIds.length];
+        boolean committed = false;
+
+        beginBatch();
+        db.beginTransaction();
+        try {
+            for (int start = 0; start < bookIds.length; start += MAX_IDS_PER_STATEMENT) {
+                int end = Math.min(start + MAX_IDS_PER_STATEMENT, bookIds.length);
+                deleteBookChunk(db, bookIds, start, end, deleted);
+            }
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            db.endTransaction();
+            endBatch(committed);
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Delete a chunk of books by id. Must be called inside a transaction.
+     *
+     * @param db      database to delete from
+     * @param bookIds all ids being deleted
+     * @param start   index of the first id in this chunk
+     * @param end     index after the last id in this chunk
+     * @param deleted set to true for each id that existed
+     */
+    private void deleteBookChunk(SQLiteDatabase db, long[] bookIds, int start, int end,
+                                 boolean[] deleted) {
+        // _id IN (?,?,?)
+        StringBuilder selection = new StringBuilder(BookEntry._ID).append(" IN (");
+        String[] selectionArgs = new String[end - start];
+        for (int i = start; i < end; i++) {
+            selection.append(i == start ? "?" : ",?");
+            selectionArgs[i - start] = String.valueOf(bookIds[i]);
+        }
+        selection.append(')');
+
+        // find out which of the ids exist, so each one gets an accurate result
+        Set<Long> existing = new HashSet<>();
+        Cursor cursor = db.query(BookEntry.TABLE_NAME, new String[]{BookEntry._ID},
+                selection.toString(), selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                existing.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (existing.isEmpty()) {
+            return;
+        }
+
+        db.delete(BookEntry.TABLE_NAME, selection.toString(), selectionArgs);
+        for (long id : existing) {
+            changedTitles.add(id);
+        }
+        notifyChange(BookEntry.CONTENT_URI);
+
+        for (int i = start; i < end; i++) {
+            deleted[i] = existing.contains(bookIds[i]);
+        }
+    }
+
     /**
      * Read data from the inventory database
      *
@@ -144,12 +842,57 @@ public class InventoryProvider extends ContentProvider {
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
+        int match = uriMatcher.match(uri);
+        Cursor cursor;
+
+        if (queryCache == null) {
+            cursor = queryDatabase(match, uri, projection, selection, selectionArgs, sortOrder);
+        } else {
+            // serve repeated queries from memory
+            QueryResultCache.Key key = new QueryResultCache.Key(
+                    match, uri.toString(), projection, selection, selectionArgs, sortOrder);
+            cursor = queryCache.get(key);
+            if (cursor == null) {
+                long generation = queryCache.getGeneration();
+                cursor = queryDatabase(match, uri, projection, selection, selectionArgs, sortOrder);
+                cursor = queryCache.put(key, getTablesRead(match), generation, cursor);
+            }
+        }
+
+        Uri notificationUri = getNotificationUri(match, uri);
+        if (notificationUri != null) {
+            cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
+        }
+
+        // Cursor containing the result set
+        return cursor;
+    }
+
+    /**
+     * Read data from the inventory database, without going through the query cache
+     *
+     * @param match         code of the URI
+     * @param uri           API URI to direct the data
+     * @param projection    columns to return
+     * @param selection     WHERE clause
+     * @param selectionArgs data for the WHERE clause
+     * @param sortOrder     result set sorting order
+     * @return {@link Cursor} containing the data
+     */
+    private Cursor queryDatabase(int match, Uri uri, String[] projection, String selection,
+                                 String[] selectionArgs, String sortOrder) {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         Cursor cursor;
 
         // find out which URI we have been given
-        switch (uriMatcher.match(uri)) {
+        switch (match) {
             case BOOKS:
+                if (uri.getQueryParameter(InventoryContract.PARAM_LIMIT) != null) {
+                    // select a single page of books
+                    cursor = queryBookPage(db, uri, projection, selection, selectionArgs);
+                    break;
+                }
+
                 // select multiple books
                 cursor = db.query(
                         BookEntry.TABLE_NAME,
@@ -172,18 +915,38 @@ public class InventoryProvider extends ContentProvider {
                         sortOrder);
                 break;
             case BOOK_DETAIL_ID:
-                final String sql = "SELECT book._id, book.supplier_id, book.title, book.price, " + "" +
-                        "book.quantity, book.image, supplier.name, supplier.email, supplier.phone_num " +
-                        "FROM book " +
-                        "INNER JOIN SUPPLIER " +
-                        "ON book.supplier_id = supplier._id " +
-                        "WHERE book._id = ?";
-
+                // the SQL never changes, so the connection reuses its compiled statement
                 cursor = db.rawQuery(
-                        sql,
+                        SQL_BOOK_DETAIL_BY_ID,
                         new String[]{String.valueOf(ContentUris.parseId(uri))}
                 );
                 break;
+            case BOOKS_DETAIL:
+                // select multiple books with their supplier in a single query
+                cursor = queryBookDetail(db, projection, selection, selectionArgs, sortOrder);
+                break;
+            case BOOKS_SEARCH:
+                // select a page of books matching a search, best matches first
+                String text = uri.getQueryParameter(InventoryContract.PARAM_QUERY);
+                int offset = parseInt(uri, InventoryContract.PARAM_OFFSET, 0);
+                int limit = parseInt(uri, InventoryContract.PARAM_LIMIT, Integer.MAX_VALUE);
+                if (InventoryContract.MODE_FUZZY.equals(
+                        uri.getQueryParameter(InventoryContract.PARAM_MODE))) {
+                    cursor = queryFuzzySearch(db, uri, text, projection, offset, limit);
+                } else {
+                    cursor = querySearch(db, uri, text, projection, BOOK_SEARCH_PROJECTION,
+                            offset, limit);
+                }
+                break;
+            case SEARCH_SUGGEST:
+                // the search view puts the query in the selection args, other callers
+                // may put it at the end of the path
+                String query = selectionArgs != null && selectionArgs.length > 0
+                        ? selectionArgs[0]
+                        : uri.getPathSegments().size() > 1 ? uri.getLastPathSegment() : null;
+                cursor = querySearch(db, uri, query, SEARCH_SUGGEST_COLUMNS, SEARCH_SUGGEST_PROJECTION, 0,
+                        parseInt(uri, SearchManager.SUGGEST_PARAMETER_LIMIT, DEFAULT_SUGGESTION_LIMIT));
+                break;
             case SUPPLIERS:
                 // select multiple suppliers
                 cursor = db.query(
@@ -206,16 +969,493 @@ public class InventoryProvider extends ContentProvider {
                         null,
                         sortOrder);
                 break;
+            case SUPPLIER_BOOKS:
+                // select the books of a single supplier, or a page of them
+                cursor = querySupplierBooks(db, uri, projection, selection, selectionArgs, sortOrder);
+                break;
+            case SUPPLIER_STOCK:
+                // select a single supplier with the totals of its books
+                cursor = db.rawQuery(
+                        SQL_SUPPLIER_STOCK_BY_ID,
+                        new String[]{uri.getPathSegments().get(1)}
+                );
+                break;
             default:
                 throw new IllegalArgumentException("Selection is not supported for " + uri);
         }
 
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
-
-        // Cursor containing the result set
         return cursor;
     }
 
+    /**
+     * Return the URI listeners should watch for changes to the result of a query
+     *
+     * @param match code of the URI
+     * @param uri   that was queried
+     * @return URI to watch, or null if the result is not watched
+     */
+    private static Uri getNotificationUri(int match, Uri uri) {
+        switch (match) {
+            case BOOKS_DETAIL:
+            case BOOKS_SEARCH:
+            case SUPPLIER_BOOKS:
+            case SUPPLIER_STOCK:
+                // the result changes when either a book or a supplier does
+                return InventoryContract.BASE_CONTENT_URI;
+            case SEARCH_SUGGEST:
+                // suggestions are read again on every key press
+                return null;
+            default:
+                return uri;
+        }
+    }
+
+    /**
+     * Return the tables a query reads, so its cached result can be dropped
+     * when any of them are written to
+     *
+     * @param match code of the URI
+     * @return names of the tables
+     */
+    private static String[] getTablesRead(int match) {
+        switch (match) {
+            case BOOK_ID:
+                return TABLES_BOOK;
+            case SUPPLIERS:
+            case SUPPLIER_ID:
+                return TABLES_SUPPLIER;
+            default:
+                // pages sorted by supplier, details and searches all join the supplier
+                return TABLES_BOOK_AND_SUPPLIER;
+        }
+    }
+
+    /**
+     * Select a page of books using keyset pagination.
+     * <p>
+     * Rows are ordered by the sort key and then _id, and the page starts straight
+     * after the row given by {@link InventoryContract#PARAM_AFTER_KEY} and
+     * {@link InventoryContract#PARAM_AFTER_ID}. Every sort key has an index ending in
+     * the rowid, so each page is a single index seek no matter how deep it is.
+     * <p>
+     * Filters given as query parameters are added to the selection with their values
+     * bound as arguments, so the statement stays the same whatever the values are.
+     *
+     * @param db            database to query
+     * @param uri           book list URI carrying the paging and filter parameters
+     * @param projection    columns to return
+     * @param selection     WHERE clause, combined with the paging condition
+     * @param selectionArgs data for the WHERE clause
+     * @return {@link Cursor} containing at most one page of books
+     */
+    private Cursor queryBookPage(SQLiteDatabase db, Uri uri, String[] projection,
+                                 String selection, String[] selectionArgs) {
+        String sort = uri.getQueryParameter(InventoryContract.PARAM_SORT);
+        PageSort pageSort = PAGE_SORTS.get(sort == null ? InventoryContract.SORT_TITLE : sort);
+        if (pageSort == null) {
+            throw new IllegalArgumentException("Unknown sort " + sort);
+        }
+
+        int limit = Integer.parseInt(uri.getQueryParameter(InventoryContract.PARAM_LIMIT));
+        List<String> afterKeys = uri.getQueryParameters(InventoryContract.PARAM_AFTER_KEY);
+
+        List<String> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder();
+        if (selection != null) {
+            where.append('(').append(selection).append(')');
+            if (selectionArgs != null) {
+                args.addAll(Arrays.asList(selectionArgs));
+            }
+        }
+
+        appendBookFilters(uri, where, args);
+
+        if (!afterKeys.isEmpty()) {
+            if (afterKeys.size() != pageSort.keys.length) {
+                throw new IllegalArgumentException("Expected " + pageSort.keys.length
+                        + " values of " + InventoryContract.PARAM_AFTER_KEY + " for " + uri);
+            }
+            if (where.length() > 0) {
+                where.append(" AND ");
+            }
+
+            // the first key >= ? keeps this a range scan of the index, the rest skips
+            // rows already seen
+            String afterId = uri.getQueryParameter(InventoryContract.PARAM_AFTER_ID);
+            where.append(pageSort.keys[0]).append(" >= ? AND ");
+            args.add(afterKeys.get(0));
+            for (int i = 0; i < pageSort.keys.length; i++) {
+                where.append('(').append(pageSort.keys[i]).append(" > ? OR (")
+                        .append(pageSort.keys[i]).append(" = ? AND ");
+                args.add(afterKeys.get(i));
+                args.add(afterKeys.get(i));
+            }
+            where.append(BookEntry.TABLE_NAME).append('.').append(BookEntry._ID).append(" > ?");
+            args.add(afterId);
+            for (int i = 0; i < pageSort.keys.length; i++) {
+                where.append("))");
+            }
+        }
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(pageSort.tables);
+        if (pageSort.projection != null) {
+            // joined, so book columns need to be told apart from supplier columns
+            builder.setProjectionMap(pageSort.projection);
+        }
+        return builder.query(
+                db,
+                projection,
+                where.length() > 0 ? where.toString() : null,
+                args.toArray(new String[args.size()]),
+                null,
+                null,
+                pageSort.orderBy,
+                String.valueOf(limit));
+    }
+
+    /**
+     * Select the books of a single supplier.
+     * <p>
+     * Every index on book.supplier_id starts with it, so only that supplier's books
+     * are read. Without a sort order they come back in title order straight from
+     * book_supplier_title_idx. If the URI has a limit, a page is read as it is for the
+     * book list, with the same sort keys and filters.
+     *
+     * @param db            database to query
+     * @param uri           supplier books URI, with any paging and filter parameters
+     * @param projection    columns to return
+     * @param selection     WHERE clause, combined with the supplier condition
+     * @param selectionArgs data for the WHERE clause
+     * @param sortOrder     result set sorting order, unused when paging
+     * @return {@link Cursor} containing the supplier's books
+     */
+    private Cursor querySupplierBooks(SQLiteDatabase db, Uri uri, String[] projection,
+                                      String selection, String[] selectionArgs, String sortOrder) {
+        // bound like any other argument, ahead of the caller's own
+        String[] supplierArgs = {String.valueOf(Long.parseLong(uri.getPathSegments().get(1)))};
+        String[] args = selectionArgs == null ? supplierArgs
+                : DatabaseUtils.appendSelectionArgs(supplierArgs, selectionArgs);
+
+        String where = BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_SUPPLIER_ID + " = ?";
+        if (selection != null) {
+            where += " AND (" + selection + ")";
+        }
+
+        if (uri.getQueryParameter(InventoryContract.PARAM_LIMIT) != null) {
+            return queryBookPage(db, uri, projection, where, args);
+        }
+        return db.query(
+                BookEntry.TABLE_NAME,
+                projection,
+                where,
+                args,
+                null,
+                null,
+                sortOrder != null ? sortOrder : SUPPLIER_BOOKS_ORDER);
+    }
+
+    /**
+     * Select books matching a full text search, best matches first.
+     * <p>
+     * Every word of the query must match the start of a word in the title or the
+     * supplier name. The search table finds the matches, so a search never reads
+     * books that don't match. Only the matches are ranked and sorted.
+     *
+     * @param db            database to query
+     * @param uri           URI carrying any filter parameters
+     * @param text          words to search for, as typed by the user
+     * @param projection    columns to return, or null for all of them
+     * @param projectionMap names of the columns that can be returned
+     * @param offset        matches to skip
+     * @param limit         most matches to return
+     * @return {@link Cursor} containing the matches
+     */
+    private Cursor querySearch(SQLiteDatabase db, Uri uri, String text, String[] projection,
+                               Map<String, String> projectionMap, int offset, int limit) {
+        String match = toMatchQuery(text, null);
+        if (match == null) {
+            // nothing that can be searched for, so nothing matches
+            return new MatrixCursor(projection != null ? projection
+                    : projectionMap.keySet().toArray(new String[projectionMap.size()]));
+        }
+
+        List<String> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder(SEARCH_MATCH);
+        args.add(match);
+        appendBookFilters(uri, where, args);
+
+        // the title starts with the whole query, ignoring case
+        args.add(escapeLike(text.trim()) + "%");
+        args.add(toMatchQuery(text, InventoryDbHelper.SEARCH_COLUMN_TITLE));
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(TABLES_BOOK_SEARCH);
+        builder.setProjectionMap(projectionMap);
+        String sql = builder.buildQuery(
+                projection,
+                where.toString(),
+                null,
+                null,
+                SEARCH_RANK + ", " + BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_TITLE +
+                        COLLATE_LOCALIZED + ", " + BookEntry.TABLE_NAME + "." + BookEntry._ID,
+                offset + "," + limit);
+        return db.rawQuery(sql, args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * Select books whose titles are similar to a search, most similar first.
+     * <p>
+     * Matches are found and ranked by the in memory title index, then read from the
+     * database in a single statement with any filters applied.
+     *
+     * @param db         database to query
+     * @param uri        URI carrying any filter parameters
+     * @param text       to search for, as typed by the user
+     * @param projection columns to return, or null for all of them
+     * @param offset     matches to skip
+     * @param limit      most matches to return
+     * @return {@link Cursor} containing the matches
+     */
+    private Cursor queryFuzzySearch(SQLiteDatabase db, Uri uri, String text, String[] projection,
+                                    int offset, int limit) {
+        String[] columns = projection != null ? projection
+                : BOOK_SEARCH_PROJECTION.keySet().toArray(new String[BOOK_SEARCH_PROJECTION.size()]);
+        MatrixCursor result = new MatrixCursor(columns);
+
+        TrigramIndex.Matches matches;
+        synchronized (titleIndex) {
+            syncTitleIndex(db);
+            matches = titleIndex.search(text, FUZZY_MIN_SIMILARITY, MAX_FUZZY_MATCHES);
+        }
+        if (matches.size == 0) {
+            return result;
+        }
+
+        // _id is read last, to put the rows back in the order of the matches
+        String[] queryColumns = Arrays.copyOf(columns, columns.length + 1);
+        queryColumns[columns.length] = BookEntry._ID;
+
+        List<String> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder(BookEntry.TABLE_NAME + "." + BookEntry._ID + " IN (");
+        for (int i = 0; i < matches.size; i++) {
+            where.append(i == 0 ? "?" : ",?");
+            args.add(String.valueOf(matches.bookIds[i]));
+        }
+        where.append(')');
+        appendBookFilters(uri, where, args);
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(TABLES_BOOK_WITH_SUPPLIER);
+        builder.setProjectionMap(BOOK_SEARCH_PROJECTION);
+
+        LongSparseArray<Object[]> rows = new LongSparseArray<>(matches.size);
+        Cursor cursor = builder.query(db, queryColumns, where.toString(),
+                args.toArray(new String[args.size()]), null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                Object[] row = new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    row[i] = QueryResultCache.readValue(cursor, i);
+                }
+                rows.put(cursor.getLong(columns.length), row);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // matches that were filtered out have no row
+        int skipped = 0;
+        for (int i = 0; i < matches.size && result.getCount() < limit; i++) {
+            Object[] row = rows.get(matches.bookIds[i]);
+            if (row == null) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            result.addRow(row);
+        }
+        return result;
+    }
+
+    /**
+     * Bring the title index up to date. It is built from every book the first time,
+     * after that only books the provider wrote since the last call are read again.
+     * Nothing is written, so a search never waits on the writer.
+     * <p>
+     * Must be called while synchronized on {@link #titleIndex}.
+     *
+     * @param db database to read from
+     */
+    private void syncTitleIndex(SQLiteDatabase db) {
+        long[] changed = changedTitles.take();
+
+        if (!titleIndexBuilt || changed == null) {
+            titleIndex.clear();
+            Cursor cursor = db.rawQuery("SELECT " + BookEntry._ID + ", " + BookEntry.COLUMN_BOOK_TITLE +
+                    " FROM " + BookEntry.TABLE_NAME, null);
+            try {
+                while (cursor.moveToNext()) {
+                    titleIndex.put(cursor.getLong(0), cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+            titleIndex.trimToSize();
+            titleIndexBuilt = true;
+
+            Log.i(LOG_TAG, "Built title index of " + titleIndex.size() + " books, " +
+                    titleIndex.trigramCount() + " trigrams, about " +
+                    titleIndex.estimateMemoryBytes() / 1024 + " KB");
+        } else if (changed.length > 0) {
+            // _id IN (?,?,?)
+            StringBuilder selection = new StringBuilder(BookEntry._ID).append(" IN (");
+            String[] selectionArgs = new String[changed.length];
+            for (int i = 0; i < changed.length; i++) {
+                selection.append(i == 0 ? "?" : ",?");
+                selectionArgs[i] = String.valueOf(changed[i]);
+            }
+            selection.append(')');
+
+            // a book that no longer exists has no row, so it is removed
+            for (long id : changed) {
+                titleIndex.remove(id);
+            }
+            Cursor cursor = db.query(BookEntry.TABLE_NAME,
+                    new String[]{BookEntry._ID, BookEntry.COLUMN_BOOK_TITLE},
+                    selection.toString(), selectionArgs, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    titleIndex.put(cursor.getLong(0), cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Turn text typed by the user into an FTS query that matches every word as a prefix.
+     * Anything other than letters and digits only separates words, so the text can't
+     * be read as FTS syntax.
+     *
+     * @param text   typed by the user
+     * @param column to match the words in, or null for any column
+     * @return FTS query, or null if the text has no words
+     */
+    private static String toMatchQuery(String text, String column) {
+        if (text == null) {
+            return null;
+        }
+
+        StringBuilder match = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            if (column != null) {
+                match.append(column).append(':');
+            }
+            match.append(word).append('*');
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    // escape text so LIKE matches it literally, using \ as the escape character
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // Return an int query parameter, or a default if it isn't given
+    private static int parseInt(Uri uri, String name, int defaultValue) {
+        String value = uri.getQueryParameter(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Add the filters given as query parameters on a book list URI to a selection.
+     * Each filter is on a column with an index, alone or after the supplier id.
+     *
+     * @param uri   book list URI carrying the filter parameters
+     * @param where selection to add to
+     * @param args  arguments of the selection, added to in step
+     */
+    private static void appendBookFilters(Uri uri, StringBuilder where, List<String> args) {
+        String price = BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_PRICE;
+        String quantity = BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_QUANTITY;
+
+        String stock = uri.getQueryParameter(InventoryContract.PARAM_STOCK);
+        if (stock != null) {
+            switch (stock) {
+                case InventoryContract.STOCK_IN:
+                    appendFilter(where, quantity + " > 0");
+                    break;
+                case InventoryContract.STOCK_OUT:
+                    appendFilter(where, quantity + " = 0");
+                    break;
+                case InventoryContract.STOCK_LOW:
+                    appendFilter(where, quantity + " BETWEEN 1 AND ?");
+                    args.add(String.valueOf(InventoryContract.LOW_STOCK_THRESHOLD));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown stock level " + stock);
+            }
+        }
+
+        String minPrice = uri.getQueryParameter(InventoryContract.PARAM_MIN_PRICE);
+        if (minPrice != null) {
+            appendFilter(where, price + " >= ?");
+            args.add(String.valueOf(Integer.parseInt(minPrice)));
+        }
+
+        String maxPrice = uri.getQueryParameter(InventoryContract.PARAM_MAX_PRICE);
+        if (maxPrice != null) {
+            appendFilter(where, price + " <= ?");
+            args.add(String.valueOf(Integer.parseInt(maxPrice)));
+        }
+
+        String supplierId = uri.getQueryParameter(InventoryContract.PARAM_SUPPLIER_ID);
+        if (supplierId != null) {
+            appendFilter(where, BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_BOOK_SUPPLIER_ID + " = ?");
+            args.add(String.valueOf(Long.parseLong(supplierId)));
+        }
+    }
+
+    // AND a condition onto a selection
+    private static void appendFilter(StringBuilder where, String condition) {
+        if (where.length() > 0) {
+            where.append(" AND ");
+        }
+        where.append(condition);
+    }
+
+    /**
+     * Select books joined with their supplier.
+     * <p>
+     * Columns are named as they are in their own table, so the same column names
+     * can be used to read the result. The book's id and version are returned as
+     * _id and version.
+     *
+     * @param db            database to query
+     * @param projection    columns to return, or null for all of them
+     * @param selection     WHERE clause
+     * @param selectionArgs data for the WHERE clause
+     * @param sortOrder     result set sorting order
+     * @return {@link Cursor} containing the data
+     */
+    private Cursor queryBookDetail(SQLiteDatabase db, String[] projection, String selection,
+                                   String[] selectionArgs, String sortOrder) {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(TABLES_BOOK_DETAIL);
+        builder.setProjectionMap(BOOK_DETAIL_PROJECTION);
+        return builder.query(db, projection, selection, selectionArgs, null, null, sortOrder);
+    }
+
     /**
      * Update existing data in the inventory database
      *
@@ -235,20 +1475,16 @@ public class InventoryProvider extends ContentProvider {
                 return updateRow(uri, values, selection, selectionArgs, BookEntry.TABLE_NAME);
 
             case BOOK_ID:
-                selection = BookEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 validateBook(values);
-                return updateRow(uri, values, selection, selectionArgs, BookEntry.TABLE_NAME);
+                return updateRowById(uri, values, ContentUris.parseId(uri), BookEntry.TABLE_NAME);
 
             case SUPPLIERS:
                 validateSupplier(values);
                 return updateRow(uri, values, selection, selectionArgs, SupplierEntry.TABLE_NAME);
 
             case SUPPLIER_ID:
-                selection = SupplierEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 validateSupplier(values);
-                return updateRow(uri, values, selection, selectionArgs, SupplierEntry.TABLE_NAME);
+                return updateRowById(uri, values, ContentUris.parseId(uri), SupplierEntry.TABLE_NAME);
 
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
@@ -275,13 +1511,18 @@ public class InventoryProvider extends ContentProvider {
             case BOOKS:
                 // Delete all rows that match the selection and selection args
                 rowsDeleted = db.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    changedTitles.markStale();
+                }
                 break;
 
             case BOOK_ID:
                 // Delete a single row given by the ID in the URI
-                selection = BookEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                rowsDeleted = db.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = dbHelper.getStatementCache().executeUpdateDelete(
+                        db, SQL_DELETE_BOOK_BY_ID, ContentUris.parseId(uri));
+                if (rowsDeleted != 0) {
+                    changedTitles.add(ContentUris.parseId(uri));
+                }
                 break;
 
             case SUPPLIERS:
@@ -291,9 +1532,8 @@ public class InventoryProvider extends ContentProvider {
 
             case SUPPLIER_ID:
                 // Delete a single row given by the ID in the URI
-                selection = SupplierEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                rowsDeleted = db.delete(SupplierEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = dbHelper.getStatementCache().executeUpdateDelete(
+                        db, SQL_DELETE_SUPPLIER_BY_ID, ContentUris.parseId(uri));
                 break;
 
             default:
@@ -301,7 +1541,7 @@ public class InventoryProvider extends ContentProvider {
         }
 
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         // Return the number of rows deleted
@@ -314,27 +1554,176 @@ public class InventoryProvider extends ContentProvider {
             return 0;
         }
 
-        SQLiteDatabase database = dbHelper.getWritableDatabase();
-
         // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(tableName, values, selection, selectionArgs);
+        int rowsUpdated = executeUpdate(tableName, values, selection, selectionArgs);
 
         // If 1 or more rows were updated, then notify all listeners that the data at the
         // given URI has changed
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            if (isTitleWrite(tableName, values)) {
+                changedTitles.markStale();
+            }
+            notifyChange(uri);
         }
 
         // Return the number of rows updated
         return rowsUpdated;
     }
 
+    /**
+     * Update a single row by id using a compiled statement.
+     * <p>
+     * Statements are cached by the set of columns being updated, so repeated
+     * updates of the same shape skip SQL compilation. If the URI carries an
+     * expected version, the row is only updated if it is still at that version.
+     *
+     * @param uri       API URI to direct the data
+     * @param values    updated data
+     * @param id        of the row to update
+     * @param tableName table containing the row
+     * @return number of rows that were updated. 0 if the row is missing or has a different version
+     */
+    private int updateRowById(Uri uri, ContentValues values, long id, String tableName) {
+        // If there are no values to update, then don't try to update the database
+        if (values.size() == 0) {
+            return 0;
+        }
+
+        String expectedVersion = uri.getQueryParameter(InventoryContract.PARAM_EXPECTED_VERSION);
+
+        int rowsUpdated;
+        if (expectedVersion == null) {
+            rowsUpdated = executeUpdate(tableName, values,
+                    BaseColumns._ID + "=?",
+                    new Object[]{id});
+        } else {
+            rowsUpdated = executeUpdate(tableName, values,
+                    BaseColumns._ID + "=? AND " + COLUMN_VERSION + "=?",
+                    new Object[]{id, Long.parseLong(expectedVersion)});
+        }
+
+        if (rowsUpdated != 0) {
+            if (isTitleWrite(tableName, values)) {
+                changedTitles.add(id);
+            }
+            notifyChange(uri);
+        }
+
+        return rowsUpdated;
+    }
+
+    /**
+     * @param tableName table that was updated
+     * @param values    updated data
+     * @return true if the update wrote book titles, which the title index must read again
+     */
+    private static boolean isTitleWrite(String tableName, ContentValues values) {
+        return BookEntry.TABLE_NAME.equals(tableName) && values.containsKey(BookEntry.COLUMN_BOOK_TITLE);
+    }
+
+    /**
+     * Run UPDATE table SET col1=?, col2=?, version=version+1 WHERE where
+     * <p>
+     * Every update goes through here so that each write moves the row to a new version.
+     *
+     * @param tableName table to update
+     * @param values    updated data
+     * @param where     WHERE clause, or null to update every row
+     * @param whereArgs data for the WHERE clause
+     * @return number of rows that were updated
+     */
+    private int executeUpdate(String tableName, ContentValues values, String where,
+                              Object[] whereArgs) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+        int argCount = whereArgs == null ? 0 : whereArgs.length;
+        Object[] args = new Object[values.size() + argCount];
+
+        int i = 0;
+        for (String column : values.keySet()) {
+            sql.append(column).append("=?,");
+            args[i++] = values.get(column);
+        }
+        sql.append(VERSION_INCREMENT);
+
+        if (where != null) {
+            sql.append(" WHERE ").append(where);
+        }
+        for (int j = 0; j < argCount; j++) {
+            args[i++] = whereArgs[j];
+        }
+
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        return dbHelper.getStatementCache().executeUpdateDelete(database, sql.toString(), args);
+    }
+
+    /**
+     * Notify listeners that the data at a given URI has changed.
+     * <p>
+     * Notifications are held back while a batch is open, and otherwise
+     * collected for a short window so that rapid writes cause a single requery.
+     *
+     * @param uri that has changed
+     */
+    private void notifyChange(Uri uri) {
+        // cached results must be dropped right away, not when listeners hear about it
+        List<String> segments = uri.getPathSegments();
+        if (queryCache != null) {
+            if (segments.isEmpty()) {
+                queryCache.invalidate(null);
+            } else if (InventoryContract.PATH_BOOKS.equals(segments.get(0))) {
+                queryCache.invalidate(BookEntry.TABLE_NAME);
+            } else if (InventoryContract.PATH_SUPPLIERS.equals(segments.get(0))) {
+                queryCache.invalidate(SupplierEntry.TABLE_NAME);
+            } else {
+                queryCache.invalidate(null);
+            }
+        }
+
+        if (segments.isEmpty() || InventoryContract.PATH_SUPPLIERS.equals(segments.get(0))) {
+            supplierCache.invalidate(uri);
+        }
+
+        dbHelper.getCheckpointer().onWrite();
+        dbHelper.getMaintainer().onWrite();
+        notifications.notifyChange(uri);
+    }
+
+    /**
+     * Start a batch of writes. Notifications are held back and query results
+     * are not cached until the batch ends
+     */
+    private void beginBatch() {
+        notifications.beginBatch();
+        changedTitles.beginWrite();
+        supplierCache.beginWrite();
+        if (queryCache != null) {
+            queryCache.beginWrite();
+        }
+    }
+
+    /**
+     * End a batch of writes. Call after the transaction has ended
+     *
+     * @param committed true if the transaction was committed
+     */
+    private void endBatch(boolean committed) {
+        if (queryCache != null) {
+            queryCache.endWrite();
+        }
+        supplierCache.endWrite();
+        changedTitles.endWrite();
+        notifications.endBatch(committed);
+    }
+
     /**
      * Throw an exception of book values contain an error
      *
      * @param values to validate
      */
     private void validateBook(ContentValues values) {
+        // the version is managed by the provider
+        values.remove(BookEntry.COLUMN_BOOK_VERSION);
+
         // all books require a name
         if (values.containsKey(BookEntry.COLUMN_BOOK_TITLE)) {
             String name = values.getAsString(BookEntry.COLUMN_BOOK_TITLE);
@@ -371,6 +1760,18 @@ public class InventoryProvider extends ContentProvider {
             }
         }
 
+        // ISBNs are stored without separators so the same book always has the same key
+        if (values.containsKey(BookEntry.COLUMN_BOOK_ISBN)) {
+            String isbn = values.getAsString(BookEntry.COLUMN_BOOK_ISBN);
+            if (isbn != null) {
+                isbn = isbn.replaceAll("[\\s-]", "").toUpperCase(Locale.ROOT);
+                if (!isbn.matches("\\d{9}[\\dX]|\\d{13}")) {
+                    throw new IllegalArgumentException("Book requires a valid ISBN");
+                }
+                values.put(BookEntry.COLUMN_BOOK_ISBN, isbn);
+            }
+        }
+
         //TODO: image support
     }
 
@@ -380,6 +1781,9 @@ public class InventoryProvider extends ContentProvider {
      * @param values to validate
      */
     private void validateSupplier(ContentValues values) {
+        // the version is managed by the provider
+        values.remove(SupplierEntry.COLUMN_SUPPLIER_VERSION);
+
         // all suppliers require a name
         if (values.containsKey(SupplierEntry.COLUMN_SUPPLIER_NAME)) {
             String name = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
@@ -393,6 +1797,38 @@ public class InventoryProvider extends ContentProvider {
             if (email == null || !Patterns.EMAIL_ADDRESS.matcher(email).matches()) {
                 throw new IllegalArgumentException("Supplier requires a valid email address");
             }
+
+            // suppliers are identified by their email, ignoring case and whitespace
+            values.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL_KEY,
+                    email.trim().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Tables and ordering used to page through books by one sort key
+     */
+    private static class PageSort {
+        final String tables;
+
+        // SQL expressions making up the sort key, in order
+        final String[] keys;
+
+        final String orderBy;
+
+        // columns of the joined tables, or null if only the book table is read
+        final Map<String, String> projection;
+
+        PageSort(String tables, Map<String, String> projection, String... keys) {
+            this.tables = tables;
+            this.projection = projection;
+            this.keys = keys;
+
+            StringBuilder builder = new StringBuilder();
+            for (String key : keys) {
+                builder.append(key).append(", ");
+            }
+            this.orderBy = builder.append(BookEntry.TABLE_NAME).append('.')
+                    .append(BookEntry._ID).toString();
         }
     }
 }
@@ -0,0 +1,38 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+
+/**
+ * Reads and writes the inventory database using the URIs in {@link InventoryContract}.
+ * <p>
+ * Inside the app this is {@link InventoryProvider} itself, called directly, so
+ * validation, change notification and the query cache are the same whichever
+ * way a request arrives. {@link ResolverRepository} goes through the
+ * ContentResolver instead, for when the provider is not in this process.
+ *
+ * @author Maerlyn Broadbent
+ */
+interface InventoryRepository {
+
+    Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                 String sortOrder);
+
+    Uri insert(Uri uri, ContentValues values);
+
+    int update(Uri uri, ContentValues values, String selection, String[] selectionArgs);
+
+    int delete(Uri uri, String selection, String[] selectionArgs);
+
+    Bundle call(String method, String arg, Bundle extras);
+
+    ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException;
+}
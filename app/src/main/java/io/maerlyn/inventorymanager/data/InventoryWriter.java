@@ -0,0 +1,316 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs all inventory writes on a single background thread.
+ * <p>
+ * Writes are queued in the order they are submitted. Adjacent single operations
+ * waiting in the queue are applied together in one transaction, with a single
+ * change notification. Reads do not go through the writer and are never blocked by it.
+ *
+ * @author Maerlyn Broadbent
+ */
+public class InventoryWriter {
+
+    private static final String LOG_TAG = InventoryWriter.class.getSimpleName();
+
+    // writes are rejected once this many are waiting
+    private static final int MAX_QUEUED_WRITES = 256;
+
+    // most operations that will be grouped into a single transaction
+    private static final int MAX_GROUP_SIZE = 64;
+
+    // instance of this class for application use
+    private static InventoryWriter instance;
+
+    private final Context context;
+    private final BlockingQueue<Write<?>> queue = new ArrayBlockingQueue<>(MAX_QUEUED_WRITES);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives the result of a write on the main thread
+     *
+     * @param <T> type of the result
+     */
+    public interface Callback<T> {
+        void onComplete(T result);
+    }
+
+    /**
+     * Converts the result of a grouped operation
+     *
+     * @param <T> type of the converted result
+     */
+    interface ResultConverter<T> {
+        /**
+         * @param result of the operation, or null if the operation failed
+         * @return converted result
+         */
+        T convert(ContentProviderResult result);
+    }
+
+    /**
+     * This class should not be directly instantiated.
+     * Get an instance using the getInstance() method.
+     *
+     * @param context application context
+     */
+    private InventoryWriter(Context context) {
+        this.context = context;
+
+        Thread thread = new Thread(this::processWrites, "inventory-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Return an instance of {@link InventoryWriter}
+     *
+     * @param context activity context
+     * @return instance of {@link InventoryWriter}
+     */
+    public static synchronized InventoryWriter getInstance(Context context) {
+        if (instance == null) {
+            instance = new InventoryWriter(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Queue a write that runs on its own.
+     * <p>
+     * If the task throws, the returned {@link Future} fails and the callback is not called.
+     *
+     * @param task     to run on the writer thread
+     * @param callback called on the main thread with the result. may be null
+     * @param <T>      type of the result
+     * @return {@link Future} result of the write
+     * @throws RejectedExecutionException if too many writes are already queued
+     */
+    public <T> Future<T> submit(Callable<T> task, Callback<T> callback) {
+        return enqueue(new Write<>(task, null, null, callback));
+    }
+
+    /**
+     * Queue a single operation that may be applied in the same transaction as
+     * other operations queued next to it.
+     *
+     * @param operation to apply
+     * @param converter used to convert the result of the operation
+     * @param callback  called on the main thread with the converted result. may be null
+     * @param <T>       type of the converted result
+     * @return {@link Future} converted result of the operation
+     * @throws RejectedExecutionException if too many writes are already queued
+     */
+    <T> Future<T> submit(ContentProviderOperation operation, ResultConverter<T> converter,
+                         Callback<T> callback) {
+        return enqueue(new Write<>(null, operation, converter, callback));
+    }
+
+    private <T> Future<T> enqueue(Write<T> write) {
+        if (!queue.offer(write)) {
+            throw new RejectedExecutionException("Too many inventory writes are queued");
+        }
+        return write.future;
+    }
+
+    /**
+     * Take writes off the queue and run them, forever
+     */
+    private void processWrites() {
+        List<Write<?>> group = new ArrayList<>(MAX_GROUP_SIZE);
+
+        while (true) {
+            Write<?> write;
+            try {
+                write = queue.take();
+            } catch (InterruptedException e) {
+                Log.e(LOG_TAG, "Inventory writer interrupted", e);
+                return;
+            }
+
+            if (write.operation == null) {
+                write.run();
+                continue;
+            }
+
+            // collect any operations queued directly behind this one.
+            // this is the only consumer, so peek and poll always agree
+            group.add(write);
+            while (group.size() < MAX_GROUP_SIZE
+                    && queue.peek() != null && queue.peek().operation != null) {
+                group.add(queue.poll());
+            }
+
+            applyGroup(group);
+            group.clear();
+        }
+    }
+
+    /**
+     * Apply a group of operations in a single transaction.
+     * <p>
+     * If the transaction fails, each operation is applied again on its own so that
+     * one bad write does not fail the writes queued next to it.
+     *
+     * @param group operations to apply
+     */
+    private void applyGroup(List<Write<?>> group) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(group.size());
+        for (Write<?> write : group) {
+            operations.add(write.operation);
+        }
+
+        try {
+            ContentProviderResult[] results = applyBatch(operations);
+            for (int i = 0; i < group.size(); i++) {
+                group.get(i).complete(results[i]);
+            }
+            return;
+        } catch (Exception e) {
+            if (group.size() == 1) {
+                Log.e(LOG_TAG, "Exception while applying an inventory write", e);
+                group.get(0).complete(null);
+                return;
+            }
+            Log.w(LOG_TAG, "Grouped inventory writes failed, retrying individually", e);
+        }
+
+        for (Write<?> write : group) {
+            ArrayList<ContentProviderOperation> single = new ArrayList<>(1);
+            single.add(write.operation);
+
+            try {
+                write.complete(applyBatch(single)[0]);
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Exception while applying an inventory write", e);
+                write.complete(null);
+            }
+        }
+    }
+
+    private ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws Exception {
+        return Inventory.getRepository(context).applyBatch(operations);
+    }
+
+    /**
+     * A single queued write
+     *
+     * @param <T> type of the result
+     */
+    private class Write<T> {
+        final Callable<T> task;
+        final ContentProviderOperation operation;
+        final ResultConverter<T> converter;
+        final Callback<T> callback;
+        final WriteFuture<T> future = new WriteFuture<>();
+
+        Write(Callable<T> task, ContentProviderOperation operation,
+              ResultConverter<T> converter, Callback<T> callback) {
+            this.task = task;
+            this.operation = operation;
+            this.converter = converter;
+            this.callback = callback;
+        }
+
+        // run a write that isn't an operation
+        void run() {
+            try {
+                deliver(task.call());
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Exception while running an inventory write", e);
+                future.fail(e);
+            }
+        }
+
+        // finish an operation write
+        void complete(ContentProviderResult result) {
+            deliver(converter.convert(result));
+        }
+
+        private void deliver(T result) {
+            future.complete(result);
+            if (callback != null) {
+                mainHandler.post(() -> callback.onComplete(result));
+            }
+        }
+    }
+
+    /**
+     * {@link Future} that is completed by the writer thread
+     *
+     * @param <T> type of the result
+     */
+    private static class WriteFuture<T> implements Future<T> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private T result;
+        private Exception error;
+
+        void complete(T result) {
+            this.result = result;
+            done.countDown();
+        }
+
+        void fail(Exception error) {
+            this.error = error;
+            done.countDown();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // queued writes always run
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            done.await();
+            return getResult();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private T getResult() throws ExecutionException {
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return result;
+        }
+    }
+}
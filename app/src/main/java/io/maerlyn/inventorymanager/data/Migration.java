@@ -0,0 +1,99 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.util.Log;
+
+/**
+ * A single schema change, taking the database from the version before it to {@link #version}.
+ * <p>
+ * Migrations are run in order by {@link #run}. Each one runs in a transaction that
+ * also records the new version, so a database is never left part way through a step.
+ * On a device SQLiteOpenHelper runs the whole upgrade inside one more transaction,
+ * so a failed step rolls back every step before it too, and the next open starts
+ * again from the old version. Steps are plain SQL: columns are added with ALTER
+ * TABLE, and indexes are created from the rows already there. The time each step
+ * takes is logged.
+ *
+ * @author Maerlyn Broadbent
+ */
+class Migration {
+
+    private static final String LOG_TAG = Migration.class.getSimpleName();
+
+    /**
+     * The SQL of a migration
+     */
+    interface Step {
+        void migrate(MigrationDatabase db);
+    }
+
+    // version the database is at once this migration has run
+    final int version;
+
+    // what the migration changes, for the log
+    final String description;
+
+    private final Step step;
+
+    Migration(int version, String description, Step step) {
+        this.version = version;
+        this.description = description;
+        this.step = step;
+    }
+
+    /**
+     * Run every migration after one version, up to and including another
+     *
+     * @param db          database to migrate
+     * @param migrations  every migration, in version order
+     * @param fromVersion version the database is at
+     * @param toVersion   version to migrate to
+     * @return time taken by each migration that ran, in nanoseconds
+     * @throws IllegalStateException if the database is too old to be migrated
+     */
+    static long[] run(MigrationDatabase db, Migration[] migrations, int fromVersion, int toVersion) {
+        if (migrations.length > 0 && fromVersion < migrations[0].version - 1) {
+            throw new IllegalStateException("No migration from version " + fromVersion);
+        }
+
+        int count = 0;
+        for (Migration migration : migrations) {
+            if (migration.version > fromVersion && migration.version <= toVersion) {
+                count++;
+            }
+        }
+
+        long[] nanos = new long[count];
+        int i = 0;
+        for (Migration migration : migrations) {
+            if (migration.version <= fromVersion || migration.version > toVersion) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            db.beginTransaction();
+            try {
+                migration.step.migrate(db);
+                db.setVersion(migration.version);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            nanos[i++] = System.nanoTime() - start;
+
+            Log.i(LOG_TAG, "Migrated to version " + migration.version + " (" +
+                    migration.description + ") in " + nanos[i - 1] / 1000000 + "ms");
+        }
+        return nanos;
+    }
+
+    /**
+     * Add a column to a table
+     *
+     * @param db         database to change
+     * @param table      to add the column to
+     * @param definition of the column, e.g. "isbn TEXT"
+     */
+    static void addColumn(MigrationDatabase db, String table, String definition) {
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + definition + ";");
+    }
+}
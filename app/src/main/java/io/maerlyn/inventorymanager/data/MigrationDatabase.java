@@ -0,0 +1,40 @@
+package io.maerlyn.inventorymanager.data;
+
+/**
+ * The few database operations schema migrations are allowed to use.
+ * <p>
+ * Migrations only run SQL, so every row is moved by SQLite itself and none are
+ * read into memory. Keeping them off {@link android.database.sqlite.SQLiteDatabase}
+ * also lets them run in JVM tests against a plain SQLite driver.
+ *
+ * @author Maerlyn Broadbent
+ */
+interface MigrationDatabase {
+
+    /**
+     * Run a single statement that returns no rows
+     *
+     * @param sql statement to run
+     */
+    void execSQL(String sql);
+
+    /**
+     * Run a query that returns a single number, e.g. a count
+     *
+     * @param sql query to run
+     * @return value of the first column of the first row
+     */
+    long longForQuery(String sql);
+
+    // schema version, stored in PRAGMA user_version
+    int getVersion();
+
+    void setVersion(int version);
+
+    // transactions may be nested. only the outermost one commits
+    void beginTransaction();
+
+    void setTransactionSuccessful();
+
+    void endTransaction();
+}
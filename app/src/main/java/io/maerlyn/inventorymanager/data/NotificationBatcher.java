@@ -0,0 +1,153 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects change notifications so that listeners requery once per batch of
+ * writes rather than once per row.
+ * <p>
+ * While a batch is open on a thread, notifications from that thread are held
+ * back and sent once when the batch is committed. They are dropped if the
+ * batch is rolled back. Outside of a batch, notifications are collected for a
+ * short window and then sent together. Duplicate URIs are only sent once.
+ *
+ * @author Maerlyn Broadbent
+ */
+class NotificationBatcher {
+
+    // default time to collect notifications made outside of a batch
+    static final long DEFAULT_WINDOW_MILLIS = 50;
+
+    private final ContentResolver contentResolver;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // notifications held back by the batch open on each thread
+    private final ThreadLocal<Batch> batches = new ThreadLocal<>();
+
+    // notifications made outside of a batch that are waiting for the window to close
+    private final Set<Uri> pending = new LinkedHashSet<>();
+    private boolean flushScheduled = false;
+    private long windowMillis = DEFAULT_WINDOW_MILLIS;
+
+    private final Runnable flushPending = this::flushPending;
+
+    /**
+     * @param contentResolver used to send notifications
+     */
+    NotificationBatcher(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    /**
+     * Set how long notifications made outside of a batch are collected before
+     * they are sent. Zero sends them immediately.
+     *
+     * @param windowMillis time to collect notifications for
+     */
+    synchronized void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Start holding back notifications on this thread.
+     * Batches may be nested, only the outermost batch sends notifications.
+     */
+    void beginBatch() {
+        Batch batch = batches.get();
+        if (batch == null) {
+            batch = new Batch();
+            batches.set(batch);
+        }
+        batch.depth++;
+    }
+
+    /**
+     * Close the batch opened by the matching {@link #beginBatch()}
+     *
+     * @param committed true if the batch was committed, false if it was rolled back
+     */
+    void endBatch(boolean committed) {
+        Batch batch = batches.get();
+        if (batch == null) {
+            return;
+        }
+
+        // a rolled back inner batch rolls back the whole transaction
+        if (!committed) {
+            batch.rolledBack = true;
+        }
+
+        if (--batch.depth > 0) {
+            return;
+        }
+        batches.remove();
+
+        if (batch.rolledBack) {
+            return;
+        }
+
+        for (Uri uri : batch.uris) {
+            contentResolver.notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Notify listeners that the data at a given URI has changed
+     *
+     * @param uri that has changed
+     */
+    void notifyChange(Uri uri) {
+        Batch batch = batches.get();
+        if (batch != null) {
+            batch.uris.add(uri);
+            return;
+        }
+
+        synchronized (this) {
+            if (windowMillis <= 0) {
+                contentResolver.notifyChange(uri, null);
+                return;
+            }
+
+            pending.add(uri);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                handler.postDelayed(flushPending, windowMillis);
+            }
+        }
+    }
+
+    /**
+     * Send all notifications that were collected outside of a batch
+     */
+    private void flushPending() {
+        List<Uri> uris;
+
+        synchronized (this) {
+            uris = new ArrayList<>(pending);
+            pending.clear();
+            flushScheduled = false;
+        }
+
+        for (Uri uri : uris) {
+            contentResolver.notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Notifications held back by a batch
+     */
+    private static class Batch {
+        final Set<Uri> uris = new LinkedHashSet<>();
+        int depth = 0;
+        boolean rolledBack = false;
+    }
+}
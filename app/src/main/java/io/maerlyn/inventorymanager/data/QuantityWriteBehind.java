@@ -0,0 +1,477 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Collects quantity changes in memory and saves them in batches.
+ * <p>
+ * Selling from the list is a very frequent, very small write. Instead of a
+ * transaction per tap, each change is added to a per-book running total which
+ * is shown straight away and saved in a single transaction once enough changes
+ * have built up or a short time has passed.
+ * <p>
+ * Every change is also appended to a journal file on a background thread, so
+ * changes that have not been saved yet survive the process being killed and are
+ * replayed the next time this class is created. The journal is written without
+ * fsync, so it does not protect against power loss.
+ * <p>
+ * Each journal starts with the sequence number of the batch it becomes. The
+ * provider records that number in the same transaction as the batch, and skips a
+ * batch it has already saved, so a journal left behind by a process that died
+ * just after its batch was committed is not applied twice. A change that can't be
+ * saved, because the stock had already gone, is reported to the listeners.
+ *
+ * @author Maerlyn Broadbent
+ */
+public class QuantityWriteBehind {
+
+    private static final String LOG_TAG = QuantityWriteBehind.class.getSimpleName();
+
+    // save changes at least this often
+    private static final long FLUSH_INTERVAL_MILLIS = 250;
+
+    // save changes straight away once this many have built up
+    private static final int MAX_PENDING_CHANGES = 100;
+
+    // changes waiting to be saved, and changes that are being saved
+    private static final String JOURNAL_NAME = "quantity.journal";
+    private static final String FLUSHING_JOURNAL_NAME = "quantity.journal.flushing";
+
+    // instance of this class for application use
+    private static QuantityWriteBehind instance;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final File journalFile;
+    private final File flushingJournalFile;
+    private final List<Listener> listeners = new ArrayList<>();
+
+    // all journal file work happens in order on this thread
+    private final Handler journalHandler;
+
+    // quantity change by book id that has not been saved yet
+    private LongSparseArray<Integer> pending = new LongSparseArray<>();
+
+    // quantity change by book id that is being saved right now
+    private LongSparseArray<Integer> flushing = new LongSparseArray<>();
+
+    private int pendingChanges = 0;
+    private boolean flushScheduled = false;
+
+    // nothing is saved until journals left by a previous process have been read
+    private boolean replayed = false;
+
+    // the current journal, and the sequence of the batch it becomes. only used on the journal thread
+    private FileOutputStream journal;
+    private long journalSequence;
+
+    // a single journal record: book id followed by quantity delta
+    private final ByteBuffer record = ByteBuffer.allocate(12);
+
+    private final Runnable scheduledFlush = this::flush;
+
+    /**
+     * Notified on the main thread about pending quantity changes
+     */
+    public interface Listener {
+        /**
+         * The pending quantity of any book has changed
+         */
+        void onPendingChanged();
+
+        /**
+         * Changes that were shown as accepted could not be saved, as there was no
+         * longer enough stock
+         *
+         * @param bookIds books whose change was not saved
+         * @param deltas  change that was not saved for each book
+         */
+        void onChangesRejected(long[] bookIds, int[] deltas);
+    }
+
+    /**
+     * This class should not be directly instantiated.
+     * Get an instance using the getInstance() method.
+     *
+     * @param context application context
+     */
+    private QuantityWriteBehind(Context context) {
+        this.context = context;
+        this.journalFile = new File(context.getFilesDir(), JOURNAL_NAME);
+        this.flushingJournalFile = new File(context.getFilesDir(), FLUSHING_JOURNAL_NAME);
+
+        HandlerThread thread = new HandlerThread("quantity-journal");
+        thread.start();
+        journalHandler = new Handler(thread.getLooper());
+
+        journalHandler.post(this::replayJournals);
+    }
+
+    /**
+     * Return an instance of {@link QuantityWriteBehind}
+     *
+     * @param context activity context
+     * @return instance of {@link QuantityWriteBehind}
+     */
+    public static synchronized QuantityWriteBehind getInstance(Context context) {
+        if (instance == null) {
+            instance = new QuantityWriteBehind(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Change the quantity of a book.
+     * <p>
+     * The change is shown straight away and saved shortly afterwards.
+     *
+     * @param bookId         of the book to adjust
+     * @param delta          amount to add to the quantity. negative to remove stock
+     * @param storedQuantity quantity of the book currently in the database
+     * @return quantity the book will have once saved, or
+     * {@link InventoryContract#QUANTITY_UNAVAILABLE} if it would drop below zero
+     */
+    public synchronized int adjust(long bookId, int delta, int storedQuantity) {
+        int quantity = storedQuantity + getPendingDelta(bookId) + delta;
+        if (quantity < 0) {
+            return InventoryContract.QUANTITY_UNAVAILABLE;
+        }
+
+        pending.put(bookId, pending.get(bookId, 0) + delta);
+        pendingChanges++;
+
+        // journaled in the background, ahead of any flush that includes it
+        journalHandler.post(() -> journal(bookId, delta));
+
+        if (pendingChanges >= MAX_PENDING_CHANGES) {
+            handler.removeCallbacks(scheduledFlush);
+            flushScheduled = false;
+            flush();
+        } else {
+            scheduleFlush();
+        }
+
+        notifyListeners();
+        return quantity;
+    }
+
+    /**
+     * Return the change in quantity of a book that has not been saved yet
+     *
+     * @param bookId of the book
+     * @return amount that will be added to the stored quantity
+     */
+    public synchronized int getPendingDelta(long bookId) {
+        return pending.get(bookId, 0) + flushing.get(bookId, 0);
+    }
+
+    /**
+     * Save all pending changes now, on the writer thread
+     */
+    public synchronized void flush() {
+        flushScheduled = false;
+
+        // only one batch is saved at a time. the next scheduled flush picks up anything left
+        if (!replayed || pending.size() == 0 || flushing.size() > 0) {
+            return;
+        }
+
+        long[] bookIds = new long[pending.size()];
+        int[] deltas = new int[pending.size()];
+        for (int i = 0; i < pending.size(); i++) {
+            bookIds[i] = pending.keyAt(i);
+            deltas[i] = pending.valueAt(i);
+        }
+
+        flushing = pending;
+        pending = new LongSparseArray<>();
+        pendingChanges = 0;
+
+        // queued behind every change in the batch, so its journal is complete
+        journalHandler.post(() -> rotateAndSave(bookIds, deltas));
+    }
+
+    /**
+     * Start a fresh journal for changes made from now on, and save the batch the
+     * old one holds. Runs on the journal thread
+     *
+     * @param bookIds books in the batch
+     * @param deltas  adjustment of each book
+     */
+    private void rotateAndSave(long[] bookIds, int[] deltas) {
+        long sequence = journalSequence;
+        try {
+            openJournal();
+            journal.close();
+            journal = null;
+            if (!journalFile.renameTo(flushingJournalFile)) {
+                throw new IOException("Unable to rotate " + journalFile);
+            }
+        } catch (IOException e) {
+            // the changes are still in the current journal, so they go back to being pending
+            Log.e(LOG_TAG, "Unable to rotate the quantity journal", e);
+            handler.post(() -> onRotateFailed());
+            return;
+        }
+        journalSequence++;
+
+        save(bookIds, deltas, sequence);
+    }
+
+    /**
+     * Queue a batch on the writer thread
+     *
+     * @param bookIds  books in the batch
+     * @param deltas   adjustment of each book
+     * @param sequence of the batch
+     */
+    private void save(long[] bookIds, int[] deltas, long sequence) {
+        try {
+            Inventory.submitWrite(
+                    () -> Inventory.adjustQuantities(bookIds, deltas, sequence, context),
+                    context,
+                    quantities -> onFlushed(bookIds, deltas, sequence, quantities));
+        } catch (RejectedExecutionException e) {
+            Log.w(LOG_TAG, "Writer is busy, quantity changes will be retried", e);
+            handler.post(() -> onFlushed(bookIds, deltas, sequence, null));
+        }
+    }
+
+    /**
+     * Called on the main thread once a batch of changes has been saved, or failed to save
+     *
+     * @param bookIds    books that were adjusted
+     * @param deltas     adjustment of each book
+     * @param sequence   of the batch
+     * @param quantities new quantity of each book, empty if the batch had been saved
+     *                   before, or null if nothing was saved
+     */
+    private synchronized void onFlushed(long[] bookIds, int[] deltas, long sequence, int[] quantities) {
+        if (quantities == null) {
+            // the same batch is tried again, so it keeps its journal and sequence
+            handler.postDelayed(() -> save(bookIds, deltas, sequence), FLUSH_INTERVAL_MILLIS);
+            return;
+        }
+
+        flushing = new LongSparseArray<>();
+
+        // the batch is saved, so its journal is no longer needed
+        journalHandler.post(() -> deleteIfExists(flushingJournalFile));
+
+        List<Integer> rejected = new ArrayList<>();
+        for (int i = 0; i < quantities.length; i++) {
+            if (quantities[i] == InventoryContract.QUANTITY_UNAVAILABLE) {
+                rejected.add(i);
+            }
+        }
+        if (!rejected.isEmpty()) {
+            long[] rejectedIds = new long[rejected.size()];
+            int[] rejectedDeltas = new int[rejected.size()];
+            for (int i = 0; i < rejected.size(); i++) {
+                rejectedIds[i] = bookIds[rejected.get(i)];
+                rejectedDeltas[i] = deltas[rejected.get(i)];
+            }
+            Log.w(LOG_TAG, "Unable to save " + rejectedIds.length + " quantity changes, not enough stock");
+            for (Listener listener : new ArrayList<>(listeners)) {
+                handler.post(() -> listener.onChangesRejected(rejectedIds, rejectedDeltas));
+            }
+        }
+
+        if (pending.size() > 0) {
+            scheduleFlush();
+        }
+
+        notifyListeners();
+    }
+
+    /**
+     * Put a batch that couldn't be moved to its own journal back with the pending changes
+     */
+    private synchronized void onRotateFailed() {
+        for (int i = 0; i < flushing.size(); i++) {
+            long bookId = flushing.keyAt(i);
+            pending.put(bookId, pending.get(bookId, 0) + flushing.valueAt(i));
+            pendingChanges++;
+        }
+        flushing = new LongSparseArray<>();
+        scheduleFlush();
+    }
+
+    /**
+     * Load changes left behind by a previous process and schedule them to be saved.
+     * Runs on the journal thread before anything else
+     */
+    private void replayJournals() {
+        Journal saving = readJournal(flushingJournalFile);
+        Journal unsaved = readJournal(journalFile);
+
+        // new batches follow on from the journals that are left, or start from the clock
+        if (unsaved != null) {
+            journalSequence = unsaved.sequence;
+        } else if (saving != null) {
+            journalSequence = saving.sequence + 1;
+        } else {
+            journalSequence = System.currentTimeMillis();
+        }
+
+        synchronized (this) {
+            replayed = true;
+
+            // the batch that was being saved keeps its sequence, so it is skipped if it was saved
+            if (saving != null && saving.changes.size() > 0) {
+                Log.i(LOG_TAG, "Replaying a batch of " + saving.count + " quantity changes");
+                flushing = saving.changes;
+                long[] bookIds = new long[flushing.size()];
+                int[] deltas = new int[flushing.size()];
+                for (int i = 0; i < flushing.size(); i++) {
+                    bookIds[i] = flushing.keyAt(i);
+                    deltas[i] = flushing.valueAt(i);
+                }
+                save(bookIds, deltas, saving.sequence);
+            } else {
+                deleteIfExists(flushingJournalFile);
+            }
+
+            // unsaved changes stay in the current journal, which new changes are added to
+            if (unsaved != null && unsaved.changes.size() > 0) {
+                Log.i(LOG_TAG, "Replaying " + unsaved.count + " unsaved quantity changes");
+                for (int i = 0; i < unsaved.changes.size(); i++) {
+                    long bookId = unsaved.changes.keyAt(i);
+                    pending.put(bookId, pending.get(bookId, 0) + unsaved.changes.valueAt(i));
+                }
+                pendingChanges += unsaved.count;
+            }
+
+            if (pending.size() > 0) {
+                scheduleFlush();
+            }
+        }
+
+        notifyListeners();
+    }
+
+    /**
+     * Read a journal file
+     *
+     * @param file to read
+     * @return {@link Journal} with its sequence and changes, or null if there is no journal
+     */
+    private Journal readJournal(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        Journal contents = new Journal();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            contents.sequence = in.readLong();
+            while (true) {
+                long bookId = in.readLong();
+                int delta = in.readInt();
+                contents.changes.put(bookId, contents.changes.get(bookId, 0) + delta);
+                contents.count++;
+            }
+        } catch (EOFException e) {
+            // end of the journal. a record cut short by the process dying is ignored
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to read " + file, e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Unable to close " + file, e);
+                }
+            }
+        }
+
+        // a journal cut short before its sequence was written holds no changes
+        if (contents.sequence == InventoryContract.NO_BATCH_SEQUENCE) {
+            deleteIfExists(file);
+            return null;
+        }
+        return contents;
+    }
+
+    // append a change to the current journal. runs on the journal thread
+    private void journal(long bookId, int delta) {
+        try {
+            openJournal();
+
+            // a record is written in one call, so it reaches the OS as a whole
+            record.clear();
+            record.putLong(bookId).putInt(delta);
+            journal.write(record.array());
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to journal a quantity change, it will be lost if the app is killed", e);
+        }
+    }
+
+    // open the current journal, starting it with its sequence if it is new
+    private void openJournal() throws IOException {
+        if (journal != null) {
+            return;
+        }
+
+        boolean created = !journalFile.exists();
+        journal = new FileOutputStream(journalFile, true);
+        if (created) {
+            journal.write(ByteBuffer.allocate(8).putLong(journalSequence).array());
+        }
+    }
+
+    private void deleteIfExists(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(LOG_TAG, "Unable to remove " + file);
+        }
+    }
+
+    // save pending changes after the flush interval, unless that is already scheduled
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(scheduledFlush, FLUSH_INTERVAL_MILLIS);
+        }
+    }
+
+    private synchronized void notifyListeners() {
+        for (Listener listener : new ArrayList<>(listeners)) {
+            handler.post(listener::onPendingChanged);
+        }
+    }
+
+    /**
+     * Sequence and changes read from a journal file
+     */
+    private static class Journal {
+        long sequence = InventoryContract.NO_BATCH_SEQUENCE;
+        final LongSparseArray<Integer> changes = new LongSparseArray<>();
+        int count = 0;
+    }
+}
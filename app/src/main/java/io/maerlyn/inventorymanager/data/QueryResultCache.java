@@ -0,0 +1,343 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.database.Cursor;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In memory copies of recent query results, so that asking the provider the same
+ * question twice only reads the database once.
+ * <p>
+ * Each result remembers the tables it was read from. A write to a table drops
+ * every result that read it, and the least recently used results are dropped
+ * once the cache grows past its size limit.
+ * <p>
+ * A result is only kept if nothing was written while it was being read.
+ * Writes bump a generation number, and a result read under an older
+ * generation is handed back to the caller without being cached. While a
+ * transaction is open nothing is cached at all, since a reader could see
+ * rows the transaction is about to change.
+ *
+ * @author Maerlyn Broadbent
+ */
+class QueryResultCache {
+
+    // a single result may use no more than this fraction of the cache
+    private static final int MAX_ENTRY_FRACTION = 4;
+
+    // rough object overhead, in bytes, used to estimate the size of a result
+    private static final long ROW_OVERHEAD = 16;
+    private static final long REFERENCE_SIZE = 8;
+    private static final long NUMBER_SIZE = 24;
+    private static final long STRING_OVERHEAD = 40;
+    private static final long BLOB_OVERHEAD = 16;
+
+    private final long maxBytes;
+
+    // results in least recently used order
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes = 0;
+
+    // bumped on every write, so results read during a write are not kept
+    private long generation = 0;
+
+    // number of write transactions open
+    private int openWrites = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    private long invalidationCount = 0;
+
+    /**
+     * @param maxBytes estimated size the cached results may grow to
+     */
+    QueryResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Return a cursor over a cached result
+     *
+     * @param key of the query
+     * @return cursor over the result, or null if it isn't cached
+     */
+    synchronized Cursor get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return new CachedCursor(entry.columns, entry.rows);
+    }
+
+    /**
+     * Return the current generation. Read it before running a query, and pass
+     * it to {@link #put} afterwards
+     *
+     * @return current generation
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Copy a query result into the cache. The cursor is closed if the result
+     * was copied, and returned as it is if the result can't be kept: something
+     * was written since the query started, a write is still open, or the result
+     * is too large.
+     *
+     * @param key        of the query
+     * @param tables     read by the query
+     * @param generation returned by {@link #getGeneration()} before the query ran
+     * @param cursor     result of the query
+     * @return cursor over the result, positioned before the first row
+     */
+    Cursor put(Key key, String[] tables, long generation, Cursor cursor) {
+        // nothing is copied unless it could be kept
+        if (!isCacheable(generation)) {
+            return cursor;
+        }
+
+        String[] columns = cursor.getColumnNames();
+        long maxEntryBytes = maxBytes / MAX_ENTRY_FRACTION;
+        long rowBytes = ROW_OVERHEAD + REFERENCE_SIZE * columns.length;
+        int count = cursor.getCount();
+        if (count * rowBytes > maxEntryBytes) {
+            return cursor;
+        }
+
+        // copy the rows, giving up as soon as the result is too large
+        Object[][] rows = new Object[count][];
+        long bytes = 0;
+        cursor.moveToPosition(-1);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            Object[] row = new Object[columns.length];
+            bytes += rowBytes;
+            for (int column = 0; column < columns.length; column++) {
+                row[column] = readValue(cursor, column);
+                bytes += estimateBytes(row[column]);
+                if (bytes > maxEntryBytes) {
+                    cursor.moveToPosition(-1);
+                    return cursor;
+                }
+            }
+            rows[i] = row;
+        }
+        cursor.close();
+
+        synchronized (this) {
+            // checked again, since a write may have started while the rows were copied
+            if (isCacheable(generation)) {
+                Entry previous = entries.put(key, new Entry(columns, rows, tables, bytes));
+                if (previous != null) {
+                    sizeBytes -= previous.bytes;
+                }
+                sizeBytes += bytes;
+                trimToSize();
+            }
+        }
+        return new CachedCursor(columns, rows);
+    }
+
+    /**
+     * Drop every result that was read from a table
+     *
+     * @param table that was written to, or null for every table
+     */
+    synchronized void invalidate(String table) {
+        generation++;
+
+        for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (table == null || entry.reads(table)) {
+                iterator.remove();
+                sizeBytes -= entry.bytes;
+                invalidationCount++;
+            }
+        }
+    }
+
+    /**
+     * Stop caching results until the matching {@link #endWrite()}
+     */
+    synchronized void beginWrite() {
+        openWrites++;
+    }
+
+    /**
+     * Start caching results again, once every open write has ended.
+     * Call after the transaction has been committed or rolled back
+     */
+    synchronized void endWrite() {
+        openWrites--;
+
+        // readers that started during the transaction may have seen uncommitted rows
+        generation++;
+    }
+
+    /**
+     * Drop every result
+     */
+    synchronized void clear() {
+        entries.clear();
+        sizeBytes = 0;
+        generation++;
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return missCount;
+    }
+
+    // results dropped to stay under the size limit
+    synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    // results dropped because a table they read was written to
+    synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    // estimated size of the cached results in bytes
+    synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    // true if a result read at the given generation may be kept
+    private synchronized boolean isCacheable(long generation) {
+        return generation == this.generation && openWrites == 0;
+    }
+
+    // drop least recently used results until the cache fits
+    private void trimToSize() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (sizeBytes > maxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            sizeBytes -= entry.bytes;
+            evictionCount++;
+        }
+    }
+
+    // Return the value of a column as the type it is stored as
+    static Object readValue(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(column);
+            default:
+                return null;
+        }
+    }
+
+    // rough size of a value held by a result, in bytes
+    private static long estimateBytes(Object value) {
+        if (value instanceof String) {
+            return STRING_OVERHEAD + 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return BLOB_OVERHEAD + ((byte[]) value).length;
+        }
+        return value == null ? 0 : NUMBER_SIZE;
+    }
+
+    /**
+     * Everything that identifies a query: the URI it matched and its arguments
+     */
+    static final class Key {
+        private final int match;
+        private final String uri;
+        private final String[] projection;
+        private final String selection;
+        private final String[] selectionArgs;
+        private final String sortOrder;
+        private final int hashCode;
+
+        Key(int match, String uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+            this.match = match;
+            this.uri = uri;
+            this.projection = projection == null ? null : projection.clone();
+            this.selection = selection;
+            this.selectionArgs = selectionArgs == null ? null : selectionArgs.clone();
+            this.sortOrder = sortOrder;
+
+            int hash = match;
+            hash = 31 * hash + uri.hashCode();
+            hash = 31 * hash + Arrays.hashCode(this.projection);
+            hash = 31 * hash + (selection == null ? 0 : selection.hashCode());
+            hash = 31 * hash + Arrays.hashCode(this.selectionArgs);
+            hash = 31 * hash + (sortOrder == null ? 0 : sortOrder.hashCode());
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return match == other.match
+                    && hashCode == other.hashCode
+                    && uri.equals(other.uri)
+                    && Arrays.equals(projection, other.projection)
+                    && (selection == null ? other.selection == null : selection.equals(other.selection))
+                    && Arrays.equals(selectionArgs, other.selectionArgs)
+                    && (sortOrder == null ? other.sortOrder == null : sortOrder.equals(other.sortOrder));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * A cached result and the tables it was read from
+     */
+    private static class Entry {
+        final String[] columns;
+        final Object[][] rows;
+        final String[] tables;
+        final long bytes;
+
+        Entry(String[] columns, Object[][] rows, String[] tables, long bytes) {
+            this.columns = columns;
+            this.rows = rows;
+            this.tables = tables;
+            this.bytes = bytes;
+        }
+
+        boolean reads(String table) {
+            for (String read : tables) {
+                if (read.equals(table)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
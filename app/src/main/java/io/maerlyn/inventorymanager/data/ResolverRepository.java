@@ -0,0 +1,68 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+
+/**
+ * {@link InventoryRepository} that goes through a ContentResolver. Only used
+ * when {@link InventoryProvider} can not be reached directly.
+ *
+ * @author Maerlyn Broadbent
+ */
+class ResolverRepository implements InventoryRepository {
+
+    private final ContentResolver contentResolver;
+
+    /**
+     * @param contentResolver used to reach the provider
+     */
+    ResolverRepository(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return contentResolver.query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return contentResolver.insert(uri, values);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return contentResolver.update(uri, values, selection, selectionArgs);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return contentResolver.delete(uri, selection, selectionArgs);
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        return contentResolver.call(InventoryContract.BASE_CONTENT_URI, method, arg, extras);
+    }
+
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        try {
+            return contentResolver.applyBatch(InventoryContract.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException e) {
+            // the provider process died part way through
+            throw new OperationApplicationException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * {@link MigrationDatabase} over an Android {@link SQLiteDatabase}
+ *
+ * @author Maerlyn Broadbent
+ */
+class SQLiteMigrationDatabase implements MigrationDatabase {
+
+    private final SQLiteDatabase db;
+
+    SQLiteMigrationDatabase(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    @Override
+    public void execSQL(String sql) {
+        db.execSQL(sql);
+    }
+
+    @Override
+    public long longForQuery(String sql) {
+        return DatabaseUtils.longForQuery(db, sql, null);
+    }
+
+    @Override
+    public int getVersion() {
+        return db.getVersion();
+    }
+
+    @Override
+    public void setVersion(int version) {
+        db.setVersion(version);
+    }
+
+    @Override
+    public void beginTransaction() {
+        db.beginTransaction();
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        db.setTransactionSuccessful();
+    }
+
+    @Override
+    public void endTransaction() {
+        db.endTransaction();
+    }
+}
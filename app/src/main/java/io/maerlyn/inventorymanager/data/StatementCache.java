@@ -0,0 +1,186 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of compiled {@link SQLiteStatement}s for the provider's fixed-shape operations.
+ * <p>
+ * Compiling a statement costs more than running it for single row writes, so
+ * statements are compiled once and reused. The cache is cleared whenever the
+ * database is reopened, as compiled statements belong to the database they were
+ * compiled against.
+ * <p>
+ * A compiled statement holds its bound arguments, so each thread gets statements
+ * of its own. No lock is held while a statement runs: a thread waiting for the
+ * database connection must never hold something a thread in a transaction needs.
+ *
+ * @author Maerlyn Broadbent
+ */
+class StatementCache {
+
+    // the least recently used statement of a thread is closed when this is exceeded
+    private static final int MAX_STATEMENTS = 16;
+
+    // changed by clear(), so every thread drops the statements it compiled before
+    private volatile int generation = 0;
+
+    // each thread's compiled statements
+    private final ThreadLocal<ThreadStatements> threadStatements = new ThreadLocal<ThreadStatements>() {
+        @Override
+        protected ThreadStatements initialValue() {
+            return new ThreadStatements();
+        }
+    };
+
+    /**
+     * Run an UPDATE or DELETE statement
+     *
+     * @param db   database to run the statement against
+     * @param sql  statement to run
+     * @param args values for each ? in the statement
+     * @return number of rows affected
+     */
+    int executeUpdateDelete(SQLiteDatabase db, String sql, Object... args) {
+        SQLiteStatement statement = acquire(db, sql, args);
+        try {
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+    /**
+     * Run an INSERT statement
+     *
+     * @param db   database to run the statement against
+     * @param sql  statement to run
+     * @param args values for each ? in the statement
+     * @return row id of the inserted row, or -1 if nothing was inserted
+     */
+    long executeInsert(SQLiteDatabase db, String sql, Object... args) {
+        SQLiteStatement statement = acquire(db, sql, args);
+        try {
+            return statement.executeInsert();
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+    /**
+     * Run a query that returns a single number
+     *
+     * @param db   database to run the statement against
+     * @param sql  statement to run
+     * @param args values for each ? in the statement
+     * @return value of the first column of the first row
+     */
+    long simpleQueryForLong(SQLiteDatabase db, String sql, Object... args) {
+        SQLiteStatement statement = acquire(db, sql, args);
+        try {
+            return statement.simpleQueryForLong();
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+    /**
+     * Forget all compiled statements. Each thread closes its own the next time it
+     * runs a statement
+     */
+    synchronized void clear() {
+        generation++;
+    }
+
+    /**
+     * Return a compiled statement of the calling thread with all arguments bound
+     *
+     * @param db   database to compile the statement against
+     * @param sql  statement to compile
+     * @param args values for each ? in the statement
+     * @return compiled statement ready to run
+     */
+    private SQLiteStatement acquire(SQLiteDatabase db, String sql, Object[] args) {
+        ThreadStatements statements = threadStatements.get();
+
+        // statements compiled against a previous connection can not be reused
+        int current = generation;
+        if (db != statements.database || current != statements.generation) {
+            statements.close();
+            statements.database = db;
+            statements.generation = current;
+        }
+
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+
+        for (int i = 0; i < args.length; i++) {
+            bind(statement, i + 1, args[i]);
+        }
+
+        return statement;
+    }
+
+    /**
+     * Bind a single value using the SQLite type that matches its Java type
+     *
+     * @param statement to bind the value to
+     * @param index     1-based position of the argument
+     * @param value     to bind
+     */
+    private static void bind(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    /**
+     * Compiled statements of one thread by SQL, in access order
+     */
+    private static class ThreadStatements extends LinkedHashMap<String, SQLiteStatement> {
+
+        // database and generation the statements were compiled against
+        SQLiteDatabase database;
+        int generation;
+
+        ThreadStatements() {
+            super(MAX_STATEMENTS, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+            if (size() > MAX_STATEMENTS) {
+                eldest.getValue().close();
+                return true;
+            }
+            return false;
+        }
+
+        // close and forget every statement
+        void close() {
+            Iterator<SQLiteStatement> iterator = values().iterator();
+            while (iterator.hasNext()) {
+                iterator.next().close();
+                iterator.remove();
+            }
+            database = null;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import io.maerlyn.inventorymanager.R;
+
+/**
+ * SQLite storage settings the database is opened with.
+ * <p>
+ * onConfigure only runs on the primary connection, which does every write. Once
+ * write-ahead logging is on, reads run on pooled connections that Android opens
+ * without a hook to configure them. So the profile only holds settings that
+ * apply there: the page size, which is stored in the file and used by every
+ * connection, and the page cache of the primary connection. Settings that would
+ * only help reads, such as mmap_size and temp_store, are left at SQLite's defaults.
+ * <p>
+ * The defaults in integers.xml were picked by StorageProfileBenchmark, which
+ * times the list page, book detail, sell and bulk insert queries under each
+ * candidate profile. Run it again before changing them.
+ *
+ * @author Maerlyn Broadbent
+ */
+class StorageProfile {
+
+    final String name;
+
+    // bytes per page. only takes effect when the database file is created
+    final int pageSize;
+
+    // page cache of the primary connection. reader connections keep SQLite's default
+    final int cacheKilobytes;
+
+    StorageProfile(String name, int pageSize, int cacheKilobytes) {
+        this.name = name;
+        this.pageSize = pageSize;
+        this.cacheKilobytes = cacheKilobytes;
+    }
+
+    /**
+     * Return the profile configured in resources
+     *
+     * @param resources app resources
+     * @return {@link StorageProfile}
+     */
+    static StorageProfile fromResources(Resources resources) {
+        return new StorageProfile("configured",
+                resources.getInteger(R.integer.storage_page_size),
+                resources.getInteger(R.integer.storage_cache_kilobytes));
+    }
+
+    /**
+     * Apply the profile to the primary connection. Must run before write-ahead
+     * logging is turned on: the page size can't change once the file has been in
+     * WAL mode, and before then every statement runs on this one connection
+     *
+     * @param db database being configured
+     */
+    void apply(SQLiteDatabase db) {
+        db.setPageSize(pageSize);
+
+        // a negative cache size is in kilobytes rather than pages
+        pragma(db, "cache_size=" + -cacheKilobytes);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (page " + pageSize + ", cache " + cacheKilobytes + "KB)";
+    }
+
+    // run a pragma that may or may not return a row
+    private static void pragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+}
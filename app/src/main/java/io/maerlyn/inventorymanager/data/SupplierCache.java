@@ -0,0 +1,256 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.maerlyn.inventorymanager.data.InventoryContract.SupplierEntry;
+import io.maerlyn.inventorymanager.model.Supplier;
+
+/**
+ * In memory cache of suppliers, shared by the whole process.
+ * <p>
+ * There are only ever a handful of suppliers and they rarely change, so the
+ * whole table is loaded the first time it is needed. After that, the same
+ * {@link Supplier} instance is returned for the same row until that row changes.
+ * Cached suppliers are shared, so they must not be edited directly.
+ * <p>
+ * {@link InventoryProvider} drops changed suppliers as part of each write, and
+ * stops caching until the write's transaction has ended. A single supplier URI
+ * drops only that supplier, anything else drops everything. A
+ * {@link ContentObserver} on {@link SupplierEntry#CONTENT_URI} does the same
+ * for writes made by other processes.
+ *
+ * @author Maerlyn Broadbent
+ */
+public class SupplierCache {
+
+    // instance of this class for application use
+    private static SupplierCache instance;
+
+    private final Context context;
+
+    // cached suppliers by id
+    private final LongSparseArray<Supplier> suppliers = new LongSparseArray<>();
+
+    // true once every supplier in the table is cached
+    private boolean complete = false;
+
+    // moves forward on every invalidation, so a load that overlaps a change isn't cached
+    private long generation = 0;
+
+    // writes that have started but not ended. nothing is cached while this is above 0
+    private int openWrites = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * This class should not be directly instantiated.
+     * Get an instance using the getInstance() method.
+     *
+     * @param context application context
+     */
+    private SupplierCache(Context context) {
+        this.context = context;
+
+        // writes from this process are handled by the provider, but other processes
+        // can only be heard about here. called on a binder thread, so no handler is needed
+        context.getContentResolver().registerContentObserver(
+                SupplierEntry.CONTENT_URI, true, new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        onChange(selfChange, null);
+                    }
+
+                    @Override
+                    public void onChange(boolean selfChange, Uri uri) {
+                        invalidate(uri);
+                    }
+                });
+    }
+
+    /**
+     * Return an instance of {@link SupplierCache}
+     *
+     * @param context activity context
+     * @return instance of {@link SupplierCache}
+     */
+    public static synchronized SupplierCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new SupplierCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Return a supplier by id, loading it if it isn't cached
+     *
+     * @param supplierId id of the supplier
+     * @return {@link Supplier}, or null if there is no such supplier
+     */
+    public Supplier get(long supplierId) {
+        long loadGeneration;
+
+        synchronized (this) {
+            Supplier supplier = suppliers.get(supplierId);
+            if (supplier != null) {
+                hitCount++;
+                return supplier;
+            }
+            missCount++;
+            loadGeneration = generation;
+        }
+
+        // query outside the lock so that invalidation is never blocked by SQLite
+        Supplier supplier = Inventory.querySupplierById(supplierId, context);
+
+        synchronized (this) {
+            if (supplier != null && isCacheable(loadGeneration)) {
+                // another thread may have loaded it first. keep a single instance
+                Supplier cached = suppliers.get(supplierId);
+                if (cached != null) {
+                    return cached;
+                }
+                suppliers.put(supplierId, supplier);
+            }
+        }
+        return supplier;
+    }
+
+    /**
+     * Return a supplier only if it is already cached. Never touches the database.
+     *
+     * @param supplierId id of the supplier
+     * @return {@link Supplier}, or null if it is not cached
+     */
+    public synchronized Supplier peek(long supplierId) {
+        Supplier supplier = suppliers.get(supplierId);
+        if (supplier != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return supplier;
+    }
+
+    /**
+     * Return all suppliers, loading the whole table if it isn't cached
+     *
+     * @return {@link List} of {@link Supplier} in id order
+     */
+    public List<Supplier> getAll() {
+        long loadGeneration;
+
+        synchronized (this) {
+            if (complete) {
+                hitCount++;
+                return values();
+            }
+            missCount++;
+            loadGeneration = generation;
+        }
+
+        List<Supplier> loaded = Inventory.queryAllSuppliers(context);
+
+        synchronized (this) {
+            if (!isCacheable(loadGeneration)) {
+                // something changed while loading, so don't cache the result
+                return loaded;
+            }
+
+            // reuse suppliers that are already cached so each row has a single instance
+            for (int i = 0; i < loaded.size(); i++) {
+                Supplier supplier = loaded.get(i);
+                Supplier cached = suppliers.get(supplier.getId());
+                if (cached != null) {
+                    loaded.set(i, cached);
+                } else {
+                    suppliers.put(supplier.getId(), supplier);
+                }
+            }
+            complete = true;
+            return values();
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Start a write. Nothing is cached until the matching {@link #endWrite()}, so
+     * that a read made before the transaction commits can't be kept
+     */
+    synchronized void beginWrite() {
+        openWrites++;
+    }
+
+    /**
+     * End a write. Call after the transaction has ended
+     */
+    synchronized void endWrite() {
+        openWrites--;
+        generation++;
+    }
+
+    /**
+     * Forget cached suppliers after a change
+     *
+     * @param uri that changed. a single supplier URI drops only that supplier,
+     *            anything else drops everything
+     */
+    synchronized void invalidate(Uri uri) {
+        generation++;
+
+        long supplierId = supplierIdOf(uri);
+        if (supplierId == -1) {
+            suppliers.clear();
+        } else {
+            suppliers.remove(supplierId);
+        }
+        complete = false;
+    }
+
+    // true if a load started at the given generation may be cached
+    private boolean isCacheable(long loadGeneration) {
+        return loadGeneration == generation && openWrites == 0;
+    }
+
+    // Return the id in a single supplier URI, or -1 for any other URI
+    private static long supplierIdOf(Uri uri) {
+        if (uri == null) {
+            return -1;
+        }
+
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 2 || !InventoryContract.PATH_SUPPLIERS.equals(segments.get(0))) {
+            return -1;
+        }
+
+        try {
+            return ContentUris.parseId(uri);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // all cached suppliers, in id order
+    private List<Supplier> values() {
+        List<Supplier> list = new ArrayList<>(suppliers.size());
+        for (int i = 0; i < suppliers.size(); i++) {
+            list.add(suppliers.valueAt(i));
+        }
+        return list;
+    }
+}
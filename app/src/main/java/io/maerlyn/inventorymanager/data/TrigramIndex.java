@@ -0,0 +1,389 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.util.LongSparseArray;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In memory trigram index of book titles, used for typo tolerant search.
+ * <p>
+ * Each word of a title is split into overlapping runs of three characters, padded
+ * so the start and end of a word count too, e.g. "neuro" gives "  n", " ne", "neu",
+ * "eur", "uro" and "ro ". A search scores each title by how many trigrams it shares
+ * with the query, so a transposed or wrong letter only costs a few of them.
+ * <p>
+ * Only book ids and trigram postings are kept, not the titles. A changed or
+ * removed book leaves its postings behind, marked dead, and they are dropped
+ * once enough of them build up.
+ * <p>
+ * Not thread safe. Callers must synchronize on the index.
+ *
+ * @author Maerlyn Broadbent
+ */
+class TrigramIndex {
+
+    // postings are compacted once this fraction of the slots are dead
+    private static final int COMPACT_DEAD_RATIO = 4;
+
+    // trigram count of a slot whose book was changed or removed
+    private static final int DEAD = -1;
+
+    // slots holding each trigram, by trigram
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    // slot of each book that is in the index
+    private final LongSparseArray<Integer> slotsByBookId = new LongSparseArray<>();
+
+    // book id and number of distinct trigrams of each slot
+    private long[] slotBookIds = new long[64];
+    private int[] slotTrigramCounts = new int[64];
+    private int slotCount = 0;
+    private int deadCount = 0;
+
+    // shared trigram counts of the current search, by slot. reused between searches
+    private int[] scratchCounts = new int[0];
+
+    /**
+     * Books matching a search, best match first
+     */
+    static class Matches {
+        final long[] bookIds;
+        final float[] similarities;
+        final int size;
+
+        Matches(long[] bookIds, float[] similarities, int size) {
+            this.bookIds = bookIds;
+            this.similarities = similarities;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Add a book to the index, or replace it if it is already there
+     *
+     * @param bookId of the book
+     * @param title  of the book
+     */
+    void put(long bookId, String title) {
+        remove(bookId);
+
+        long[] trigrams = trigrams(title);
+        int slot = newSlot(bookId, trigrams.length);
+        for (long trigram : trigrams) {
+            Postings list = postings.get(trigram);
+            if (list == null) {
+                list = new Postings();
+                postings.put(trigram, list);
+            }
+            list.add(slot);
+        }
+    }
+
+    /**
+     * Remove a book from the index. Does nothing if it isn't there
+     *
+     * @param bookId of the book
+     */
+    void remove(long bookId) {
+        Integer slot = slotsByBookId.get(bookId);
+        if (slot == null) {
+            return;
+        }
+
+        slotsByBookId.remove(bookId);
+        slotTrigramCounts[slot] = DEAD;
+        deadCount++;
+
+        if (deadCount * COMPACT_DEAD_RATIO > slotCount) {
+            compact();
+        }
+    }
+
+    /**
+     * Remove every book
+     */
+    void clear() {
+        postings.clear();
+        slotsByBookId.clear();
+        slotBookIds = new long[64];
+        slotTrigramCounts = new int[64];
+        slotCount = 0;
+        deadCount = 0;
+        scratchCounts = new int[0];
+    }
+
+    /**
+     * Find the books whose titles are most similar to a query.
+     * <p>
+     * Similarity is the number of trigrams a title shares with the query, divided
+     * by the number of distinct trigrams in either of them. 1 is an exact match.
+     *
+     * @param query         text to match, typos and all
+     * @param minSimilarity lowest similarity to return, between 0 and 1
+     * @param maxMatches    most books to return
+     * @return matching books, best first
+     */
+    Matches search(String query, float minSimilarity, int maxMatches) {
+        long[] queryTrigrams = trigrams(query);
+        if (queryTrigrams.length == 0 || maxMatches <= 0) {
+            return new Matches(new long[0], new float[0], 0);
+        }
+
+        if (scratchCounts.length < slotCount) {
+            scratchCounts = new int[slotBookIds.length];
+        }
+        int[] counts = scratchCounts;
+
+        // count shared trigrams, remembering which slots were touched
+        Postings touched = new Postings();
+        for (long trigram : queryTrigrams) {
+            Postings list = postings.get(trigram);
+            if (list == null) {
+                continue;
+            }
+            for (int i = 0; i < list.size; i++) {
+                int slot = list.slots[i];
+                if (counts[slot]++ == 0) {
+                    touched.add(slot);
+                }
+            }
+        }
+
+        // keep the best matches in a min heap on similarity
+        long[] heapIds = new long[maxMatches];
+        float[] heapScores = new float[maxMatches];
+        int heapSize = 0;
+
+        for (int i = 0; i < touched.size; i++) {
+            int slot = touched.slots[i];
+            int shared = counts[slot];
+            counts[slot] = 0;
+
+            int titleCount = slotTrigramCounts[slot];
+            if (titleCount == DEAD) {
+                continue;
+            }
+
+            float similarity = (float) shared / (queryTrigrams.length + titleCount - shared);
+            if (similarity < minSimilarity) {
+                continue;
+            }
+
+            if (heapSize < maxMatches) {
+                heapIds[heapSize] = slotBookIds[slot];
+                heapScores[heapSize] = similarity;
+                siftUp(heapIds, heapScores, heapSize++);
+            } else if (similarity > heapScores[0]) {
+                heapIds[0] = slotBookIds[slot];
+                heapScores[0] = similarity;
+                siftDown(heapIds, heapScores, heapSize);
+            }
+        }
+
+        // take the worst match off the heap each time, filling the result from the back
+        long[] bookIds = new long[heapSize];
+        float[] similarities = new float[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            bookIds[i] = heapIds[0];
+            similarities[i] = heapScores[0];
+            heapIds[0] = heapIds[i];
+            heapScores[0] = heapScores[i];
+            siftDown(heapIds, heapScores, i);
+        }
+        return new Matches(bookIds, similarities, bookIds.length);
+    }
+
+    /**
+     * Release room kept for growth. Used after loading every book at once
+     */
+    void trimToSize() {
+        for (Postings list : postings.values()) {
+            list.slots = Arrays.copyOf(list.slots, list.size);
+        }
+        slotBookIds = Arrays.copyOf(slotBookIds, Math.max(slotCount, 1));
+        slotTrigramCounts = Arrays.copyOf(slotTrigramCounts, Math.max(slotCount, 1));
+    }
+
+    // number of books in the index
+    int size() {
+        return slotsByBookId.size();
+    }
+
+    // number of distinct trigrams in the index
+    int trigramCount() {
+        return postings.size();
+    }
+
+    /**
+     * Estimate the memory used by the index, including object overhead
+     *
+     * @return estimated size in bytes
+     */
+    long estimateMemoryBytes() {
+        // hash map entry, boxed key and postings object per trigram
+        long bytes = postings.size() * (32L + 16L + 24L);
+        for (Postings list : postings.values()) {
+            bytes += 16L + 4L * list.slots.length;
+        }
+
+        // slot arrays, and a key, boxed value and value slot per book in the id map
+        bytes += 8L * slotBookIds.length + 4L * slotTrigramCounts.length + 4L * scratchCounts.length;
+        bytes += slotsByBookId.size() * (8L + 16L + 4L);
+        return bytes;
+    }
+
+    /**
+     * Split text into distinct, padded trigrams of its lower case words.
+     * Anything other than letters and digits separates words.
+     *
+     * @param text to split
+     * @return distinct trigrams, each packed into a long
+     */
+    static long[] trigrams(String text) {
+        if (text == null) {
+            return new long[0];
+        }
+
+        // a word of n characters has n + 1 trigrams once padded
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        String[] words = lowerCase.split("[^\\p{L}\\p{N}]+");
+        long[] trigrams = new long[lowerCase.length() + words.length];
+        int count = 0;
+
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+
+            // two spaces in front and one behind, so the start of a word weighs more
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams[count++] = ((long) padded.charAt(i) << 32)
+                        | ((long) padded.charAt(i + 1) << 16)
+                        | padded.charAt(i + 2);
+            }
+        }
+
+        // drop repeats, so each trigram counts once
+        Arrays.sort(trigrams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || trigrams[i] != trigrams[distinct - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    // give a book a new slot
+    private int newSlot(long bookId, int trigramCount) {
+        if (slotCount == slotBookIds.length) {
+            slotBookIds = Arrays.copyOf(slotBookIds, slotCount * 2);
+            slotTrigramCounts = Arrays.copyOf(slotTrigramCounts, slotCount * 2);
+        }
+
+        int slot = slotCount++;
+        slotBookIds[slot] = bookId;
+        slotTrigramCounts[slot] = trigramCount;
+        slotsByBookId.put(bookId, slot);
+        return slot;
+    }
+
+    /**
+     * Drop dead slots from every posting list and renumber the live ones
+     */
+    private void compact() {
+        int[] newSlots = new int[slotCount];
+        int liveCount = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotTrigramCounts[slot] == DEAD) {
+                newSlots[slot] = -1;
+                continue;
+            }
+            newSlots[slot] = liveCount;
+            slotBookIds[liveCount] = slotBookIds[slot];
+            slotTrigramCounts[liveCount] = slotTrigramCounts[slot];
+            slotsByBookId.put(slotBookIds[liveCount], liveCount);
+            liveCount++;
+        }
+
+        for (Iterator<Postings> lists = postings.values().iterator(); lists.hasNext(); ) {
+            Postings list = lists.next();
+            int size = 0;
+            for (int i = 0; i < list.size; i++) {
+                int slot = newSlots[list.slots[i]];
+                if (slot != -1) {
+                    list.slots[size++] = slot;
+                }
+            }
+            list.size = size;
+
+            if (size == 0) {
+                lists.remove();
+            }
+        }
+
+        slotCount = liveCount;
+        deadCount = 0;
+    }
+
+    private static void siftUp(long[] ids, float[] scores, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (scores[parent] <= scores[index]) {
+                return;
+            }
+            swap(ids, scores, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(long[] ids, float[] scores, int size) {
+        int index = 0;
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < size && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(ids, scores, smallest, index);
+            index = smallest;
+        }
+    }
+
+    private static void swap(long[] ids, float[] scores, int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+
+    /**
+     * Growable list of slots holding one trigram, in the order they were added
+     */
+    private static class Postings {
+        int[] slots = new int[4];
+        int size = 0;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(4, size * 2));
+            }
+            slots[size++] = slot;
+        }
+    }
+}
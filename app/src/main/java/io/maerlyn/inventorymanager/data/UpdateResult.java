@@ -0,0 +1,56 @@
+package io.maerlyn.inventorymanager.data;
+
+/**
+ * Outcome of saving changes to a book or supplier
+ *
+ * @param <T> type of the item that was saved
+ * @author Maerlyn Broadbent
+ */
+public class UpdateResult<T> {
+
+    public enum Status {
+        // the changes were saved, or there was nothing to save
+        SAVED,
+        // the item was changed by someone else since it was loaded, nothing was saved
+        CONFLICT,
+        // the changes could not be saved, or the item no longer exists
+        FAILED
+    }
+
+    private final Status status;
+    private final T current;
+
+    private UpdateResult(Status status, T current) {
+        this.status = status;
+        this.current = current;
+    }
+
+    static <T> UpdateResult<T> saved() {
+        return new UpdateResult<>(Status.SAVED, null);
+    }
+
+    static <T> UpdateResult<T> conflict(T current) {
+        return new UpdateResult<>(Status.CONFLICT, current);
+    }
+
+    static <T> UpdateResult<T> failed() {
+        return new UpdateResult<>(Status.FAILED, null);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSaved() {
+        return status == Status.SAVED;
+    }
+
+    /**
+     * Return the item as it is currently stored
+     *
+     * @return stored item when the status is {@link Status#CONFLICT}, otherwise null
+     */
+    public T getCurrent() {
+        return current;
+    }
+}
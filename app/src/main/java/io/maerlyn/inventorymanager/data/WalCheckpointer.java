@@ -0,0 +1,150 @@
+package io.maerlyn.inventorymanager.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Decides when the write-ahead log is copied back into the database.
+ * <p>
+ * SQLite's own checkpoint runs on the writing thread when a commit pushes the
+ * log past a page count, which slows down whichever write happens to cross it.
+ * Instead, its threshold is raised to a backstop and checkpoints run on a
+ * background thread: a passive one as soon as the log grows past a size
+ * limit, and one that truncates the log once writes have stopped for a while.
+ * <p>
+ * Passive checkpoints never wait for readers, so open cursors keep their snapshot.
+ * <p>
+ * Both pragmas have to reach the connection that commits. The threshold is set
+ * from onConfigure, while that is the only connection. A checkpoint writes to the
+ * database, so SQLite doesn't count it as read only and Android always runs it on
+ * that connection. Neither is run in a transaction: a checkpoint can't run inside
+ * a write transaction.
+ *
+ * @author Maerlyn Broadbent
+ */
+class WalCheckpointer {
+
+    private static final String LOG_TAG = WalCheckpointer.class.getSimpleName();
+
+    // how often the log size is looked at while writes are coming in
+    private static final long SIZE_CHECK_MILLIS = 500;
+
+    // SQLite checkpoints by itself once the log reaches this many times the size limit
+    private static final int AUTO_CHECKPOINT_FACTOR = 4;
+
+    // copy what it can without waiting for readers or writers
+    private static final String CHECKPOINT_PASSIVE = "PRAGMA wal_checkpoint(PASSIVE)";
+
+    // copy everything and empty the log file. older SQLite versions treat this as passive
+    private static final String CHECKPOINT_TRUNCATE = "PRAGMA wal_checkpoint(TRUNCATE)";
+
+    private final SQLiteOpenHelper dbHelper;
+    private final long maxWalBytes;
+    private final long idleMillis;
+    private final Handler handler;
+
+    // uptime of the last write, and whether a check is waiting to run
+    private long lastWriteMillis = 0;
+    private boolean checkScheduled = false;
+
+    private final Runnable check = this::check;
+
+    /**
+     * @param dbHelper    helper for the database to checkpoint
+     * @param maxWalBytes log size that triggers a checkpoint straight away
+     * @param idleMillis  time without writes before the log is emptied
+     */
+    WalCheckpointer(SQLiteOpenHelper dbHelper, long maxWalBytes, long idleMillis) {
+        this.dbHelper = dbHelper;
+        this.maxWalBytes = maxWalBytes;
+        this.idleMillis = idleMillis;
+
+        HandlerThread thread = new HandlerThread("inventory-checkpoint");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Set SQLite's own checkpoint threshold to the backstop. Call from onConfigure,
+     * after the page size is set and before WAL is turned on, so that the setting
+     * is made on the connection that commits
+     *
+     * @param db database being configured
+     */
+    void configure(SQLiteDatabase db) {
+        long pageSize = Math.max(db.getPageSize(), 1);
+        long pages = Math.max(1, maxWalBytes * AUTO_CHECKPOINT_FACTOR / pageSize);
+
+        // the pragma returns the new value, so it has to be read as a query
+        Cursor cursor = db.rawQuery("PRAGMA wal_autocheckpoint=" + pages, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Note that the database has been written to. Cheap enough to call on every write
+     */
+    synchronized void onWrite() {
+        lastWriteMillis = SystemClock.uptimeMillis();
+        if (!checkScheduled) {
+            checkScheduled = true;
+            handler.postDelayed(check, Math.min(idleMillis, SIZE_CHECK_MILLIS));
+        }
+    }
+
+    // checkpoint if the log is too large or writes have stopped, and check again if they haven't
+    private void check() {
+        long idleFor;
+        synchronized (this) {
+            checkScheduled = false;
+            idleFor = SystemClock.uptimeMillis() - lastWriteMillis;
+        }
+
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            long walBytes = new File(db.getPath() + "-wal").length();
+
+            if (idleFor >= idleMillis) {
+                if (walBytes > 0) {
+                    checkpoint(db, CHECKPOINT_TRUNCATE);
+                }
+                return;
+            }
+            if (walBytes > maxWalBytes) {
+                checkpoint(db, CHECKPOINT_PASSIVE);
+            }
+        } catch (Exception e) {
+            // SQLite's own checkpoint still runs, try again after the next write
+            Log.e(LOG_TAG, "Exception while checkpointing the database", e);
+            return;
+        }
+
+        // writes are still coming, look again later
+        synchronized (this) {
+            if (!checkScheduled) {
+                checkScheduled = true;
+                handler.postDelayed(check, Math.min(idleMillis - idleFor, SIZE_CHECK_MILLIS));
+            }
+        }
+    }
+
+    // run a checkpoint. it returns a row, so it has to be read as a query
+    private static void checkpoint(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+}
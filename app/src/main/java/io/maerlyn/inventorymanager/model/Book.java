@@ -1,17 +1,37 @@
 package io.maerlyn.inventorymanager.model;
 
+import java.util.Arrays;
+
 /**
  * Model class for books
  *
  * @author Maerlyn Broadbent
  */
 public class Book {
+
+    // flags for each field that can be saved
+    public static final int FIELD_SUPPLIER = 1;
+    public static final int FIELD_NAME = 1 << 1;
+    public static final int FIELD_PRICE = 1 << 2;
+    public static final int FIELD_QUANTITY = 1 << 3;
+    public static final int FIELD_IMAGE = 1 << 4;
+    public static final int FIELD_ISBN = 1 << 5;
+    public static final int FIELDS_ALL =
+            FIELD_SUPPLIER | FIELD_NAME | FIELD_PRICE | FIELD_QUANTITY | FIELD_IMAGE | FIELD_ISBN;
+
     private long id;
     private Supplier supplier;
     private String name;
     private int price = 0;
     private int quantity = 0;
     private byte[] image;
+    private String isbn;
+
+    // version of the stored row this book was loaded from
+    private long version = 0;
+
+    // fields that have been changed since this book was loaded or last saved
+    private int changedFields = 0;
 
     public Book() {
 
@@ -26,6 +46,22 @@ public class Book {
         this.image = image;
     }
 
+    /**
+     * Copy a book as it was loaded or last saved. Changes made to the copy are not tracked.
+     *
+     * @param other book to copy
+     */
+    public Book(Book other) {
+        this.id = other.id;
+        this.supplier = other.supplier;
+        this.name = other.name;
+        this.price = other.price;
+        this.quantity = other.quantity;
+        this.image = other.image;
+        this.isbn = other.isbn;
+        this.version = other.version;
+    }
+
     public Book(Supplier supplier, String name, int price, int quantity, byte[] image) {
         this.supplier = supplier;
         this.name = name;
@@ -47,6 +83,10 @@ public class Book {
     }
 
     public void setSupplier(Supplier supplier) {
+        if (this.supplier == null ? supplier != null
+                : supplier == null || this.supplier.getId() != supplier.getId()) {
+            this.changedFields |= FIELD_SUPPLIER;
+        }
         this.supplier = supplier;
     }
 
@@ -55,6 +95,9 @@ public class Book {
     }
 
     public void setName(String name) {
+        if (this.name == null ? name != null : !this.name.equals(name)) {
+            this.changedFields |= FIELD_NAME;
+        }
         this.name = name;
     }
 
@@ -63,6 +106,9 @@ public class Book {
     }
 
     public void setPrice(int price) {
+        if (this.price != price) {
+            this.changedFields |= FIELD_PRICE;
+        }
         this.price = price;
     }
 
@@ -77,10 +123,17 @@ public class Book {
     }
 
     public void setQuantity(int quantity) {
+        if (this.quantity != quantity) {
+            this.changedFields |= FIELD_QUANTITY;
+        }
         this.quantity = quantity;
     }
 
     public void setImage(byte[] image){
+        // images are only ever replaced, so comparing contents isn't worth the cost
+        if (this.image != image) {
+            this.changedFields |= FIELD_IMAGE;
+        }
         this.image = image;
     }
 
@@ -88,6 +141,26 @@ public class Book {
         return image;
     }
 
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public void setIsbn(String isbn) {
+        if (this.isbn == null ? isbn != null : !this.isbn.equals(isbn)) {
+            this.changedFields |= FIELD_ISBN;
+        }
+        this.isbn = isbn;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // the version is not a saved field, so setting it is never tracked as a change
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * reduce quantity by one if we're not already at zero
      *
@@ -95,7 +168,7 @@ public class Book {
      */
     public boolean sellBook() {
         if (this.quantity > 0) {
-            this.quantity--;
+            setQuantity(this.quantity - 1);
             return true;
         }
         return false;
@@ -103,6 +176,92 @@ public class Book {
 
     // increase quantity by 1
     public void orderBook() {
-        this.quantity++;
+        setQuantity(this.quantity + 1);
+    }
+
+    /**
+     * Return true if a field has changed since this book was loaded or last saved
+     *
+     * @param field one or more FIELD_ flags
+     * @return true if any of the given fields have changed
+     */
+    public boolean isChanged(int field) {
+        return (this.changedFields & field) != 0;
+    }
+
+    /**
+     * Return true if any field has changed since this book was loaded or last saved
+     *
+     * @return true if there is anything to save
+     */
+    public boolean hasChanges() {
+        return this.changedFields != 0;
+    }
+
+    /**
+     * Mark the given fields as saved
+     *
+     * @param fields one or more FIELD_ flags
+     */
+    public void clearChanges(int fields) {
+        this.changedFields &= ~fields;
+    }
+
+    // mark all fields as saved
+    public void clearChanges() {
+        clearChanges(FIELDS_ALL);
+    }
+
+    /**
+     * Move unsaved changes on to a newer version of this book.
+     * <p>
+     * The changes conflict if any changed field was also changed in the stored
+     * book since it was loaded. Otherwise fields that have not been changed here
+     * take the stored values, and the version becomes the stored version so that
+     * saving again only overwrites the fields changed here.
+     *
+     * @param original book as it was when loaded
+     * @param current  book as it is stored now
+     * @return false if the changes conflict, in which case nothing is changed
+     */
+    public boolean rebase(Book original, Book current) {
+        if ((isChanged(FIELD_SUPPLIER) && supplierId(original) != supplierId(current))
+                || (isChanged(FIELD_NAME) && isDifferent(original.name, current.name))
+                || (isChanged(FIELD_PRICE) && original.price != current.price)
+                || (isChanged(FIELD_QUANTITY) && original.quantity != current.quantity)
+                || (isChanged(FIELD_IMAGE) && !Arrays.equals(original.image, current.image))
+                || (isChanged(FIELD_ISBN) && isDifferent(original.isbn, current.isbn))) {
+            return false;
+        }
+
+        if (!isChanged(FIELD_SUPPLIER)) {
+            this.supplier = current.supplier;
+        }
+        if (!isChanged(FIELD_NAME)) {
+            this.name = current.name;
+        }
+        if (!isChanged(FIELD_PRICE)) {
+            this.price = current.price;
+        }
+        if (!isChanged(FIELD_QUANTITY)) {
+            this.quantity = current.quantity;
+        }
+        if (!isChanged(FIELD_IMAGE)) {
+            this.image = current.image;
+        }
+        if (!isChanged(FIELD_ISBN)) {
+            this.isbn = current.isbn;
+        }
+        this.version = current.version;
+        return true;
+    }
+
+    private static long supplierId(Book book) {
+        return book.supplier == null ? -1 : book.supplier.getId();
+    }
+
+    // null safe string comparison
+    private static boolean isDifferent(String oldValue, String newValue) {
+        return oldValue == null ? newValue != null : !oldValue.equals(newValue);
     }
 }
@@ -6,11 +6,24 @@ package io.maerlyn.inventorymanager.model;
  * @author Maerlyn Broadbent
  */
 public class Supplier {
+
+    // flags for each field that can be saved
+    public static final int FIELD_NAME = 1;
+    public static final int FIELD_EMAIL = 1 << 1;
+    public static final int FIELD_PHONE_NUM = 1 << 2;
+    public static final int FIELDS_ALL = FIELD_NAME | FIELD_EMAIL | FIELD_PHONE_NUM;
+
     private long id;
     private String name;
     private String email;
     private String phoneNum;
 
+    // version of the stored row this supplier was loaded from
+    private long version = 0;
+
+    // fields that have been changed since this supplier was loaded or last saved
+    private int changedFields = 0;
+
     public Supplier(long id, String name, String email, String phoneNum) {
         this.id = id;
         this.name = name;
@@ -37,6 +50,9 @@ public class Supplier {
     }
 
     public void setName(String name) {
+        if (isDifferent(this.name, name)) {
+            this.changedFields |= FIELD_NAME;
+        }
         this.name = name;
     }
 
@@ -45,6 +61,9 @@ public class Supplier {
     }
 
     public void setEmail(String email) {
+        if (isDifferent(this.email, email)) {
+            this.changedFields |= FIELD_EMAIL;
+        }
         this.email = email;
     }
 
@@ -53,6 +72,56 @@ public class Supplier {
     }
 
     public void setPhoneNum(String phoneNum) {
+        if (isDifferent(this.phoneNum, phoneNum)) {
+            this.changedFields |= FIELD_PHONE_NUM;
+        }
         this.phoneNum = phoneNum;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // the version is not a saved field, so setting it is never tracked as a change
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Return true if a field has changed since this supplier was loaded or last saved
+     *
+     * @param field one or more FIELD_ flags
+     * @return true if any of the given fields have changed
+     */
+    public boolean isChanged(int field) {
+        return (this.changedFields & field) != 0;
+    }
+
+    /**
+     * Return true if any field has changed since this supplier was loaded or last saved
+     *
+     * @return true if there is anything to save
+     */
+    public boolean hasChanges() {
+        return this.changedFields != 0;
+    }
+
+    /**
+     * Mark the given fields as saved
+     *
+     * @param fields one or more FIELD_ flags
+     */
+    public void clearChanges(int fields) {
+        this.changedFields &= ~fields;
+    }
+
+    // mark all fields as saved
+    public void clearChanges() {
+        clearChanges(FIELDS_ALL);
+    }
+
+    // null safe string comparison
+    private static boolean isDifferent(String oldValue, String newValue) {
+        return oldValue == null ? newValue != null : !oldValue.equals(newValue);
+    }
 }
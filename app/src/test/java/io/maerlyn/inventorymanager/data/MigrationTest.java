@@ -0,0 +1,315 @@
+package io.maerlyn.inventorymanager.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.Collation;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Upgrades a seeded version 5 database to the current schema on the JVM, through
+ * a plain SQLite driver, and checks that no rows were lost or changed.
+ *
+ * @author Maerlyn Broadbent
+ */
+public class MigrationTest {
+
+    private static final int BOOKS = 100000;
+    private static final int SUPPLIERS = 200;
+
+    // every tenth book has a cover of this many bytes
+    private static final int COVER_BYTES = 64;
+
+    // the schema as it was at version 5, before any migration
+    private static final String[] VERSION_5 = {
+            "CREATE TABLE supplier (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL," +
+                    " email TEXT NOT NULL, phone_num TEXT)",
+            "CREATE TABLE book (_id INTEGER PRIMARY KEY AUTOINCREMENT, supplier_id INTEGER," +
+                    " title TEXT NOT NULL, price INTEGER NOT NULL DEFAULT 0," +
+                    " quantity INTEGER NOT NULL DEFAULT 0, image BLOB," +
+                    " FOREIGN KEY (supplier_id) REFERENCES supplier (_id))",
+            "PRAGMA user_version = 5"
+    };
+
+    private static final String BOOK_TOTALS =
+            "SELECT COUNT(*), SUM(price), SUM(quantity), SUM(LENGTH(image)), SUM(supplier_id)," +
+                    " SUM(LENGTH(title)) FROM book";
+
+    private JdbcDatabase db;
+
+    @Before
+    public void setUp() throws SQLException {
+        db = new JdbcDatabase();
+        for (String sql : VERSION_5) {
+            db.execSQL(sql);
+        }
+        seed(db.connection);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        db.connection.close();
+    }
+
+    @Test
+    public void upgradeKeepsEveryRow() throws SQLException {
+        long[] before = totals(BOOK_TOTALS);
+        long suppliers = db.longForQuery("SELECT COUNT(*) FROM supplier");
+
+        long[] nanos = InventoryDbHelper.upgrade(db, 5, InventoryDbHelper.DATABASE_VERSION);
+
+        assertArrayEquals(before, totals(BOOK_TOTALS));
+        assertEquals(suppliers, db.longForQuery("SELECT COUNT(*) FROM supplier"));
+        assertEquals(InventoryDbHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals(8, nanos.length);
+        assertEquals(0, db.depth);
+
+        // new columns are filled from the old rows
+        assertEquals(BOOKS, db.longForQuery("SELECT COUNT(*) FROM book WHERE version = 0"));
+        assertEquals(SUPPLIERS / 2, db.longForQuery(
+                "SELECT COUNT(*) FROM supplier WHERE email_key IS NOT NULL"));
+        assertEquals(BOOKS, db.longForQuery(
+                "SELECT COUNT(*) FROM book_search WHERE book_search MATCH 'supplier:supplier'"));
+
+        assertEquals("ok", string("PRAGMA integrity_check"));
+        assertEquals(0, rows("PRAGMA foreign_key_check").size());
+    }
+
+    @Test
+    public void upgradeMatchesNewSchema() throws SQLException {
+        InventoryDbHelper.upgrade(db, 5, InventoryDbHelper.DATABASE_VERSION);
+
+        JdbcDatabase created = new JdbcDatabase();
+        try {
+            InventoryDbHelper.create(created);
+            assertEquals(schema(created), schema(db));
+        } finally {
+            created.connection.close();
+        }
+    }
+
+    @Test
+    public void upgradeResumesFromLastVersion() {
+        InventoryDbHelper.upgrade(db, 5, 7);
+        assertEquals(7, db.getVersion());
+
+        long[] nanos = InventoryDbHelper.upgrade(db, 7, InventoryDbHelper.DATABASE_VERSION);
+        assertEquals(6, nanos.length);
+        assertEquals(InventoryDbHelper.DATABASE_VERSION, db.getVersion());
+    }
+
+    @Test
+    public void failedStepRollsBackTheWholeUpgrade() {
+        Migration[] migrations = {
+                new Migration(6, "add column", d -> Migration.addColumn(d, "book", "isbn TEXT")),
+                new Migration(7, "broken", d -> {
+                    Migration.addColumn(d, "supplier", "version INTEGER");
+                    d.execSQL("CREATE INDEX broken_idx ON missing_table (x)");
+                })
+        };
+
+        // SQLiteOpenHelper runs onUpgrade in a transaction of its own
+        db.beginTransaction();
+        try {
+            Migration.run(db, migrations, 5, 7);
+            db.setTransactionSuccessful();
+            fail("broken migration ran");
+        } catch (RuntimeException expected) {
+            // the index refers to a table that doesn't exist
+        } finally {
+            db.endTransaction();
+        }
+
+        // the step that worked is rolled back with the one that failed
+        assertEquals(5, db.getVersion());
+        assertEquals(0, db.longForQuery(
+                "SELECT COUNT(*) FROM pragma_table_info('book') WHERE name = 'isbn'"));
+        assertEquals(0, db.longForQuery(
+                "SELECT COUNT(*) FROM pragma_table_info('supplier') WHERE name = 'version'"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void tooOldToUpgrade() {
+        InventoryDbHelper.upgrade(db, 4, InventoryDbHelper.DATABASE_VERSION);
+    }
+
+    // fill the version 5 tables. half the suppliers share an email with another
+    private static void seed(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+
+        PreparedStatement supplier = connection.prepareStatement(
+                "INSERT INTO supplier (name, email, phone_num) VALUES (?, ?, ?)");
+        for (int i = 0; i < SUPPLIERS; i++) {
+            supplier.setString(1, "Supplier " + i);
+            supplier.setString(2, " Orders" + i % (SUPPLIERS / 2) + "@Example.com");
+            supplier.setString(3, "555 01" + i);
+            supplier.executeUpdate();
+        }
+        supplier.close();
+
+        PreparedStatement book = connection.prepareStatement(
+                "INSERT INTO book (supplier_id, title, price, quantity, image) VALUES (?, ?, ?, ?, ?)");
+        for (int i = 0; i < BOOKS; i++) {
+            book.setInt(1, 1 + i % SUPPLIERS);
+            book.setString(2, "Title " + i);
+            book.setInt(3, 100 + i % 5000);
+            book.setInt(4, i % 40);
+            if (i % 10 == 0) {
+                byte[] cover = new byte[COVER_BYTES];
+                cover[0] = (byte) i;
+                book.setBytes(5, cover);
+            } else {
+                book.setNull(5, java.sql.Types.BLOB);
+            }
+            book.executeUpdate();
+        }
+        book.close();
+
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    // every table, index and trigger by name, with the columns of each table
+    private static List<String> schema(JdbcDatabase database) throws SQLException {
+        List<String> schema = new ArrayList<>();
+        for (List<String> row : database.rows("SELECT type, name FROM sqlite_master" +
+                " WHERE name NOT LIKE 'sqlite_%' ORDER BY name")) {
+            schema.add(row.get(0) + " " + row.get(1));
+            if (row.get(0).equals("table")) {
+                for (List<String> column : database.rows("PRAGMA table_info('" + row.get(1) + "')")) {
+                    schema.add("  " + column.subList(1, column.size()));
+                }
+            }
+        }
+        return schema;
+    }
+
+    private long[] totals(String sql) throws SQLException {
+        List<String> row = rows(sql).get(0);
+        long[] totals = new long[row.size()];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = row.get(i) == null ? 0 : Long.parseLong(row.get(i));
+        }
+        return totals;
+    }
+
+    private String string(String sql) throws SQLException {
+        return rows(sql).get(0).get(0);
+    }
+
+    private List<List<String>> rows(String sql) throws SQLException {
+        return db.rows(sql);
+    }
+
+    /**
+     * {@link MigrationDatabase} over a JDBC connection to an in-memory database,
+     * with the collation and foreign keys the app's database has
+     */
+    private static class JdbcDatabase implements MigrationDatabase {
+
+        final Connection connection;
+
+        // open transactions, and whether any of them ended without success
+        int depth = 0;
+        private boolean successful = false;
+        private boolean failed = false;
+
+        JdbcDatabase() throws SQLException {
+            connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+            Collation.create(connection, "LOCALIZED", new Collation() {
+                @Override
+                protected int xCompare(String a, String b) {
+                    return a.compareToIgnoreCase(b);
+                }
+            });
+            execSQL("PRAGMA foreign_keys = ON");
+        }
+
+        @Override
+        public void execSQL(String sql) {
+            try {
+                Statement statement = connection.createStatement();
+                try {
+                    statement.execute(sql);
+                } finally {
+                    statement.close();
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(sql, e);
+            }
+        }
+
+        @Override
+        public long longForQuery(String sql) {
+            try {
+                return Long.parseLong(rows(sql).get(0).get(0));
+            } catch (SQLException e) {
+                throw new RuntimeException(sql, e);
+            }
+        }
+
+        @Override
+        public int getVersion() {
+            return (int) longForQuery("PRAGMA user_version");
+        }
+
+        @Override
+        public void setVersion(int version) {
+            execSQL("PRAGMA user_version = " + version);
+        }
+
+        @Override
+        public void beginTransaction() {
+            if (depth++ == 0) {
+                failed = false;
+                execSQL("BEGIN");
+            }
+            successful = false;
+        }
+
+        @Override
+        public void setTransactionSuccessful() {
+            successful = true;
+        }
+
+        @Override
+        public void endTransaction() {
+            failed |= !successful;
+            successful = false;
+            if (--depth == 0) {
+                execSQL(failed ? "ROLLBACK" : "COMMIT");
+            }
+        }
+
+        List<List<String>> rows(String sql) throws SQLException {
+            List<List<String>> rows = new ArrayList<>();
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet result = statement.executeQuery(sql);
+                int columns = result.getMetaData().getColumnCount();
+                while (result.next()) {
+                    List<String> row = new ArrayList<>();
+                    for (int i = 1; i <= columns; i++) {
+                        row.add(result.getString(i));
+                    }
+                    rows.add(row);
+                }
+            } finally {
+                statement.close();
+            }
+            return rows;
+        }
+    }
+}